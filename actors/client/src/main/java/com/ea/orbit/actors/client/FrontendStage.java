@@ -30,14 +30,92 @@ package com.ea.orbit.actors.client;
 
 
 import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.cluster.ClusterPeer;
+import com.ea.orbit.actors.cluster.TcpClusterPeer;
+import com.ea.orbit.annotation.Config;
+import com.ea.orbit.annotation.Wired;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.container.Container;
 
 import javax.inject.Singleton;
 
 @Singleton
 public class FrontendStage extends Stage
 {
+    /**
+     * Comma separated host:port addresses of the gateway hosts.
+     * <p>
+     * If set, the frontend connects to the gateways instead of joining the cluster, and calls the actors through them.
+     * The hosts must use the {@link TcpClusterPeer}.
+     * The frontend uses a {@link TcpClusterPeer} too, either the one set with {@link #setClusterPeer(ClusterPeer)}
+     * or one created by the container, and any other cluster peer is an error.
+     * </p>
+     */
+    @Config("orbit.actors.gateways")
+    private String gateways = "";
+
+    @Wired
+    private Container container;
+
+    private ClusterPeer configuredPeer;
+
     public FrontendStage()
     {
         setMode(StageMode.FRONT_END);
     }
+
+    public String getGateways()
+    {
+        return gateways;
+    }
+
+    public void setGateways(final String gateways)
+    {
+        this.gateways = gateways;
+    }
+
+    @Override
+    public void setClusterPeer(final ClusterPeer clusterPeer)
+    {
+        configuredPeer = clusterPeer;
+        super.setClusterPeer(clusterPeer);
+    }
+
+    @Override
+    public Task<?> start()
+    {
+        if (gateways != null && gateways.trim().length() > 0)
+        {
+            final TcpClusterPeer clusterPeer = gatewayClusterPeer();
+            clusterPeer.setClient(true);
+            clusterPeer.setSeeds(gateways);
+            setClusterPeer(clusterPeer);
+        }
+        return super.start();
+    }
+
+    private TcpClusterPeer gatewayClusterPeer()
+    {
+        if (configuredPeer instanceof TcpClusterPeer)
+        {
+            return (TcpClusterPeer) configuredPeer;
+        }
+        if (configuredPeer != null)
+        {
+            throw new IllegalStateException("The gateways require a TcpClusterPeer, but the cluster peer is a "
+                    + configuredPeer.getClass().getName());
+        }
+        if (container == null)
+        {
+            return new TcpClusterPeer();
+        }
+        for (Class<?> c : container.getClasses())
+        {
+            if (ClusterPeer.class.isAssignableFrom(c) && !TcpClusterPeer.class.isAssignableFrom(c))
+            {
+                throw new IllegalStateException("The gateways require a TcpClusterPeer, but the container configures " + c.getName());
+            }
+        }
+        return container.get(TcpClusterPeer.class);
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.client.test;
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.client.FrontendStage;
+import com.ea.orbit.actors.cluster.TcpClusterPeer;
+import com.ea.orbit.actors.test.ActorBaseTest;
+import com.ea.orbit.actors.test.FakeClusterPeer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FrontendStageTest extends ActorBaseTest
+{
+    private final List<Stage> hosts = new ArrayList<>();
+    private final List<Stage> frontends = new ArrayList<>();
+
+    private Stage createHost(String seed)
+    {
+        final Stage stage = new Stage();
+        final TcpClusterPeer clusterPeer = new TcpClusterPeer();
+        clusterPeer.setSeeds(seed);
+        stage.setMode(Stage.StageMode.HOST);
+        stage.setExecutionPool(commonPool);
+        stage.setMessagingPool(commonPool);
+        stage.setClock(clock);
+        stage.setClusterName(clusterName);
+        stage.setClusterPeer(clusterPeer);
+        stage.start().join();
+        hosts.add(stage);
+        return stage;
+    }
+
+    private FrontendStage createFrontend(String gateways)
+    {
+        final FrontendStage frontend = new FrontendStage();
+        frontend.setExecutionPool(commonPool);
+        frontend.setMessagingPool(commonPool);
+        frontend.setClock(clock);
+        frontend.setClusterName(clusterName);
+        frontend.setGateways(gateways);
+        return frontend;
+    }
+
+    private static String address(Stage stage)
+    {
+        return "127.0.0.1:" + ((TcpClusterPeer) stage.getClusterPeer()).getPort();
+    }
+
+    @After
+    public void stopStages()
+    {
+        frontends.forEach(f -> f.stop().join());
+        // the seed goes last, and each host waits for the previous ones to be gone
+        Collections.reverse(hosts);
+        for (int i = 0; i < hosts.size(); i++)
+        {
+            final List<Stage> remaining = hosts.subList(i, hosts.size());
+            awaitFor(() -> remaining.stream().allMatch(s -> s.getAllNodes().size() == remaining.size()));
+            hosts.get(i).stop().join();
+        }
+    }
+
+    @Test
+    public void frontendCallsThroughTheGateway()
+    {
+        final Stage host1 = createHost("");
+        final Stage host2 = createHost(address(host1));
+        awaitFor(() -> host1.getAllNodes().size() == 2 && host2.getAllNodes().size() == 2);
+
+        final FrontendStage frontend = createFrontend(address(host1));
+        frontend.start().join();
+        frontends.add(frontend);
+        awaitFor(() -> frontend.getAllNodes().size() == 3);
+
+        frontend.bind();
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals("Hello " + i, Actor.getReference(Hello.class, String.valueOf(i)).sayHello(String.valueOf(i)).join());
+        }
+        // the frontend is a client of the gateway, not a member
+        assertEquals(2, host1.getAllNodes().size());
+        assertEquals(1, ((TcpClusterPeer) host1.getClusterPeer()).getClientCount());
+    }
+
+    @Test
+    public void configuredTcpPeerIsKept()
+    {
+        final Stage host = createHost("");
+        final TcpClusterPeer clusterPeer = new TcpClusterPeer();
+        final FrontendStage frontend = createFrontend(address(host));
+        frontend.setClusterPeer(clusterPeer);
+        frontend.start().join();
+        frontends.add(frontend);
+
+        assertSame(clusterPeer, frontend.getClusterPeer());
+        awaitFor(() -> frontend.getAllNodes().size() == 2);
+        frontend.bind();
+        assertEquals("Hello frontend", Actor.getReference(Hello.class, "0").sayHello("frontend").join());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void otherClusterPeersAreRejected()
+    {
+        final FrontendStage frontend = createFrontend("127.0.0.1:1");
+        frontend.setClusterPeer(new FakeClusterPeer());
+        frontend.start();
+    }
+}
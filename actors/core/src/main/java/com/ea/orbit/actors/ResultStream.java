@@ -0,0 +1,122 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors;
+
+import com.ea.orbit.concurrent.Task;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sequence of results returned by an actor or observer method, transferred in chunks.
+ * <p>
+ * Actor and observer interfaces may declare methods returning ResultStream instead of Task.
+ * The caller receives the items as it consumes them instead of a single message with all the results.
+ * The consumer requests items in batches (credits), so a slow consumer never receives more
+ * than it asked for.
+ * </p>
+ * Example:
+ * <pre><code>
+ * public interface Group extends Actor
+ * {
+ *     ResultStream&lt;String&gt; members();
+ * }
+ *
+ * public class GroupActor extends AbstractActor&lt;GroupActor.State&gt; implements Group
+ * {
+ *     public ResultStream&lt;String&gt; members()
+ *     {
+ *         return ResultStream.of(new ArrayList&lt;&gt;(state().members));
+ *     }
+ * }
+ *
+ * // caller
+ * group.members().forEach(member -&gt; System.out.println(member)).join();
+ * </code></pre>
+ * <p>
+ * On the producer side the stream is consumed inside the actor turns, as any other actor method.
+ * Streams that are not consumed for a while are closed by the runtime.
+ * </p>
+ *
+ * @param <T> the item type, must be serializable.
+ */
+public interface ResultStream<T>
+{
+    /**
+     * Number of items requested at a time by {@link #forEach(Consumer)}.
+     */
+    int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Reads the next items of the stream.
+     *
+     * @param maxItems the maximum number of items to return.
+     * @return a task with the next items, or with an empty list if the stream is over.
+     */
+    Task<List<T>> next(int maxItems);
+
+    /**
+     * Releases the stream before reaching its end.
+     *
+     * @return a task indicating when the stream was closed.
+     */
+    default Task<Void> close()
+    {
+        return Task.done();
+    }
+
+    /**
+     * Consumes all the remaining items of the stream.
+     *
+     * @param consumer called for each item, in order.
+     * @return a task that will be completed after the last item was consumed.
+     */
+    default Task<Void> forEach(Consumer<? super T> consumer)
+    {
+        return ResultStreams.forEach(this, consumer);
+    }
+
+    /**
+     * Creates a stream from the items of an iterable.
+     * <p>The iterable is not copied, if it might change while the stream is consumed, a copy should be passed.</p>
+     */
+    static <T> ResultStream<T> of(Iterable<? extends T> iterable)
+    {
+        return new ResultStreams.IteratorStream<>(iterable.iterator());
+    }
+
+    /**
+     * Creates a stream from the remaining items of an iterator.
+     */
+    static <T> ResultStream<T> of(Iterator<? extends T> iterator)
+    {
+        return new ResultStreams.IteratorStream<>(iterator);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors;
+
+import com.ea.orbit.concurrent.Task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Implementation details of {@link ResultStream}.
+ */
+class ResultStreams
+{
+    private ResultStreams()
+    {
+    }
+
+    static class IteratorStream<T> implements ResultStream<T>
+    {
+        private Iterator<? extends T> iterator;
+
+        IteratorStream(final Iterator<? extends T> iterator)
+        {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public synchronized Task<List<T>> next(final int maxItems)
+        {
+            if (iterator == null || !iterator.hasNext())
+            {
+                return Task.fromValue(Collections.emptyList());
+            }
+            final List<T> items = new ArrayList<>(Math.min(maxItems, 64));
+            while (items.size() < maxItems && iterator.hasNext())
+            {
+                items.add(iterator.next());
+            }
+            return Task.fromValue(items);
+        }
+
+        @Override
+        public synchronized Task<Void> close()
+        {
+            iterator = null;
+            return Task.done();
+        }
+    }
+
+    static <T> Task<Void> forEach(final ResultStream<T> stream, final Consumer<? super T> consumer)
+    {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        forEach(stream, consumer, result);
+        return Task.from(result);
+    }
+
+    private static <T> void forEach(final ResultStream<T> stream, final Consumer<? super T> consumer, final CompletableFuture<Void> result)
+    {
+        // loops while the chunks are available synchronously to avoid deep recursion.
+        while (true)
+        {
+            final Task<List<T>> next = stream.next(ResultStream.DEFAULT_BATCH_SIZE);
+            if (!next.isDone())
+            {
+                next.whenComplete((items, ex) -> {
+                    if (consume(items, ex, consumer, result))
+                    {
+                        forEach(stream, consumer, result);
+                    }
+                });
+                return;
+            }
+            List<T> items = null;
+            Throwable ex = null;
+            try
+            {
+                items = next.join();
+            }
+            catch (Throwable t)
+            {
+                ex = t;
+            }
+            if (!consume(items, ex, consumer, result))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if there might be more items.
+     */
+    private static <T> boolean consume(final List<T> items, final Throwable ex, final Consumer<? super T> consumer, final CompletableFuture<Void> result)
+    {
+        if (ex != null)
+        {
+            result.completeExceptionally(ex);
+            return false;
+        }
+        if (items == null || items.isEmpty())
+        {
+            result.complete(null);
+            return false;
+        }
+        try
+        {
+            items.forEach(consumer);
+        }
+        catch (Throwable t)
+        {
+            result.completeExceptionally(t);
+            return false;
+        }
+        return true;
+    }
+}
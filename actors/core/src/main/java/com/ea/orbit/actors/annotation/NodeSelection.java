@@ -0,0 +1,74 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Chooses how the node for a new activation of this actor type is selected among the capable servers.
+ * <p>
+ * The load of each server is periodically reported to the other nodes of the cluster.
+ * It accounts for the number of activations, the messages waiting to be processed,
+ * the delay to get an execution thread and the heap usage.
+ * </p>
+ * <p>
+ * Usage:
+ * <pre>
+ *  {@literal@}NodeSelection(NodeSelection.Strategy.LEAST_LOADED)
+ *  public interface SomeActor extends Actor {
+ *     Task&lt;Integer&gt; add(int a, int b);
+ *  }</pre>
+ * </p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface NodeSelection
+{
+    enum Strategy
+    {
+        /**
+         * Any capable server, the default.
+         */
+        RANDOM,
+        /**
+         * The capable server with the lowest reported load.
+         */
+        LEAST_LOADED,
+        /**
+         * The least loaded of two capable servers picked at random,
+         * avoids sending all the new activations to the same server between load reports.
+         */
+        POWER_OF_TWO_CHOICES
+    }
+
+    Strategy value();
+}
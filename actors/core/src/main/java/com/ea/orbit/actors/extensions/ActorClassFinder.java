@@ -30,7 +30,20 @@ package com.ea.orbit.actors.extensions;
 
 import com.ea.orbit.actors.Actor;
 
+import java.util.Collection;
+
 public interface ActorClassFinder extends ActorExtension
 {
     <T extends Actor> Class<? extends T> findActorImplementation(Class<T> actorInterface);
+
+    /**
+     * Lists the actor interfaces that have an implementation available.
+     * Used to tell the other nodes at once which actors this node can activate.
+     *
+     * @return the actor interfaces, or null if the finder can't list them.
+     */
+    default Collection<Class<?>> findActorInterfaces()
+    {
+        return null;
+    }
 }
@@ -1,5 +1,6 @@
 package com.ea.orbit.actors.runtime;
 
+import com.ea.orbit.actors.ResultStream;
 import com.ea.orbit.actors.annotation.OneWay;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.exception.UncheckedException;
@@ -142,7 +143,7 @@ public class ActorFactoryGenerator
             int count = 0;
             for (final CtMethod m : ccInterface.getMethods())
             {
-                if (!m.getDeclaringClass().isInterface() || !m.getReturnType().getName().equals(Task.class.getName()))
+                if (!m.getDeclaringClass().isInterface() || !isRemoteMethod(m))
                 {
                     continue;
                 }
@@ -161,10 +162,11 @@ public class ActorFactoryGenerator
                         + methodReferenceField + "=" + aInterface.getName() + ".class.getMethod(\"" + m.getName() + "\",$sig) )";
 
                 // TODO: remove the method parameter from the invoke, this could be an utility method of ActorReference
+                final String body = isStreamMethod(m)
+                        ? "{ return super.invokeStream(" + lazyMethodReferenceInit + ", " + methodId + ", $args);  }"
+                        : "{ return super.invoke(" + lazyMethodReferenceInit + ", " + oneWay + ", " + methodId + ", $args);  }";
                 final CtMethod newMethod = CtNewMethod.make(m.getReturnType(), m.getName(),
-                        m.getParameterTypes(), m.getExceptionTypes(),
-                        "{ return super.invoke(" + lazyMethodReferenceInit + ", " + oneWay + ", " + methodId + ", $args);  }",
-                        cc);
+                        m.getParameterTypes(), m.getExceptionTypes(), body, cc);
                 cc.addMethod(newMethod);
             }
             cc.addMethod(CtNewMethod.make("protected int _interfaceId() { return " + interfaceId + ";}", cc));
@@ -202,7 +204,7 @@ public class ActorFactoryGenerator
             sb.append(" switch(methodId) { ");
             for (final CtMethod m : declaredMethods)
             {
-                if (!m.getDeclaringClass().isInterface() || !m.getReturnType().getName().equals(Task.class.getName()))
+                if (!m.getDeclaringClass().isInterface() || !isRemoteMethod(m))
                 {
                     continue;
                 }
@@ -211,7 +213,14 @@ public class ActorFactoryGenerator
                         .map(p -> p.getName())
                         .collect(Collectors.joining(",")) + ")";
                 final int methodId = methodSignature.hashCode();
-                sb.append("case " + methodId + ": return ((" + aInterface.getName() + ")target)." + m.getName() + "(");
+                // streams are returned as the task value, the runtime takes care of sending them to the caller.
+                final boolean stream = isStreamMethod(m);
+                sb.append("case " + methodId + ": return ");
+                if (stream)
+                {
+                    sb.append(Task.class.getName()).append(".fromValue(");
+                }
+                sb.append("((" + aInterface.getName() + ")target)." + m.getName() + "(");
 
                 for (int i = 0; i < parameterTypes.length; i++)
                 {
@@ -229,7 +238,7 @@ public class ActorFactoryGenerator
                         sb.append(parameterTypes[i].getName()).append(")params[").append(i).append("]");
                     }
                 }
-                sb.append("); ");
+                sb.append(stream ? ")); " : "); ");
             }
             sb.append("default: ");
             sb.append("return super.invoke(target,methodId,params);} }");
@@ -238,6 +247,17 @@ public class ActorFactoryGenerator
         }
     }
 
+    private static boolean isRemoteMethod(final CtMethod m) throws NotFoundException
+    {
+        final String returnType = m.getReturnType().getName();
+        return returnType.equals(Task.class.getName()) || returnType.equals(ResultStream.class.getName());
+    }
+
+    private static boolean isStreamMethod(final CtMethod m) throws NotFoundException
+    {
+        return m.getReturnType().getName().equals(ResultStream.class.getName());
+    }
+
     private Class lookup(String className)
     {
         try
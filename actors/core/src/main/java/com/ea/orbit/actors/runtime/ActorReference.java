@@ -30,6 +30,7 @@ package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.Actor;
 import com.ea.orbit.actors.Addressable;
+import com.ea.orbit.actors.ResultStream;
 import com.ea.orbit.actors.cluster.NodeAddress;
 import com.ea.orbit.concurrent.Task;
 
@@ -102,6 +103,19 @@ public abstract class ActorReference<T> implements Serializable, Addressable
         return (Task<R>) (runtime != null ? runtime : ActorRuntime.getRuntime()).invoke(this, method, oneWay, methodId, params);
     }
 
+    /**
+     * Invokes a remote method that returns a {@link ResultStream}.
+     *
+     * @param methodId the target method id
+     * @param params   parameters for the method, must all be serializable.
+     * @param <R>      the stream item type.
+     * @return a stream that will request the items from the target as they are consumed.
+     */
+    protected <R> ResultStream<R> invokeStream(final Method method, final int methodId, final Object[] params)
+    {
+        return new RemoteResultStream<>(invoke(method, false, methodId, params));
+    }
+
     @Override
     public boolean equals(final Object o)
     {
@@ -40,8 +40,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -319,6 +321,37 @@ public class ClassPathSearch
         return (Class<R>) implementationClass;
     }
 
+    /**
+     * Lists all concrete classes assignable to the given class or interface.
+     * <p/>
+     * Reads the header of every class in the class path, slow the first time it's called.
+     */
+    public List<Class<?>> findAllImplementations(Class<?> base)
+    {
+        final ClassInfo baseInfo = getClassInfo(base.getName().replace('.', '/'));
+        final List<Class<?>> implementations = new ArrayList<>();
+        for (String cn : new ArrayList<>(classes.keySet()))
+        {
+            try
+            {
+                final ClassInfo clazz = getClassInfo(cn);
+                if (!clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers()) && baseInfo.isAssignableFrom(clazz))
+                {
+                    implementations.add(Class.forName(cn.replace('/', '.')));
+                }
+            }
+            catch (Throwable e)
+            {
+                // there is some problem with this class, skipping it
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Error checking if " + cn + " implements " + base.getName(), e);
+                }
+            }
+        }
+        return implementations;
+    }
+
 
     /**
      * Returns the size of the common start the two strings
@@ -0,0 +1,156 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.ResultStream;
+import com.ea.orbit.concurrent.Task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consumer side of a {@link ResultStream} returned by a remote method.
+ * <p>
+ * Items are requested from the producer with credits: at most {@code window} items are buffered or in transit.
+ * When the buffer drops to half the window, a new request is sent ahead of the consumer.
+ * </p>
+ *
+ * @param <T> the item type
+ */
+public class RemoteResultStream<T> implements ResultStream<T>
+{
+    public static final int DEFAULT_WINDOW = 512;
+
+    // completed with the StreamHandle returned by the producer
+    private final Task<?> handle;
+    private final int window;
+    private final ArrayDeque<T> buffer = new ArrayDeque<>();
+    private Task<?> pendingPull;
+    private Throwable failure;
+    private boolean ended;
+
+    public RemoteResultStream(final Task<?> handle)
+    {
+        this(handle, DEFAULT_WINDOW);
+    }
+
+    public RemoteResultStream(final Task<?> handle, final int window)
+    {
+        if (window < 1)
+        {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        this.handle = handle;
+        this.window = window;
+    }
+
+    @Override
+    public Task<List<T>> next(final int maxItems)
+    {
+        final Task<?> pull;
+        synchronized (this)
+        {
+            if (!buffer.isEmpty())
+            {
+                final List<T> items = new ArrayList<>(Math.min(maxItems, buffer.size()));
+                while (items.size() < maxItems && !buffer.isEmpty())
+                {
+                    items.add(buffer.poll());
+                }
+                requestMore();
+                return Task.fromValue(items);
+            }
+            if (failure != null)
+            {
+                return Task.fromException(failure);
+            }
+            if (ended)
+            {
+                return Task.fromValue(Collections.emptyList());
+            }
+            pull = requestMore();
+        }
+        return pull.thenCompose(() -> next(maxItems));
+    }
+
+    // must be called holding the lock
+    private Task<?> requestMore()
+    {
+        if (pendingPull != null || ended || failure != null || buffer.size() > window / 2)
+        {
+            return pendingPull;
+        }
+        final int credits = window - buffer.size();
+        final Task<?> pull = handle
+                .thenCompose(h -> ((StreamHandle) h).getSource().pull(credits))
+                .handle((items, ex) -> {
+                    synchronized (this)
+                    {
+                        pendingPull = null;
+                        if (ex != null)
+                        {
+                            failure = ex;
+                        }
+                        else if (items == null || items.isEmpty())
+                        {
+                            ended = true;
+                        }
+                        else
+                        {
+                            @SuppressWarnings("unchecked")
+                            final List<T> received = (List<T>) items;
+                            buffer.addAll(received);
+                        }
+                    }
+                    return null;
+                });
+        if (!pull.isDone())
+        {
+            pendingPull = pull;
+        }
+        return pull;
+    }
+
+    @Override
+    public Task<Void> close()
+    {
+        synchronized (this)
+        {
+            if (ended)
+            {
+                return Task.done();
+            }
+            ended = true;
+            buffer.clear();
+        }
+        return handle.thenCompose(h -> ((StreamHandle) h).getSource().close());
+    }
+}
@@ -127,6 +127,29 @@ public interface Runtime
      */
     Task<NodeAddress> locateActor(final Addressable actorReference, final boolean forceActivation);
 
+    /**
+     * Gets the location this node remembers for an actor, without consulting other nodes.
+     * <p/>
+     * Sent along with serialized actor references so that the receiver can skip the lookup.
+     *
+     * @return the remembered actor address, null if unknown.
+     */
+    default NodeAddress getLocationHint(final Addressable actorReference)
+    {
+        return null;
+    }
+
+    /**
+     * Remembers an actor location learned from another node, unless this node already knows one.
+     * <p/>
+     * The hint might be stale, in which case the node that receives the next message forwards it.
+     *
+     * @param address the node where the actor was last seen.
+     */
+    default void setLocationHint(final Addressable actorReference, final NodeAddress address)
+    {
+    }
+
 
     /**
      * Installs this observer into this node.
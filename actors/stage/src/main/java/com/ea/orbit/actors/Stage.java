@@ -60,6 +60,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Singleton
@@ -137,6 +138,11 @@ public class Stage implements Startable
         this.messaging = messaging;
     }
 
+    public void setHosting(final Hosting hosting)
+    {
+        this.hosting = hosting;
+    }
+
     public void setExecutionPool(final ExecutorService executionPool)
     {
         this.executionPool = executionPool;
@@ -308,6 +314,7 @@ public class Stage implements Startable
         messaging.setExecutor(messagingPool);
 
         hosting.setExecution(execution);
+        hosting.setMessaging(messaging);
         hosting.setClusterPeer(clusterPeer);
         messaging.setClusterPeer(clusterPeer);
 
@@ -318,6 +325,7 @@ public class Stage implements Startable
         execution.start();
 
         Task<?> future = clusterPeer.join(clusterName, nodeName);
+        future = future.thenRun(hosting::initDirectory);
         if (mode == StageMode.HOST)
         {
             future = future.thenRun(() -> Actor.getReference(ReminderController.class, "0").ensureStart());
@@ -491,6 +499,30 @@ public class Stage implements Startable
         return value;
     }
 
+    @ExportMetric(name = "activationsMovedOut")
+    public long getActivationsMovedOut()
+    {
+        long value = 0;
+        if (execution != null)
+        {
+            value = execution.getActivationsMovedOutCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "activationsMovedIn")
+    public long getActivationsMovedIn()
+    {
+        long value = 0;
+        if (execution != null)
+        {
+            value = execution.getActivationsMovedInCount();
+        }
+
+        return value;
+    }
+
     @ExportMetric(name = "messagesReceived")
     public long getMessagesReceived()
     {
@@ -527,4 +559,244 @@ public class Stage implements Startable
 
         return value;
     }
+
+    @ExportMetric(name = "exportedStreams")
+    public long getExportedStreams()
+    {
+        long value = 0;
+        if (execution != null)
+        {
+            value = execution.getExportedStreamCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "messagesForwarded")
+    public long getMessagesForwarded()
+    {
+        long value = 0;
+        if (messaging != null)
+        {
+            value = messaging.getMessagesForwardedCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "locationCacheHits")
+    public long getLocationCacheHits()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getLocationCacheHitCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "locationCacheMisses")
+    public long getLocationCacheMisses()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getLocationCacheMissCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "locationCacheEvictions")
+    public long getLocationCacheEvictions()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getLocationCacheEvictionCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "locationCacheSize")
+    public long getLocationCacheSize()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getLocationCacheSize();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "affinityPlacements")
+    public long getAffinityPlacements()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getAffinityPlacementCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "directoryLookupsCoalesced")
+    public long getDirectoryLookupsCoalesced()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getCoalescedLookupCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "locationHintsSeeded")
+    public long getLocationHintsSeeded()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getLocationHintsSeededCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "nodesSuspected")
+    public long getNodesSuspected()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getNodesSuspectedCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "directoryPartitionSize")
+    public long getDirectoryPartitionSize()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getDirectoryPartitionSize();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "directoryBatches")
+    public long getDirectoryBatches()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getDirectoryBatchCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "directoryEntriesRestored")
+    public long getDirectoryEntriesRestored()
+    {
+        long value = 0;
+        if (hosting != null)
+        {
+            value = hosting.getDirectoryEntriesRestoredCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "decodeBatches")
+    public long getDecodeBatches()
+    {
+        long value = 0;
+        if (messaging != null)
+        {
+            value = messaging.getDecodeBatchCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "messagesThrottled")
+    public long getMessagesThrottled()
+    {
+        long value = 0;
+        if (messaging != null)
+        {
+            value = messaging.getMessagesThrottledCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "messagesOverloaded")
+    public long getMessagesOverloaded()
+    {
+        long value = 0;
+        if (messaging != null)
+        {
+            value = messaging.getMessagesOverloadedCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "messagesCompressed")
+    public long getMessagesCompressed()
+    {
+        long value = 0;
+        if (messaging != null)
+        {
+            value = messaging.getMessagesCompressedCount();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "compressionRatio")
+    public double getCompressionRatio()
+    {
+        double value = 1.0;
+        if (messaging != null)
+        {
+            value = messaging.getCompressionRatio();
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "compressionTimeMillis")
+    public long getCompressionTimeMillis()
+    {
+        long value = 0;
+        if (messaging != null)
+        {
+            value = TimeUnit.NANOSECONDS.toMillis(messaging.getCompressionTimeNanos());
+        }
+
+        return value;
+    }
+
+    @ExportMetric(name = "decompressionTimeMillis")
+    public long getDecompressionTimeMillis()
+    {
+        long value = 0;
+        if (messaging != null)
+        {
+            value = TimeUnit.NANOSECONDS.toMillis(messaging.getDecompressionTimeNanos());
+        }
+
+        return value;
+    }
 }
@@ -0,0 +1,119 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.cluster;
+
+import com.ea.orbit.actors.runtime.ActorKey;
+
+import org.infinispan.commons.marshall.AdvancedExternalizer;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Writes the directory keys as the interface id followed by the actor id, with a tag for the common id types,
+ * instead of the java serialization of the class.
+ */
+public class ActorKeyExternalizer implements AdvancedExternalizer<ActorKey>
+{
+    // outside the ranges reserved by infinispan
+    public static final int ID = 3_310;
+
+    private static final byte STRING_ID = 0;
+    private static final byte INTEGER_ID = 1;
+    private static final byte LONG_ID = 2;
+    private static final byte NULL_ID = 3;
+    private static final byte OBJECT_ID = 4;
+
+    @Override
+    public Set<Class<? extends ActorKey>> getTypeClasses()
+    {
+        return Collections.singleton(ActorKey.class);
+    }
+
+    @Override
+    public Integer getId()
+    {
+        return ID;
+    }
+
+    @Override
+    public void writeObject(final ObjectOutput output, final ActorKey key) throws IOException
+    {
+        output.writeInt(key.getInterfaceId());
+        final Object id = key.getId();
+        if (id instanceof String)
+        {
+            output.writeByte(STRING_ID);
+            output.writeUTF((String) id);
+        }
+        else if (id instanceof Integer)
+        {
+            output.writeByte(INTEGER_ID);
+            output.writeInt((Integer) id);
+        }
+        else if (id instanceof Long)
+        {
+            output.writeByte(LONG_ID);
+            output.writeLong((Long) id);
+        }
+        else if (id == null)
+        {
+            output.writeByte(NULL_ID);
+        }
+        else
+        {
+            output.writeByte(OBJECT_ID);
+            output.writeObject(id);
+        }
+    }
+
+    @Override
+    public ActorKey readObject(final ObjectInput input) throws IOException, ClassNotFoundException
+    {
+        final int interfaceId = input.readInt();
+        final byte type = input.readByte();
+        switch (type)
+        {
+            case STRING_ID:
+                return new ActorKey(interfaceId, input.readUTF());
+            case INTEGER_ID:
+                return new ActorKey(interfaceId, input.readInt());
+            case LONG_ID:
+                return new ActorKey(interfaceId, input.readLong());
+            case NULL_ID:
+                return new ActorKey(interfaceId, null);
+            default:
+                return new ActorKey(interfaceId, input.readObject());
+        }
+    }
+}
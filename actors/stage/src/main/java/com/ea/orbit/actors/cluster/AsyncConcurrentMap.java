@@ -0,0 +1,84 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.cluster;
+
+import com.ea.orbit.concurrent.Task;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Asynchronous view of a distributed cache, the operations don't block the caller while the cache talks to other nodes.
+ *
+ * @param <K> the cache key
+ * @param <V> the cache value
+ */
+public interface AsyncConcurrentMap<K, V>
+{
+    Task<V> getAsync(K key);
+
+    Task<V> putAsync(K key, V value);
+
+    Task<V> putIfAbsentAsync(K key, V value);
+
+    Task<Boolean> removeAsync(K key, V value);
+
+    /**
+     * Wraps a map whose operations don't block, the returned tasks are already completed.
+     */
+    static <K, V> AsyncConcurrentMap<K, V> of(final ConcurrentMap<K, V> map)
+    {
+        return new AsyncConcurrentMap<K, V>()
+        {
+            @Override
+            public Task<V> getAsync(final K key)
+            {
+                return Task.fromValue(map.get(key));
+            }
+
+            @Override
+            public Task<V> putAsync(final K key, final V value)
+            {
+                return Task.fromValue(map.put(key, value));
+            }
+
+            @Override
+            public Task<V> putIfAbsentAsync(final K key, final V value)
+            {
+                return Task.fromValue(map.putIfAbsent(key, value));
+            }
+
+            @Override
+            public Task<Boolean> removeAsync(final K key, final V value)
+            {
+                return Task.fromValue(map.remove(key, value));
+            }
+        };
+    }
+}
@@ -58,6 +58,18 @@ public interface ClusterPeer
      */
     void registerMessageReceiver(MessageListener messageListener);
 
+    /**
+     * Registers a listener that will be called when a client that is not part of the view is gone.
+     * <p>
+     * The default implementation ignores the listener, for peers where all the nodes are in the view.
+     * </p>
+     *
+     * @param clientListener the listener
+     */
+    default void registerClientListener(ClientListener clientListener)
+    {
+    }
+
     /**
      * Sends a message to other cluster node.
      *
@@ -67,7 +79,34 @@ public interface ClusterPeer
     void sendMessage(NodeAddress toAddress, byte[] message);
 
     /**
-     * Gets a reference to a distributed cache
+     * Sends a message to other cluster node, letting the peer pick how to deliver it.
+     * <p>
+     * The default implementation ignores the message class.
+     * </p>
+     *
+     * @param toAddress    the target node address
+     * @param message      the byte array representing the message
+     * @param messageClass what the message is for
+     */
+    default void sendMessage(NodeAddress toAddress, byte[] message, MessageClass messageClass)
+    {
+        sendMessage(toAddress, message);
+    }
+
+    /**
+     * Tells if the peer provides distributed caches.
+     * Peers without caches don't support {@link #getCache(String)},
+     * the stage then keeps the actor directory partitioned among the servers.
+     *
+     * @return true by default
+     */
+    default boolean hasCaches()
+    {
+        return true;
+    }
+
+    /**
+     * Gets a reference to a distributed cache, only available if {@link #hasCaches()}.
      *
      * @param name cache name
      * @param <K>  the cache  key
@@ -76,6 +115,22 @@ public interface ClusterPeer
      */
     <K, V> ConcurrentMap<K, V> getCache(String name);
 
+    /**
+     * Gets an asynchronous view of a distributed cache.
+     * <p>
+     * The default implementation wraps {@link #getCache(String)}, for peers whose caches don't block.
+     * </p>
+     *
+     * @param name cache name
+     * @param <K>  the cache  key
+     * @param <V>  the cache value
+     * @return the asynchronous view of the cache
+     */
+    default <K, V> AsyncConcurrentMap<K, V> getAsyncCache(String name)
+    {
+        return AsyncConcurrentMap.of(getCache(name));
+    }
+
     /**
      * Joins a cluster
      *
@@ -33,6 +33,8 @@ import com.ea.orbit.annotation.Config;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.exception.UncheckedException;
 
+import org.infinispan.Cache;
+import org.infinispan.commons.util.concurrent.NotifyingFuture;
 import org.infinispan.configuration.cache.CacheMode;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
 import org.infinispan.configuration.global.GlobalConfigurationBuilder;
@@ -57,11 +59,13 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinTask;
 
 @Singleton
@@ -71,8 +75,11 @@ public class JGroupsClusterPeer implements ClusterPeer
 
     private int portRangeLength = 1000;
     private Task<Address> startFuture;
+    private JChannel baseChannel;
     private ForkChannel channel;
-    private DefaultCacheManager cacheManager;
+    private volatile DefaultCacheManager cacheManager;
+    private String clusterName;
+    private String nodeName;
     private NodeInfo local;
 
     private NodeInfo master;
@@ -84,6 +91,23 @@ public class JGroupsClusterPeer implements ClusterPeer
     @Config("orbit.actors.jgroupsConfig")
     private String jgroupsConfig = "classpath:/conf/jgroups.xml";
 
+    // overrides the bundler_type of the transport, if set.
+    @Config("orbit.actors.jgroupsBundler")
+    private String jgroupsBundler;
+
+    private final Map<MessageClass, Message.Flag[]> messageFlags = new EnumMap<>(MessageClass.class);
+
+    {
+        // bundling favors throughput: it stays for the application calls.
+        // responses and system messages are not bundled, the callers are waiting for them.
+        // nothing is sent out of band: unbundled OOB messages take an OOB thread each,
+        // the default pool drops them once its threads are busy and they wait for a retransmission (see JGroupsMessageFlagsBenchmark).
+        messageFlags.put(MessageClass.REQUEST, new Message.Flag[0]);
+        messageFlags.put(MessageClass.ONE_WAY, new Message.Flag[0]);
+        messageFlags.put(MessageClass.RESPONSE, new Message.Flag[]{ Message.Flag.DONT_BUNDLE });
+        messageFlags.put(MessageClass.SYSTEM, new Message.Flag[]{ Message.Flag.DONT_BUNDLE });
+    }
+
     private boolean nameBasedUpdPort = true;
 
     @Override
@@ -120,6 +144,8 @@ public class JGroupsClusterPeer implements ClusterPeer
 
     public Task<?> join(final String clusterName, final String nodeName)
     {
+        this.clusterName = clusterName;
+        this.nodeName = nodeName;
         final ForkJoinTask<Address> f = ForkJoinTask.adapt(new Callable<Address>()
         {
             @Override
@@ -135,8 +161,13 @@ public class JGroupsClusterPeer implements ClusterPeer
                     // we are using the default that allows discovery based on broadcast packets.
                     // It must be asserted that the production network support (enables) this.
                     // Otherwise it's also possible to change the discovery mechanism.
-                    JChannel baseChannel = new JChannel(configToURL(getJgroupsConfig()));
+                    baseChannel = new JChannel(configToURL(getJgroupsConfig()));
                     baseChannel.setName(nodeName);
+                    if (jgroupsBundler != null)
+                    {
+                        // the bundler is created when the channel connects
+                        baseChannel.getProtocolStack().getTransport().setValue("bundler_type", jgroupsBundler);
+                    }
 
                     if (isNameBasedUpdPort() && baseChannel.getProtocolStack().getBottomProtocol() instanceof UDP)
                     {
@@ -169,21 +200,6 @@ public class JGroupsClusterPeer implements ClusterPeer
 
                     });
 
-                    final GlobalConfigurationBuilder globalConfigurationBuilder = GlobalConfigurationBuilder.defaultClusteredBuilder();
-                    globalConfigurationBuilder.globalJmxStatistics().allowDuplicateDomains(true);
-                    globalConfigurationBuilder.transport().clusterName(clusterName).nodeName(nodeName).transport(new JGroupsTransport(baseChannel));
-
-                    ConfigurationBuilder builder = new ConfigurationBuilder();
-                    builder.clustering().cacheMode(CacheMode.DIST_ASYNC);
-
-                    cacheManager = new DefaultCacheManager(globalConfigurationBuilder.build(), builder.build());
-
-                    ConfigurationBuilder builder2 = new ConfigurationBuilder();
-                    builder2.clustering().cacheMode(CacheMode.REPL_SYNC);
-                    cacheManager.defineConfiguration("clusterTopologyCache", builder2.build());
-
-                    // need to get a cache, any cache to force the initialization
-                    cacheManager.getCache("clusterTopologyCache");
                     local = new NodeInfo(channel.getAddress());
                     logger.info("Registering the local address");
                     logger.info("Done with JGroups initialization");
@@ -228,7 +244,46 @@ public class JGroupsClusterPeer implements ClusterPeer
     {
         channel.close();
         channel = null;
-        cacheManager.stop();
+        if (cacheManager != null)
+        {
+            cacheManager.stop();
+        }
+    }
+
+    /**
+     * Infinispan is only started when a cache is first requested,
+     * nodes that don't use the cluster caches don't pay for it.
+     */
+    private DefaultCacheManager getCacheManager()
+    {
+        if (cacheManager == null)
+        {
+            sync();
+            synchronized (this)
+            {
+                if (cacheManager == null)
+                {
+                    final GlobalConfigurationBuilder globalConfigurationBuilder = GlobalConfigurationBuilder.defaultClusteredBuilder();
+                    globalConfigurationBuilder.globalJmxStatistics().allowDuplicateDomains(true);
+                    globalConfigurationBuilder.transport().clusterName(clusterName).nodeName(nodeName).transport(new JGroupsTransport(baseChannel));
+                    globalConfigurationBuilder.serialization().addAdvancedExternalizer(new ActorKeyExternalizer());
+
+                    ConfigurationBuilder builder = new ConfigurationBuilder();
+                    builder.clustering().cacheMode(CacheMode.DIST_ASYNC);
+
+                    final DefaultCacheManager newCacheManager = new DefaultCacheManager(globalConfigurationBuilder.build(), builder.build());
+
+                    ConfigurationBuilder builder2 = new ConfigurationBuilder();
+                    builder2.clustering().cacheMode(CacheMode.REPL_SYNC);
+                    newCacheManager.defineConfiguration("clusterTopologyCache", builder2.build());
+
+                    // need to get a cache, any cache to force the initialization
+                    newCacheManager.getCache("clusterTopologyCache");
+                    cacheManager = newCacheManager;
+                }
+            }
+        }
+        return cacheManager;
     }
 
     // ensures that the channel is connected
@@ -261,8 +316,14 @@ public class JGroupsClusterPeer implements ClusterPeer
         viewListener.onViewChange(nodeMap2.keySet());
     }
 
-    @SuppressWarnings("PMD.AvoidThrowingNullPointerException")
     public void sendMessage(NodeAddress address, byte message[])
+    {
+        sendMessage(address, message, MessageClass.REQUEST);
+    }
+
+    @Override
+    @SuppressWarnings("PMD.AvoidThrowingNullPointerException")
+    public void sendMessage(final NodeAddress address, final byte[] message, final MessageClass messageClass)
     {
         sync();
         try
@@ -282,7 +343,13 @@ public class JGroupsClusterPeer implements ClusterPeer
             {
                 throw new IllegalStateException("Cluster not connected");
             }
-            channel.send(node.address, message);
+            final Message msg = new Message(node.address, message);
+            final Message.Flag[] flags = messageFlags.get(messageClass);
+            if (flags.length > 0)
+            {
+                msg.setFlag(flags);
+            }
+            channel.send(msg);
         }
         catch (Exception e)
         {
@@ -293,7 +360,59 @@ public class JGroupsClusterPeer implements ClusterPeer
     @Override
     public <K, V> ConcurrentMap<K, V> getCache(final String name)
     {
-        return cacheManager.getCache(name);
+        return getCacheManager().getCache(name);
+    }
+
+    @Override
+    public <K, V> AsyncConcurrentMap<K, V> getAsyncCache(final String name)
+    {
+        final Cache<K, V> cache = getCacheManager().getCache(name);
+        return new AsyncConcurrentMap<K, V>()
+        {
+            @Override
+            public Task<V> getAsync(final K key)
+            {
+                return toTask(cache.getAsync(key));
+            }
+
+            @Override
+            public Task<V> putAsync(final K key, final V value)
+            {
+                return toTask(cache.putAsync(key, value));
+            }
+
+            @Override
+            public Task<V> putIfAbsentAsync(final K key, final V value)
+            {
+                return toTask(cache.putIfAbsentAsync(key, value));
+            }
+
+            @Override
+            public Task<Boolean> removeAsync(final K key, final V value)
+            {
+                return toTask(cache.removeAsync(key, value));
+            }
+        };
+    }
+
+    private static <T> Task<T> toTask(final NotifyingFuture<T> future)
+    {
+        final Task<T> task = new Task<>();
+        future.attachListener(f -> {
+            try
+            {
+                task.complete(f.get());
+            }
+            catch (ExecutionException ex)
+            {
+                task.completeExceptionally(ex.getCause());
+            }
+            catch (Exception ex)
+            {
+                task.completeExceptionally(ex);
+            }
+        });
+        return task;
     }
 
     protected void doReceive(final Message msg)
@@ -325,6 +444,50 @@ public class JGroupsClusterPeer implements ClusterPeer
         this.jgroupsConfig = jgroupsConfig;
     }
 
+    public String getJgroupsBundler()
+    {
+        return jgroupsBundler;
+    }
+
+    /**
+     * Sets the bundler of the transport, one of the JGroups bundler_type values:
+     * "sender-sends-with-timer" waits up to max_bundle_timeout to fill a bundle, trading latency for throughput,
+     * "transfer-queue" and "sender-sends" send as soon as there's nothing else queued, keeping the latency low under light load.
+     *
+     * @param jgroupsBundler the bundler type, or null to keep the one in the jgroups configuration
+     */
+    public void setJgroupsBundler(final String jgroupsBundler)
+    {
+        this.jgroupsBundler = jgroupsBundler;
+    }
+
+    /**
+     * Sets the JGroups flags used to send a class of messages.
+     * <p>
+     * By default responses and system messages are sent unbundled,
+     * and the rest with the defaults of the channel, which are ordered and bundled.
+     * Unbundled messages skip the wait for a full bundle: they lower the latency of the message
+     * at the cost of more packets, and fewer messages per second, under load.
+     * Out of band messages skip the per sender ordering and the regular thread pool.
+     * Combined with DONT_BUNDLE each one takes an OOB thread, so the OOB pool needs a queue
+     * or enough threads for the expected load, otherwise the messages are dropped and retransmitted.
+     * </p>
+     * <p>
+     * Measured with JGroupsMessageFlagsBenchmark on loopback, with the default configuration:
+     * with the "transfer-queue" bundler, unbundled responses take a call from about 290us to 70-100us
+     * and keep about 136k calls/s with 1000 in flight, while unbundled OOB responses fall to about 8k calls/s.
+     * With "sender-sends-with-timer", unbundled responses halve the 31ms of a single call,
+     * but reach 112k calls/s instead of 286k.
+     * </p>
+     *
+     * @param messageClass the class of messages
+     * @param flags        the flags for those messages, none to use the defaults of the channel
+     */
+    public void setMessageFlags(final MessageClass messageClass, final Message.Flag... flags)
+    {
+        messageFlags.put(messageClass, flags.clone());
+    }
+
     public boolean isNameBasedUpdPort()
     {
         return nameBasedUpdPort;
@@ -0,0 +1,992 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.cluster;
+
+import com.ea.orbit.annotation.Config;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Cluster peer that connects the nodes directly with TCP.
+ * <p>
+ * Each pair of nodes shares one persistent connection carrying length prefixed frames,
+ * the frames queued while the connection is busy are sent together with a single gathering write.
+ * A node joins by connecting to the seed addresses, then the members send each other their member list
+ * whenever it changes and connect to the members they don't know yet. A member leaves the view when its connection closes.
+ * </p>
+ * <p>
+ * In client mode the node doesn't join the membership: it connects only to the seeds, that act as its gateways,
+ * and reaches the other members through them. The members learn about a client only when it calls them,
+ * and answer through the gateway the call came from, so clients can come and go without changing the view of the cluster.
+ * When a client disconnects, its gateway tells the members, and they notify the {@link ClientListener}.
+ * </p>
+ * <p>
+ * This peer has no distributed caches, the stages using it keep the actor directory partitioned among the servers
+ * ({@code orbit.actors.directory=PARTITIONED}).
+ * </p>
+ */
+public class TcpClusterPeer implements ClusterPeer
+{
+    private static final Logger logger = LoggerFactory.getLogger(TcpClusterPeer.class);
+
+    private static final byte FRAME_HELLO = 1;
+    private static final byte FRAME_MEMBERS = 2;
+    private static final byte FRAME_MESSAGE = 3;
+    // [long to msb][long to lsb][message], asks a gateway to pass a message on
+    private static final byte FRAME_ROUTE = 4;
+    // [long from msb][long from lsb][message], a message passed on by a gateway
+    private static final byte FRAME_RELAYED = 5;
+    // [long client msb][long client lsb], a gateway telling the members that a client disconnected
+    private static final byte FRAME_CLIENT_LEFT = 6;
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_GATHERED_FRAMES = 64;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Interface the node listens on.
+     */
+    @Config("orbit.actors.tcp.host")
+    private String host = "127.0.0.1";
+
+    /**
+     * Port the node listens on, 0 to pick a free one.
+     */
+    @Config("orbit.actors.tcp.port")
+    private int port = 0;
+
+    /**
+     * Comma separated host:port addresses of the nodes contacted to join the cluster.
+     * The first node of a cluster can't reach any of them and starts alone.
+     */
+    @Config("orbit.actors.tcp.seeds")
+    private String seeds = "";
+
+    /**
+     * If true the node is a client of the seeds, its gateways, instead of a member of the cluster.
+     */
+    @Config("orbit.actors.tcp.client")
+    private boolean client;
+
+    private final UUID localId = UUID.randomUUID();
+    private final NodeAddress localAddress = new NodeAddressImpl(localId);
+    private String clusterName;
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private final Task<Void> closed = new Task<>();
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    // members that completed the handshake, the view is these and the local node
+    private final ConcurrentMap<NodeAddress, Connection> members = new ConcurrentHashMap<>();
+    private final Set<UUID> connecting = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // in a gateway, the clients connected to it
+    private final ConcurrentMap<NodeAddress, Connection> clients = new ConcurrentHashMap<>();
+    // the clients that called this node, and the gateway connection their calls came through
+    private final ConcurrentMap<NodeAddress, Connection> routes = new ConcurrentHashMap<>();
+    // in a client, the gateway connections sorted by id
+    private volatile Connection[] gateways = new Connection[0];
+    private ViewListener viewListener;
+    private MessageListener messageListener;
+    private ClientListener clientListener;
+    private final Task<Void> joined = new Task<>();
+    private final AtomicInteger pendingSeeds = new AtomicInteger();
+
+    private class Connection
+    {
+        final SocketChannel channel;
+        // the connection initiator, the other side is who accepted it
+        final boolean outgoing;
+        final boolean seed;
+        SelectionKey key;
+        final Queue<ByteBuffer[]> writeQueue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean writeScheduled = new AtomicBoolean();
+        ByteBuffer[] inFlight;
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        UUID remoteId;
+        NodeAddress remoteAddress;
+        String remoteHost;
+        int remotePort;
+        boolean remoteClient;
+        // in a client, the members this gateway reported
+        volatile Set<NodeAddress> reported = Collections.emptySet();
+
+        Connection(final SocketChannel channel, final boolean outgoing, final boolean seed)
+        {
+            this.channel = channel;
+            this.outgoing = outgoing;
+            this.seed = seed;
+        }
+    }
+
+    public void setHost(final String host)
+    {
+        this.host = host;
+    }
+
+    public void setPort(final int port)
+    {
+        this.port = port;
+    }
+
+    /**
+     * @return the port the node listens on, only available after joining if the configured port was 0.
+     */
+    public int getPort()
+    {
+        return port;
+    }
+
+    public void setSeeds(final String seeds)
+    {
+        this.seeds = seeds;
+    }
+
+    public void setClient(final boolean client)
+    {
+        this.client = client;
+    }
+
+    public boolean isClient()
+    {
+        return client;
+    }
+
+    /**
+     * @return the number of clients using this node as gateway.
+     */
+    public int getClientCount()
+    {
+        return clients.size();
+    }
+
+    @Override
+    public NodeAddress localAddress()
+    {
+        return localAddress;
+    }
+
+    @Override
+    public void registerViewListener(final ViewListener viewListener)
+    {
+        this.viewListener = viewListener;
+    }
+
+    @Override
+    public void registerMessageReceiver(final MessageListener messageListener)
+    {
+        this.messageListener = messageListener;
+    }
+
+    @Override
+    public void registerClientListener(final ClientListener clientListener)
+    {
+        this.clientListener = clientListener;
+    }
+
+    @Override
+    public Task<?> join(final String clusterName, final String nodeName)
+    {
+        this.clusterName = clusterName;
+        try
+        {
+            selector = Selector.open();
+            if (!client)
+            {
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(host, port));
+                serverChannel.configureBlocking(false);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+                port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedException(ex);
+        }
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "orbit-tcp-" + (nodeName != null ? nodeName : port));
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        runOnSelector(this::notifyViewChange);
+
+        final List<InetSocketAddress> seedAddresses = new ArrayList<>();
+        for (final String seed : seeds.split(","))
+        {
+            final String trimmed = seed.trim();
+            if (trimmed.length() > 0)
+            {
+                final int colon = trimmed.lastIndexOf(':');
+                seedAddresses.add(new InetSocketAddress(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1))));
+            }
+        }
+        pendingSeeds.set(seedAddresses.size());
+        if (seedAddresses.isEmpty())
+        {
+            joined.complete(null);
+        }
+        seedAddresses.forEach(address -> runOnSelector(() -> connect(address, null, true)));
+        return joined;
+    }
+
+    @Override
+    public void leave()
+    {
+        if (selectorThread == null)
+        {
+            return;
+        }
+        runOnSelector(() -> {
+            running = false;
+            // also closes the duplicated connections, that are not in the members
+            selector.keys().stream()
+                    .map(SelectionKey::attachment)
+                    .filter(a -> a instanceof Connection)
+                    .collect(Collectors.toList())
+                    .forEach(c -> close((Connection) c, null));
+            try
+            {
+                if (serverChannel != null)
+                {
+                    serverChannel.close();
+                }
+                selector.close();
+            }
+            catch (IOException ex)
+            {
+                logger.debug("Error closing the selector", ex);
+            }
+            closed.complete(null);
+        });
+        if (Thread.currentThread() != selectorThread)
+        {
+            // like the other peers, returns only after the connections are closed
+            closed.join();
+        }
+    }
+
+    @Override
+    public void sendMessage(final NodeAddress toAddress, final byte[] message)
+    {
+        if (toAddress == null)
+        {
+            throw new IllegalArgumentException("Null node address");
+        }
+        if (toAddress.equals(localAddress))
+        {
+            messageListener.receive(localAddress, message);
+            return;
+        }
+        Connection connection = members.get(toAddress);
+        if (connection == null)
+        {
+            connection = clients.get(toAddress);
+        }
+        if (connection != null)
+        {
+            final ByteBuffer header = ByteBuffer.allocate(5);
+            header.putInt(message.length + 1).put(FRAME_MESSAGE).flip();
+            send(connection, new ByteBuffer[]{ header, ByteBuffer.wrap(message) });
+            return;
+        }
+        // a member through the gateways, or a client through the gateway it called from
+        final Connection gateway = client ? selectGateway(toAddress) : routes.get(toAddress);
+        if (gateway == null)
+        {
+            throw new IllegalArgumentException("Cluster node not found: " + toAddress);
+        }
+        send(gateway, addressedFrame(FRAME_ROUTE, toAddress.asUUID(), message));
+    }
+
+    /**
+     * Picks the gateway for the messages to a member. The messages to the same member always go
+     * through the same gateway, while it's connected, so that they keep their order.
+     */
+    private Connection selectGateway(final NodeAddress toAddress)
+    {
+        final Connection[] current = gateways;
+        final int start = current.length > 0 ? Math.floorMod(toAddress.hashCode(), current.length) : 0;
+        for (int i = 0; i < current.length; i++)
+        {
+            final Connection gateway = current[(start + i) % current.length];
+            if (gateway.reported.contains(toAddress))
+            {
+                return gateway;
+            }
+        }
+        return null;
+    }
+
+    private static ByteBuffer[] addressedFrame(final byte type, final UUID address, final byte[] message)
+    {
+        final ByteBuffer header = ByteBuffer.allocate(21);
+        header.putInt(message.length + 17).put(type)
+                .putLong(address.getMostSignificantBits()).putLong(address.getLeastSignificantBits()).flip();
+        return new ByteBuffer[]{ header, ByteBuffer.wrap(message) };
+    }
+
+    @Override
+    public boolean hasCaches()
+    {
+        return false;
+    }
+
+    @Override
+    public <K, V> ConcurrentMap<K, V> getCache(final String name)
+    {
+        // never called by the stage, see hasCaches()
+        throw new UnsupportedOperationException("The tcp cluster peer has no distributed caches");
+    }
+
+    private void runOnSelector(final Runnable task)
+    {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    private void selectLoop()
+    {
+        while (running)
+        {
+            try
+            {
+                selector.select();
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null)
+                {
+                    task.run();
+                }
+                if (!running)
+                {
+                    break;
+                }
+                for (final SelectionKey key : selector.selectedKeys())
+                {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+            }
+            catch (Exception ex)
+            {
+                if (running)
+                {
+                    logger.error("Error in the tcp cluster peer", ex);
+                }
+            }
+        }
+    }
+
+    private void handle(final SelectionKey key)
+    {
+        if (!key.isValid())
+        {
+            return;
+        }
+        if (key.isAcceptable())
+        {
+            accept();
+            return;
+        }
+        final Connection connection = (Connection) key.attachment();
+        try
+        {
+            if (key.isConnectable())
+            {
+                if (connection.channel.finishConnect())
+                {
+                    key.interestOps(SelectionKey.OP_READ);
+                    sendHello(connection);
+                }
+                return;
+            }
+            if (key.isReadable())
+            {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable())
+            {
+                write(connection);
+            }
+        }
+        catch (Exception ex)
+        {
+            close(connection, ex);
+        }
+    }
+
+    private void connect(final InetSocketAddress address, final UUID expectedId, final boolean seed)
+    {
+        SocketChannel channel = null;
+        try
+        {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final Connection connection = new Connection(channel, true, seed);
+            connection.remoteId = expectedId;
+            connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+            if (channel.connect(address))
+            {
+                connection.key.interestOps(SelectionKey.OP_READ);
+                sendHello(connection);
+            }
+        }
+        catch (IOException ex)
+        {
+            logger.debug("Error connecting to " + address, ex);
+            if (channel != null)
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException e)
+                {
+                    logger.debug("Error closing the channel", e);
+                }
+            }
+            if (expectedId != null)
+            {
+                connecting.remove(expectedId);
+            }
+            if (seed)
+            {
+                seedDone();
+            }
+        }
+    }
+
+    private void accept()
+    {
+        try
+        {
+            final SocketChannel channel = serverChannel.accept();
+            if (channel == null)
+            {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final Connection connection = new Connection(channel, false, false);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            sendHello(connection);
+        }
+        catch (IOException ex)
+        {
+            logger.error("Error accepting a connection", ex);
+        }
+    }
+
+    private void close(final Connection connection, final Exception cause)
+    {
+        if (cause != null && logger.isDebugEnabled())
+        {
+            logger.debug("Closing the connection to " + connection.remoteAddress, cause);
+        }
+        if (connection.key != null)
+        {
+            connection.key.cancel();
+        }
+        try
+        {
+            connection.channel.close();
+        }
+        catch (IOException ex)
+        {
+            logger.debug("Error closing the channel", ex);
+        }
+        if (connection.outgoing && connection.remoteId != null)
+        {
+            connecting.remove(connection.remoteId);
+        }
+        if (connection.seed)
+        {
+            seedDone();
+        }
+        if (connection.remoteAddress != null)
+        {
+            if (connection.remoteClient)
+            {
+                if (clients.remove(connection.remoteAddress, connection) && running)
+                {
+                    final ByteBuffer[] frame = addressedFrame(FRAME_CLIENT_LEFT, connection.remoteId, new byte[0]);
+                    members.values().forEach(member -> send(member, frame));
+                    notifyClientLeft(connection.remoteAddress);
+                }
+            }
+            else if (members.remove(connection.remoteAddress, connection))
+            {
+                // the clients of a gone gateway can't be answered anymore
+                routes.forEach((clientAddress, gateway) -> {
+                    if (gateway == connection && routes.remove(clientAddress, gateway))
+                    {
+                        notifyClientLeft(clientAddress);
+                    }
+                });
+                notifyViewChange();
+            }
+        }
+    }
+
+    private void seedDone()
+    {
+        if (pendingSeeds.decrementAndGet() <= 0)
+        {
+            // joined a cluster or, if no seed answered, started a new one.
+            joined.complete(null);
+        }
+    }
+
+    private void send(final Connection connection, final ByteBuffer[] frame)
+    {
+        connection.writeQueue.add(frame);
+        if (connection.writeScheduled.compareAndSet(false, true))
+        {
+            runOnSelector(() -> {
+                if (connection.key.isValid())
+                {
+                    connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            });
+        }
+    }
+
+    private void write(final Connection connection) throws IOException
+    {
+        while (true)
+        {
+            if (connection.inFlight == null)
+            {
+                // write combining: all the frames queued so far go in the same write.
+                final List<ByteBuffer> buffers = new ArrayList<>();
+                ByteBuffer[] frame;
+                int frames = 0;
+                while (frames < MAX_GATHERED_FRAMES && (frame = connection.writeQueue.poll()) != null)
+                {
+                    Collections.addAll(buffers, frame);
+                    frames++;
+                }
+                if (buffers.isEmpty())
+                {
+                    connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+                    connection.writeScheduled.set(false);
+                    // a frame queued after the poll didn't schedule a write
+                    if (connection.writeQueue.isEmpty() || !connection.writeScheduled.compareAndSet(false, true))
+                    {
+                        return;
+                    }
+                    connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                    continue;
+                }
+                connection.inFlight = buffers.toArray(new ByteBuffer[buffers.size()]);
+            }
+            connection.channel.write(connection.inFlight);
+            if (connection.inFlight[connection.inFlight.length - 1].hasRemaining())
+            {
+                // the socket buffer is full, waits to be writable again.
+                return;
+            }
+            connection.inFlight = null;
+        }
+    }
+
+    private void read(final Connection connection) throws IOException
+    {
+        if (connection.channel.read(connection.readBuffer) < 0)
+        {
+            close(connection, null);
+            return;
+        }
+        final ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        while (buffer.remaining() >= 4)
+        {
+            final int length = buffer.getInt(buffer.position());
+            if (length < 1 || length > MAX_FRAME_SIZE)
+            {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            if (buffer.remaining() < 4 + length)
+            {
+                if (buffer.capacity() < 4 + length)
+                {
+                    final ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(buffer);
+                    connection.readBuffer = larger;
+                    return;
+                }
+                break;
+            }
+            buffer.getInt();
+            final byte type = buffer.get();
+            final byte[] payload = new byte[length - 1];
+            buffer.get(payload);
+            onFrame(connection, type, payload);
+            if (!connection.channel.isOpen())
+            {
+                return;
+            }
+        }
+        buffer.compact();
+        if (buffer.position() == 0 && buffer.capacity() > READ_BUFFER_SIZE)
+        {
+            connection.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+    }
+
+    private void onFrame(final Connection connection, final byte type, final byte[] payload) throws IOException
+    {
+        switch (type)
+        {
+            case FRAME_MESSAGE:
+                if (connection.remoteAddress != null)
+                {
+                    try
+                    {
+                        messageListener.receive(connection.remoteAddress, payload);
+                    }
+                    catch (Exception ex)
+                    {
+                        logger.error("Error receiving a message from " + connection.remoteAddress, ex);
+                    }
+                }
+                break;
+            case FRAME_HELLO:
+                onHello(connection, new DataInputStream(new ByteArrayInputStream(payload)));
+                break;
+            case FRAME_MEMBERS:
+                if (client)
+                {
+                    onGatewayMembers(connection, new DataInputStream(new ByteArrayInputStream(payload)));
+                }
+                else
+                {
+                    onMembers(new DataInputStream(new ByteArrayInputStream(payload)));
+                }
+                break;
+            case FRAME_ROUTE:
+                if (connection.remoteAddress != null)
+                {
+                    onRoute(connection, payload);
+                }
+                break;
+            case FRAME_RELAYED:
+                if (connection.remoteAddress != null)
+                {
+                    final ByteBuffer buffer = ByteBuffer.wrap(payload);
+                    final NodeAddress from = new NodeAddressImpl(new UUID(buffer.getLong(), buffer.getLong()));
+                    if (!client)
+                    {
+                        // the answers go back through the same gateway
+                        routes.put(from, connection);
+                    }
+                    try
+                    {
+                        messageListener.receive(from, Arrays.copyOfRange(payload, 16, payload.length));
+                    }
+                    catch (Exception ex)
+                    {
+                        logger.error("Error receiving a message from " + from, ex);
+                    }
+                }
+                break;
+            case FRAME_CLIENT_LEFT:
+                if (connection.remoteAddress != null && !client)
+                {
+                    final ByteBuffer buffer = ByteBuffer.wrap(payload);
+                    final NodeAddress clientAddress = new NodeAddressImpl(new UUID(buffer.getLong(), buffer.getLong()));
+                    // unless the client called through another gateway since
+                    if (routes.remove(clientAddress, connection))
+                    {
+                        notifyClientLeft(clientAddress);
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unknown frame type: " + type);
+        }
+    }
+
+    private void sendHello(final Connection connection) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(clusterName);
+        writeMember(out, localId, host, port);
+        out.writeBoolean(client);
+        send(connection, frame(FRAME_HELLO, bytes.toByteArray()));
+    }
+
+    private void onHello(final Connection connection, final DataInputStream in) throws IOException
+    {
+        final String remoteCluster = in.readUTF();
+        final UUID remoteId = new UUID(in.readLong(), in.readLong());
+        if (!clusterName.equals(remoteCluster) || remoteId.equals(localId)
+                || (connection.remoteId != null && !connection.remoteId.equals(remoteId)))
+        {
+            // another cluster, this node itself, or another node at the known address.
+            close(connection, null);
+            return;
+        }
+        connection.remoteId = remoteId;
+        connection.remoteAddress = new NodeAddressImpl(remoteId);
+        connection.remoteHost = in.readUTF();
+        connection.remotePort = in.readInt();
+        connection.remoteClient = in.readBoolean();
+        if (connection.outgoing)
+        {
+            connecting.remove(remoteId);
+        }
+        if (connection.remoteClient)
+        {
+            if (client)
+            {
+                // clients only talk to gateways
+                close(connection, null);
+                return;
+            }
+            clients.put(connection.remoteAddress, connection);
+            send(connection, frame(FRAME_MEMBERS, membersPayload()));
+            return;
+        }
+        final Connection existing = members.putIfAbsent(connection.remoteAddress, connection);
+        if (existing != null)
+        {
+            // the nodes connected to each other more than once, both end up sending through the same connection.
+            // the other one is left open: closing it could reach the other node before it has seen
+            // the handshake of the preferred connection, and it would take that as this node leaving.
+            if (preference(connection) < preference(existing))
+            {
+                members.replace(connection.remoteAddress, existing, connection);
+            }
+        }
+        else
+        {
+            notifyViewChange();
+            broadcastMembers();
+        }
+        if (connection.seed)
+        {
+            joined.complete(null);
+        }
+    }
+
+    /**
+     * Orders the connections between the same nodes the same way in both nodes:
+     * first the ones started by the node with the smaller id, then by the port they were started from.
+     */
+    private long preference(final Connection connection) throws IOException
+    {
+        final UUID initiator = connection.outgoing ? localId : connection.remoteId;
+        final UUID other = connection.outgoing ? connection.remoteId : localId;
+        final InetSocketAddress initiatorAddress = (InetSocketAddress) (connection.outgoing
+                ? connection.channel.getLocalAddress() : connection.channel.getRemoteAddress());
+        return (initiator.compareTo(other) < 0 ? 0 : 1L << 32) + initiatorAddress.getPort();
+    }
+
+    private void broadcastMembers() throws IOException
+    {
+        if (client)
+        {
+            return;
+        }
+        final byte[] payload = membersPayload();
+        for (final Connection connection : members.values())
+        {
+            send(connection, frame(FRAME_MEMBERS, payload));
+        }
+        for (final Connection connection : clients.values())
+        {
+            send(connection, frame(FRAME_MEMBERS, payload));
+        }
+    }
+
+    private byte[] membersPayload() throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final List<Connection> connections = new ArrayList<>(members.values());
+        out.writeInt(connections.size() + 1);
+        writeMember(out, localId, host, port);
+        for (final Connection connection : connections)
+        {
+            writeMember(out, connection.remoteId, connection.remoteHost, connection.remotePort);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void onGatewayMembers(final Connection gateway, final DataInputStream in) throws IOException
+    {
+        final int count = in.readInt();
+        final Set<NodeAddress> reported = new HashSet<>();
+        for (int i = 0; i < count; i++)
+        {
+            reported.add(new NodeAddressImpl(new UUID(in.readLong(), in.readLong())));
+            in.readUTF();
+            in.readInt();
+        }
+        gateway.reported = reported;
+        notifyViewChange();
+    }
+
+    private void onRoute(final Connection connection, final byte[] payload)
+    {
+        final ByteBuffer buffer = ByteBuffer.wrap(payload);
+        final UUID to = new UUID(buffer.getLong(), buffer.getLong());
+        final NodeAddress toAddress = new NodeAddressImpl(to);
+        if (to.equals(localId))
+        {
+            try
+            {
+                messageListener.receive(connection.remoteAddress, Arrays.copyOfRange(payload, 16, payload.length));
+            }
+            catch (Exception ex)
+            {
+                logger.error("Error receiving a message from " + connection.remoteAddress, ex);
+            }
+            return;
+        }
+        Connection target = members.get(toAddress);
+        if (target == null)
+        {
+            target = clients.get(toAddress);
+        }
+        if (target == null)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Dropping a message from " + connection.remoteAddress + " to the unknown node " + toAddress);
+            }
+            return;
+        }
+        send(target, addressedFrame(FRAME_RELAYED, connection.remoteId, Arrays.copyOfRange(payload, 16, payload.length)));
+    }
+
+    private void onMembers(final DataInputStream in) throws IOException
+    {
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            final UUID id = new UUID(in.readLong(), in.readLong());
+            final String memberHost = in.readUTF();
+            final int memberPort = in.readInt();
+            // only the node with the smaller id connects, so that each pair of nodes opens a single connection.
+            if (localId.compareTo(id) < 0 && !members.containsKey(new NodeAddressImpl(id)) && connecting.add(id))
+            {
+                connect(new InetSocketAddress(memberHost, memberPort), id, false);
+            }
+        }
+    }
+
+    private static void writeMember(final DataOutputStream out, final UUID id, final String memberHost, final int memberPort) throws IOException
+    {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+        out.writeUTF(memberHost);
+        out.writeInt(memberPort);
+    }
+
+    private static ByteBuffer[] frame(final byte type, final byte[] payload)
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(5 + payload.length);
+        buffer.putInt(payload.length + 1).put(type).put(payload).flip();
+        return new ByteBuffer[]{ buffer };
+    }
+
+    private void notifyClientLeft(final NodeAddress clientAddress)
+    {
+        if (clientListener != null && running)
+        {
+            try
+            {
+                clientListener.onClientLeft(clientAddress);
+            }
+            catch (Exception ex)
+            {
+                logger.error("Error notifying that a client left", ex);
+            }
+        }
+    }
+
+    private void notifyViewChange()
+    {
+        final Set<NodeAddress> view = new LinkedHashSet<>();
+        view.add(localAddress);
+        view.addAll(members.keySet());
+        if (client)
+        {
+            final List<Connection> current = new ArrayList<>(members.values());
+            current.sort((a, b) -> a.remoteId.compareTo(b.remoteId));
+            gateways = current.toArray(new Connection[current.size()]);
+            current.forEach(gateway -> view.addAll(gateway.reported));
+        }
+        if (viewListener != null && running)
+        {
+            try
+            {
+                viewListener.onViewChange(view);
+            }
+            catch (Exception ex)
+            {
+                logger.error("Error notifying the view change", ex);
+            }
+        }
+    }
+}
@@ -29,19 +29,59 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.ea.orbit.actors.runtime;
 
+import com.ea.orbit.actors.Addressable;
+
 import java.io.Serializable;
+import java.util.Objects;
 
+/**
+ * Key of an actor in the distributed directory and in the location cache: the interface id and the actor id.
+ */
 public class ActorKey implements Serializable
 {
-    private final String iClass;
-    private final String id;
+    private static final long serialVersionUID = 1L;
+
+    private final int interfaceId;
+    private final Object id;
+    // position in the consistent hash rings, computed on first use
+    private transient volatile long ringHash;
 
-    public ActorKey(String iClass, String id)
+    public ActorKey(final int interfaceId, final Object id)
     {
-        this.iClass = iClass;
+        this.interfaceId = interfaceId;
         this.id = id;
     }
 
+    public static ActorKey of(final Addressable reference)
+    {
+        final ActorReference<?> actorReference = (ActorReference<?>) reference;
+        return new ActorKey(actorReference._interfaceId(), actorReference.id);
+    }
+
+    public int getInterfaceId()
+    {
+        return interfaceId;
+    }
+
+    public Object getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return the hash that places this key in a {@link ConsistentHashRing}, the same in every node.
+     */
+    long ringHash()
+    {
+        long h = ringHash;
+        if (h == 0)
+        {
+            h = ConsistentHashRing.hash(this);
+            ringHash = h;
+        }
+        return h;
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -49,15 +89,22 @@ public class ActorKey implements Serializable
 
         return (this == o) || (o != null
                 && getClass() == o.getClass()
-                && iClass.equals((actorKey = (ActorKey) o).iClass)
-                && id.equals(actorKey.id));
+                && interfaceId == (actorKey = (ActorKey) o).interfaceId
+                && Objects.equals(id, actorKey.id));
     }
 
     @Override
     public int hashCode()
     {
-        int result = iClass.hashCode();
-        result = 31 * result + id.hashCode();
-        return result;
+        return 31 * interfaceId + (id != null ? id.hashCode() : 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ActorKey{" +
+                "interfaceId=" + interfaceId +
+                ", id=" + id +
+                '}';
     }
 }
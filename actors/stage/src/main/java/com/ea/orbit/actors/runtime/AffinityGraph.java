@@ -0,0 +1,136 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.runtime;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sampled calls between actors, used to place actors that talk to each other in the same node.
+ * <p>
+ * Each actor keeps only its few strongest partners, counted with the space-saving algorithm:
+ * a new partner replaces the weakest one and inherits its count.
+ * The least recently used actors are evicted when the graph is full.
+ * </p>
+ */
+class AffinityGraph
+{
+    static final int DEFAULT_PARTNERS = 4;
+
+    private final Cache<ActorKey, Partners> graph;
+    private final int maxPartners;
+
+    private static class Partners
+    {
+        final ActorKey[] keys;
+        final long[] counts;
+
+        Partners(final int maxPartners)
+        {
+            keys = new ActorKey[maxPartners];
+            counts = new long[maxPartners];
+        }
+
+        synchronized void add(final ActorKey partner)
+        {
+            int weakest = 0;
+            for (int i = 0; i < keys.length; i++)
+            {
+                if (keys[i] == null || keys[i].equals(partner))
+                {
+                    keys[i] = partner;
+                    counts[i]++;
+                    return;
+                }
+                if (counts[i] < counts[weakest])
+                {
+                    weakest = i;
+                }
+            }
+            keys[weakest] = partner;
+            counts[weakest]++;
+        }
+
+        synchronized List<ActorKey> strongestFirst()
+        {
+            final List<Integer> order = new ArrayList<>(keys.length);
+            for (int i = 0; i < keys.length && keys[i] != null; i++)
+            {
+                order.add(i);
+            }
+            order.sort((a, b) -> Long.compare(counts[b], counts[a]));
+            final List<ActorKey> result = new ArrayList<>(order.size());
+            order.forEach(i -> result.add(keys[i]));
+            return result;
+        }
+    }
+
+    AffinityGraph(final long maxActors, final int maxPartners)
+    {
+        this.maxPartners = maxPartners;
+        this.graph = CacheBuilder.newBuilder().maximumSize(maxActors).build();
+    }
+
+    /**
+     * Records a call between two actors, in both directions.
+     */
+    void record(final ActorKey caller, final ActorKey callee)
+    {
+        if (caller.equals(callee))
+        {
+            return;
+        }
+        partners(caller).add(callee);
+        partners(callee).add(caller);
+    }
+
+    /**
+     * @return the partners of the actor, the one with most sampled calls first.
+     */
+    List<ActorKey> getPartners(final ActorKey key)
+    {
+        final Partners partners = graph.getIfPresent(key);
+        return partners != null ? partners.strongestFirst() : Collections.emptyList();
+    }
+
+    long size()
+    {
+        return graph.size();
+    }
+
+    private Partners partners(final ActorKey key)
+    {
+        return graph.asMap().computeIfAbsent(key, k -> new Partners(maxPartners));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Immutable consistent hash ring over a set of nodes.
+ * <p>
+ * Each node is placed at several points of the ring (virtual nodes) to even out the distribution of keys.
+ * A key belongs to the first node found clockwise from the key hash that satisfies a given filter.
+ * Every node that has the same view of the cluster computes the same owner for a key,
+ * and adding or removing a node only moves the keys of the affected ring segments.
+ * </p>
+ */
+class ConsistentHashRing
+{
+    static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    static final ConsistentHashRing EMPTY = new ConsistentHashRing(new long[0], new NodeAddress[0], 0);
+
+    // sorted point hashes and the node owning each point
+    private final long[] points;
+    private final NodeAddress[] owners;
+    private final int nodeCount;
+
+    private ConsistentHashRing(final long[] points, final NodeAddress[] owners, final int nodeCount)
+    {
+        this.points = points;
+        this.owners = owners;
+        this.nodeCount = nodeCount;
+    }
+
+    static ConsistentHashRing build(final Collection<NodeAddress> nodes, final int virtualNodes)
+    {
+        final int count = nodes.size() * virtualNodes;
+        final long[] hashes = new long[count];
+        final Point[] all = new Point[count];
+        int i = 0;
+        for (final NodeAddress node : nodes)
+        {
+            final UUID uuid = node.asUUID();
+            for (int v = 0; v < virtualNodes; v++)
+            {
+                all[i++] = new Point(mix(uuid.getMostSignificantBits() ^ mix(uuid.getLeastSignificantBits() + v * 0x9E3779B97F4A7C15L)), node);
+            }
+        }
+        // ties are broken by the node id so that every node builds the same ring
+        Arrays.sort(all, (a, b) -> a.hash != b.hash ? Long.compare(a.hash, b.hash) : a.node.asUUID().compareTo(b.node.asUUID()));
+        final NodeAddress[] owners = new NodeAddress[count];
+        for (i = 0; i < count; i++)
+        {
+            hashes[i] = all[i].hash;
+            owners[i] = all[i].node;
+        }
+        return new ConsistentHashRing(hashes, owners, nodes.size());
+    }
+
+    /**
+     * @return the first node clockwise from the key hash accepted by the filter, or null if none is.
+     */
+    NodeAddress select(final long keyHash, final Predicate<NodeAddress> filter)
+    {
+        final int length = points.length;
+        if (length == 0)
+        {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, keyHash);
+        if (index < 0)
+        {
+            index = -index - 1;
+        }
+        Set<NodeAddress> rejected = null;
+        for (int i = 0; i < length; i++)
+        {
+            final NodeAddress node = owners[(index + i) % length];
+            if (rejected != null && rejected.contains(node))
+            {
+                continue;
+            }
+            if (filter.test(node))
+            {
+                return node;
+            }
+            if (rejected == null)
+            {
+                rejected = new HashSet<>();
+            }
+            rejected.add(node);
+            if (rejected.size() == nodeCount)
+            {
+                break;
+            }
+        }
+        return null;
+    }
+
+    int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * 64 bit hash of an actor key, stable across nodes and processes.
+     * Use {@link ActorKey#ringHash()}, which computes it only once per key.
+     */
+    static long hash(final ActorKey key)
+    {
+        // FNV-1a
+        long h = 0xcbf29ce484222325L;
+        final int interfaceId = key.getInterfaceId();
+        for (int shift = 0; shift < 32; shift += 8)
+        {
+            h = (h ^ ((interfaceId >>> shift) & 0xff)) * 0x100000001b3L;
+        }
+        h = (h ^ 0xff) * 0x100000001b3L;
+        final Object id = key.getId();
+        if (id instanceof Long || id instanceof Integer)
+        {
+            final long value = ((Number) id).longValue();
+            for (int shift = 0; shift < 64; shift += 8)
+            {
+                h = (h ^ ((value >>> shift) & 0xff)) * 0x100000001b3L;
+            }
+        }
+        else
+        {
+            // no encoding, two bytes per char
+            final String string = String.valueOf(id);
+            for (int i = 0, length = string.length(); i < length; i++)
+            {
+                final char c = string.charAt(i);
+                h = (h ^ (c & 0xff)) * 0x100000001b3L;
+                h = (h ^ (c >>> 8)) * 0x100000001b3L;
+            }
+        }
+        return mix(h);
+    }
+
+    // murmur3 finalizer
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Point
+    {
+        final long hash;
+        final NodeAddress node;
+
+        Point(final long hash, final NodeAddress node)
+        {
+            this.hash = hash;
+            this.node = node;
+        }
+    }
+}
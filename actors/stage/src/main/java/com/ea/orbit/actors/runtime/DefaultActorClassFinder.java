@@ -32,6 +32,10 @@ import com.ea.orbit.actors.Actor;
 
 import com.ea.orbit.actors.extensions.ActorClassFinder;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 public class DefaultActorClassFinder implements ActorClassFinder
 {
     private static final ClassPathSearch search = new ClassPathSearch(Actor.class);
@@ -41,4 +45,29 @@ public class DefaultActorClassFinder implements ActorClassFinder
     {
         return search.findImplementation(actorInterface);
     }
+
+    @Override
+    public Collection<Class<?>> findActorInterfaces()
+    {
+        final Set<Class<?>> interfaces = new HashSet<>();
+        for (Class<?> implementation : search.findAllImplementations(Actor.class))
+        {
+            addActorInterfaces(implementation, interfaces);
+        }
+        return interfaces;
+    }
+
+    private static void addActorInterfaces(final Class<?> clazz, final Set<Class<?>> interfaces)
+    {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass())
+        {
+            for (Class<?> itf : c.getInterfaces())
+            {
+                if (itf != Actor.class && Actor.class.isAssignableFrom(itf) && interfaces.add(itf))
+                {
+                    addActorInterfaces(itf, interfaces);
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.ActorObserver;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.concurrent.Task;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A node's share of the partitioned actor directory, see {@link PartitionedDirectory}.
+ */
+public interface DirectoryPartition extends ActorObserver
+{
+    enum Operation
+    {
+        GET, PUT, PUT_IF_ABSENT, REMOVE
+    }
+
+    /**
+     * A directory operation on a single actor.
+     */
+    class Request implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final Operation operation;
+        final ActorKey key;
+        final NodeAddress value;
+        // forwarded requests are applied by the receiver even if it doesn't think it owns the key.
+        final boolean forwarded;
+
+        public Request(final Operation operation, final ActorKey key, final NodeAddress value, final boolean forwarded)
+        {
+            this.operation = operation;
+            this.key = key;
+            this.value = value;
+            this.forwarded = forwarded;
+        }
+
+        Request forward()
+        {
+            return new Request(operation, key, value, true);
+        }
+    }
+
+    /**
+     * Applies a batch of operations, forwarding those whose key belongs to another partition.
+     *
+     * @return one result per request: the current or previous location for GET, PUT and PUT_IF_ABSENT,
+     * and for REMOVE the removed location or null if the entry didn't match.
+     */
+    Task<List<NodeAddress>> execute(List<Request> requests);
+
+    /**
+     * Hands over entries owned by this partition after a change of the cluster view.
+     * Entries already present are kept.
+     */
+    Task<Void> transfer(Map<ActorKey, NodeAddress> entries);
+
+    /**
+     * Tells that a node has handed over all the entries it kept for this partition.
+     * Until then the partition looks for the keys it misses at their previous owner.
+     *
+     * @param previousOwner the node that handed off the entries
+     * @param owners        the servers of the view the hand-off was for
+     */
+    Task<Void> handOffCompleted(NodeAddress previousOwner, Set<NodeAddress> owners);
+}
@@ -32,8 +32,10 @@ import com.ea.orbit.actors.Actor;
 import com.ea.orbit.actors.ActorObserver;
 import com.ea.orbit.actors.Addressable;
 import com.ea.orbit.actors.Remindable;
+import com.ea.orbit.actors.ResultStream;
 import com.ea.orbit.actors.annotation.StatelessWorker;
 import com.ea.orbit.actors.annotation.StorageExtension;
+import com.ea.orbit.actors.cluster.MessageClass;
 import com.ea.orbit.actors.cluster.NodeAddress;
 import com.ea.orbit.actors.extensions.ActorClassFinder;
 import com.ea.orbit.actors.extensions.ActorExtension;
@@ -70,6 +72,7 @@ import java.time.Clock;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
@@ -103,6 +106,7 @@ public class Execution implements Runtime
     private static final Logger logger = LoggerFactory.getLogger(Execution.class);
     private final String runtimeIdentity;
     private ActorClassFinder finder;
+    private volatile String[] activatableInterfaceNames;
     private ConcurrentMap<Class<?>, InterfaceDescriptor> descriptorMapByInterface = new ConcurrentHashMap<>();
     private ConcurrentMap<Integer, InterfaceDescriptor> descriptorMapByInterfaceId = new ConcurrentHashMap<>();
     private Map<EntryKey, ReferenceEntry> localActors = new ConcurrentHashMap<>();
@@ -120,6 +124,12 @@ public class Execution implements Runtime
     private final LongAdder messagesReceived = new LongAdder();
     private final LongAdder messagesHandled = new LongAdder();
     private final LongAdder refusedExecutions = new LongAdder();
+    // received messages refused before reaching a mailbox, the other refusals happen after a message was handled
+    private final LongAdder messagesRefused = new LongAdder();
+    private final LongAdder activationsMovedOut = new LongAdder();
+    private final LongAdder activationsMovedIn = new LongAdder();
+    // timers registered by each actor, actors with timers are not moved to other nodes
+    private final Map<AbstractActor<?>, Set<TimerTask>> actorTimers = new MapMaker().weakKeys().makeMap();
     private ExecutorService executor;
     private ActorFactoryGenerator dynamicReferenceFactory = new ActorFactoryGenerator();
 
@@ -144,6 +154,14 @@ public class Execution implements Runtime
     @Config("orbit.actors.stickyHeaders")
     private Set<String> stickyHeaders = new HashSet<>(Arrays.asList("orbit.transactionId", "orbit.traceId"));
 
+    /**
+     * Result streams returned to remote callers are closed if the caller doesn't request items for this long.
+     */
+    @Config("orbit.actors.streamIdleTimeoutMillis")
+    private long streamIdleTimeoutMillis = TimeUnit.MINUTES.toMillis(1);
+
+    private final ExportedStreams exportedStreams = new ExportedStreams(this);
+
     public Execution()
     {
         // the last runtime created will be the default.
@@ -187,13 +205,57 @@ public class Execution implements Runtime
         {
             return false;
         }
+        resolveImplementation(aInterface, descriptor);
+        return !descriptor.cannotActivate;
+    }
+
+    private void resolveImplementation(final Class<?> aInterface, final InterfaceDescriptor descriptor)
+    {
         if (descriptor.concreteClassName == null)
         {
-            final Class<?> concreteClass = finder.findActorImplementation(aInterface);
+            final Class<?> concreteClass = finder.findActorImplementation((Class) aInterface);
             descriptor.cannotActivate = concreteClass == null;
             descriptor.concreteClassName = concreteClass != null ? concreteClass.getName() : null;
         }
-        return !descriptor.cannotActivate;
+    }
+
+    /**
+     * @return the names of the actor interfaces this node can activate, or null if they can't be listed.
+     */
+    public String[] getActivatableInterfaceNames()
+    {
+        String[] names = activatableInterfaceNames;
+        if (names == null && finder != null)
+        {
+            final Collection<Class<?>> interfaces = finder.findActorInterfaces();
+            if (interfaces == null)
+            {
+                return null;
+            }
+            // registers the descriptors and their implementations, the callers won't ask for each interface name
+            names = interfaces.stream()
+                    .map(c -> {
+                        try
+                        {
+                            final InterfaceDescriptor descriptor = getDescriptor(c);
+                            if (descriptor != null && !descriptor.isObserver)
+                            {
+                                resolveImplementation(c, descriptor);
+                            }
+                            return descriptor;
+                        }
+                        catch (Exception ex)
+                        {
+                            logger.warn("Error creating the descriptor of " + c.getName(), ex);
+                            return null;
+                        }
+                    })
+                    .filter(d -> d != null && !d.isObserver && !d.cannotActivate)
+                    .map(d -> d.factory.getInterface().getName())
+                    .toArray(String[]::new);
+            activatableInterfaceNames = names;
+        }
+        return names;
     }
 
     public void registerFactory(ActorFactory<?> factory)
@@ -226,6 +288,8 @@ public class Execution implements Runtime
         boolean cannotActivate;
         String concreteClassName;
         boolean isObserver;
+        // the observers the runtimes of the nodes call each other through
+        boolean isSystem;
 
         @Override
         public String toString()
@@ -435,6 +499,8 @@ public class Execution implements Runtime
         ReferenceEntry entry;
         long lastAccess = clock.millis();
         Object instance;
+        // in-memory state received from the node the actor was moved from
+        Object migratedState;
 
         public Activation(final ReferenceEntry entry, final Object instance)
         {
@@ -461,7 +527,13 @@ public class Execution implements Runtime
 
                         await(Task.allOf(getAllExtensions(LifetimeExtension.class).stream().map(v -> v.preActivation(actor))));
 
-                        if (actor.stateExtension != null)
+                        if (migratedState != null)
+                        {
+                            // the state moved with the actor, it's at least as recent as the stored one
+                            setState(actor, migratedState);
+                            migratedState = null;
+                        }
+                        else if (actor.stateExtension != null)
                         {
                             try
                             {
@@ -494,6 +566,12 @@ public class Execution implements Runtime
     }
 
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void setState(final AbstractActor actor, final Object state)
+    {
+        actor.state = state;
+    }
+
     public void setExtensions(List<ActorExtension> extensions)
     {
         this.extensions = extensions;
@@ -667,6 +745,10 @@ public class Execution implements Runtime
                             {
                                 if (!canceled)
                                 {
+                                    if (period <= 0)
+                                    {
+                                        untrack();
+                                    }
                                     return taskCallable.call();
                                 }
                             }
@@ -682,9 +764,20 @@ public class Execution implements Runtime
             public boolean cancel()
             {
                 canceled = true;
+                untrack();
                 return super.cancel();
             }
+
+            private void untrack()
+            {
+                final Set<TimerTask> timers = actorTimers.get(actor);
+                if (timers != null)
+                {
+                    timers.remove(this);
+                }
+            }
         };
+        actorTimers.computeIfAbsent(actor, a -> ConcurrentHashMap.newKeySet()).add(timerTask);
 
         if(period > 0)
         {
@@ -745,8 +838,13 @@ public class Execution implements Runtime
             finder.start().join();
         }
 
-        getDescriptor(NodeCapabilities.class);
+        getDescriptor(NodeCapabilities.class).isSystem = true;
         createObjectReference(NodeCapabilities.class, hosting, "");
+        if (hosting.getPartitionedDirectory() != null)
+        {
+            getDescriptor(DirectoryPartition.class).isSystem = true;
+            createObjectReference(DirectoryPartition.class, hosting.getPartitionedDirectory(), "");
+        }
 
         if (executor == null)
         {
@@ -780,8 +878,77 @@ public class Execution implements Runtime
             public void run()
             {
                 messaging.timeoutCleanup();
+                exportedStreams.cleanup(streamIdleTimeoutMillis);
             }
         }, 5000, 5000);
+
+        // schedules the load reports
+        final long loadReportIntervalMillis = hosting.getLoadReportIntervalMillis();
+        timer.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                hosting.reportLoad();
+            }
+        }, loadReportIntervalMillis, loadReportIntervalMillis);
+
+        // schedules the retries and the timeouts of the placements waiting for servers
+        timer.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                hosting.sweepWaitingPlacements();
+            }
+        }, Hosting.WAITING_PLACEMENTS_SWEEP_MILLIS, Hosting.WAITING_PLACEMENTS_SWEEP_MILLIS);
+
+        // schedules the heartbeats and the failure detection
+        final long heartbeatIntervalMillis = hosting.getHeartbeatIntervalMillis();
+        if (heartbeatIntervalMillis > 0)
+        {
+            timer.schedule(new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    hosting.heartbeat();
+                }
+            }, heartbeatIntervalMillis, heartbeatIntervalMillis);
+        }
+
+        // schedules the rebalancing
+        final long rebalanceIntervalMillis = hosting.getRebalanceIntervalMillis();
+        if (rebalanceIntervalMillis > 0)
+        {
+            timer.schedule(new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    hosting.rebalance();
+                }
+            }, rebalanceIntervalMillis, rebalanceIntervalMillis);
+        }
+    }
+
+    /**
+     * Runs a task once after the delay, in the stage timer thread.
+     *
+     * @return the scheduled task, can be canceled.
+     */
+    public TimerTask schedule(final Runnable runnable, final long delayMillis)
+    {
+        final TimerTask timerTask = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                runnable.run();
+            }
+        };
+        timer.schedule(timerTask, delayMillis);
+        return timerTask;
     }
 
     private <T> Class<T> classForName(final String className)
@@ -857,49 +1024,113 @@ public class Execution implements Runtime
 
     public void onMessageReceived(Message message)
     {
-        int interfaceId = (int) message.getHeader(MessageDefinitions.INTERFACE_ID);
-        int methodId = (int) message.getHeader(MessageDefinitions.METHOD_ID);
-        Object key = message.getHeader(MessageDefinitions.OBJECT_ID);
+        final EntryKey entryKey = entryKey(message);
+        messagesReceived.increment();
+        if (!executionSerializer.offerJob(entryKey, messageJob(entryKey, message), maxQueueSize))
+        {
+            refuse(message);
+        }
+    }
 
-        EntryKey entryKey = new EntryKey(interfaceId, key);
-        if (logger.isDebugEnabled())
+    /**
+     * Receives requests decoded from the same node, in the order they arrived.
+     * The whole batch is queued to the actors at once.
+     */
+    public void onMessagesReceived(final List<Message> messages)
+    {
+        final List<Object> entryKeys = new ArrayList<>(messages.size());
+        final List<Supplier<Task<?>>> jobs = new ArrayList<>(messages.size());
+        for (final Message message : messages)
         {
-            logger.debug("onMessageReceived for: " + entryKey);
+            final EntryKey entryKey = entryKey(message);
+            entryKeys.add(entryKey);
+            jobs.add(messageJob(entryKey, message));
         }
-        messagesReceived.increment();
-        if (!executionSerializer.offerJob(entryKey,
-                () -> handleOnMessageReceived(
-                        entryKey,
-                        message.getFromNode(),
-                        message.isOneWay(),
-                        message.getMessageId(),
-                        interfaceId, methodId, key,
-                        message.getHeaders(),
-                        (Object[]) message.getPayload()
-                ),
-                maxQueueSize))
+        messagesReceived.add(messages.size());
+        final boolean[] accepted = executionSerializer.offerJobs(entryKeys, jobs, maxQueueSize);
+        for (int i = 0; i < accepted.length; i++)
         {
-            refusedExecutions.increment();
-            if (logger.isErrorEnabled())
-            {
-                logger.error("Execution refused: " + key + ":" + interfaceId + ":" + methodId + ":" + message.getMessageId());
-            }
-            if (!message.isOneWay())
+            if (!accepted[i])
             {
-                messaging.sendResponse(message.getFromNode(), MessageDefinitions.ERROR_RESPONSE, message.getMessageId(), "Execution refused");
+                refuse(messages.get(i));
             }
         }
     }
 
+    private EntryKey entryKey(final Message message)
+    {
+        final EntryKey entryKey = new EntryKey((int) message.getHeader(MessageDefinitions.INTERFACE_ID),
+                message.getHeader(MessageDefinitions.OBJECT_ID));
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("onMessageReceived for: " + entryKey);
+        }
+        return entryKey;
+    }
+
+    private Supplier<Task<?>> messageJob(final EntryKey entryKey, final Message message)
+    {
+        final InterfaceDescriptor descriptor = getDescriptor(entryKey.interfaceId);
+        if (descriptor != null && descriptor.isSystem)
+        {
+            // the system lane: the calls start in order but don't wait for each other,
+            // the runtimes of two nodes waiting on each other's replies would deadlock.
+            return () -> {
+                handleMessage(entryKey, message);
+                return Task.done();
+            };
+        }
+        return () -> handleMessage(entryKey, message);
+    }
+
+    private Task<?> handleMessage(final EntryKey entryKey, final Message message)
+    {
+        return handleOnMessageReceived(
+                entryKey,
+                message.getFromNode(),
+                message.isOneWay(),
+                message.getMessageId(),
+                entryKey.interfaceId,
+                (int) message.getHeader(MessageDefinitions.METHOD_ID),
+                entryKey.id,
+                message.getHeaders(),
+                message
+        );
+    }
+
+    private void refuse(final Message message)
+    {
+        messagesRefused.increment();
+        refusedExecutions.increment();
+        if (logger.isErrorEnabled())
+        {
+            logger.error("Execution refused: " + message.getHeader(MessageDefinitions.OBJECT_ID) + ":"
+                    + message.getHeader(MessageDefinitions.INTERFACE_ID) + ":"
+                    + message.getHeader(MessageDefinitions.METHOD_ID) + ":" + message.getMessageId());
+        }
+        if (!message.isOneWay())
+        {
+            messaging.sendResponse(message.getFromNode(), MessageDefinitions.ERROR_RESPONSE, message.getMessageId(), "Execution refused");
+        }
+    }
+
     // this method is executed serially by entryKey
     private Task<?> handleOnMessageReceived(final EntryKey entryKey, final NodeAddress from,
                                             final boolean oneway, final int messageId, final int interfaceId,
                                             final int methodId, final Object key,
                                             final Object headers,
-                                            final Object[] params)
+                                            final Message message)
     {
         messagesHandled.increment();
         final InterfaceDescriptor descriptor = getDescriptor(interfaceId);
+        if (descriptor == null)
+        {
+            if (!oneway)
+            {
+                messaging.sendResponse(from, MessageDefinitions.ERROR_RESPONSE, messageId, "Unknown interface: " + interfaceId);
+            }
+            return Task.done();
+        }
         if (descriptor.isObserver)
         {
             final ActorObserver observer = observerInstances.get(entryKey);
@@ -911,32 +1142,93 @@ public class Execution implements Runtime
                 }
                 return Task.done();
             }
+            final Object[] params;
+            try
+            {
+                // the payload is only decoded once the message is known to have a target
+                params = (Object[]) message.getPayload();
+            }
+            catch (Exception ex)
+            {
+                sendResponseAndLogError(oneway, from, messageId, null, ex);
+                return Task.done();
+            }
             final Task<?> task = descriptor.invoker.safeInvoke(observer, methodId, params);
             return task.whenComplete((r, e) ->
-                    sendResponseAndLogError(oneway, from, messageId, (Object) r, e));
+                    sendResponseAndLogError(oneway, from, messageId, exportStream(oneway, r, entryKey), e));
         }
 
-        ReferenceEntry entry = localActors.get(entryKey);
-
-
         if (logger.isDebugEnabled())
         {
             logger.debug("handleOnMessageReceived for: " + descriptor + ":" + key);
         }
 
-        if (entry == null)
+        if (!localActors.containsKey(entryKey)
+                && !descriptor.factory.getInterface().isAnnotationPresent(StatelessWorker.class)
+                && !isPlaced(message))
         {
-            // TODO check if this is the activation node. Otherwise forward to the activation node.
-            entry = new ReferenceEntry();
-            entry.descriptor = descriptor;
-            entry.statelessWorker = descriptor.factory.getInterface().isAnnotationPresent(StatelessWorker.class);
-            if (entry.statelessWorker)
+            // only the activation node may activate the actor, the sender might have an outdated location.
+            return hosting.claimActivation(interfaceId, descriptor.factory.getInterface(), key).<Object>thenCompose(owner -> {
+                if (owner != null && !owner.equals(messaging.getNodeAddress()))
+                {
+                    forwardMessage(descriptor, key, message, owner);
+                    return Task.fromValue(null);
+                }
+                @SuppressWarnings("unchecked")
+                final Task<Object> task = (Task<Object>) executeLocally(entryKey, from, oneway, messageId, interfaceId, methodId, key, headers, message, descriptor);
+                return task;
+            });
+        }
+        return executeLocally(entryKey, from, oneway, messageId, interfaceId, methodId, key, headers, message, descriptor);
+    }
+
+    /**
+     * @return true if the sender just placed the actor on this node, only forwarded messages are checked again.
+     */
+    private static boolean isPlaced(final Message message)
+    {
+        return Boolean.TRUE.equals(message.getHeader(MessageDefinitions.PLACED)) && !Messaging.isForwarded(message);
+    }
+
+    private void forwardMessage(final InterfaceDescriptor descriptor, final Object key, final Message message, final NodeAddress owner)
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Forwarding message for: " + descriptor + ":" + key + " to " + owner);
+        }
+        try
+        {
+            if (!messaging.forwardMessage(message, owner))
             {
-                entry.statelessActivations = new ConcurrentLinkedDeque<>();
+                if (!message.isOneWay())
+                {
+                    messaging.sendResponse(message.getFromNode(), MessageDefinitions.ERROR_RESPONSE, message.getMessageId(),
+                            "Too many forwarding hops");
+                }
+                return;
             }
-            entry.reference = (ActorReference<?>) descriptor.factory.createReference(key != null ? String.valueOf(key) : null);
-            entry.reference.runtime = this;
-            entry.removable = true;
+            final ActorReference<?> reference = (ActorReference<?>) descriptor.factory.createReference(key != null ? String.valueOf(key) : null);
+            reference.runtime = this;
+            hosting.sendLocationHint(message.getFromNode(), reference, owner);
+        }
+        catch (Exception ex)
+        {
+            sendResponseAndLogError(message.isOneWay(), message.getFromNode(), message.getMessageId(), null, ex);
+        }
+    }
+
+    private Task<?> executeLocally(final EntryKey entryKey, final NodeAddress from,
+                                   final boolean oneway, final int messageId, final int interfaceId,
+                                   final int methodId, final Object key,
+                                   final Object headers,
+                                   final Message message,
+                                   final InterfaceDescriptor descriptor)
+    {
+        ReferenceEntry entry = localActors.get(entryKey);
+
+        if (entry == null)
+        {
+            entry = newReferenceEntry(descriptor, key);
 
             ReferenceEntry old = localActors.putIfAbsent(entryKey, entry);
             if (old != null)
@@ -948,14 +1240,15 @@ public class Execution implements Runtime
         }
 
         final ReferenceEntry theEntry = entry;
+        final EntryKey serialKey = entry.statelessWorker ? null : entryKey;
         if (!entry.statelessWorker)
         {
-            return executeMessage(theEntry, oneway, descriptor, methodId, headers, params, from, messageId);
+            return executeMessage(theEntry, serialKey, oneway, descriptor, methodId, headers, message, from, messageId);
         }
         else
         {
             if (!executionSerializer.offerJob(null,
-                    () -> executeMessage(theEntry, oneway, descriptor, methodId, headers, params, from, messageId),
+                    () -> executeMessage(theEntry, serialKey, oneway, descriptor, methodId, headers, message, from, messageId),
                     maxQueueSize))
             {
                 refusedExecutions.increment();
@@ -974,6 +1267,237 @@ public class Execution implements Runtime
     }
 
 
+    private ReferenceEntry newReferenceEntry(final InterfaceDescriptor descriptor, final Object key)
+    {
+        final ReferenceEntry entry = new ReferenceEntry();
+        entry.descriptor = descriptor;
+        entry.statelessWorker = descriptor.factory.getInterface().isAnnotationPresent(StatelessWorker.class);
+        if (entry.statelessWorker)
+        {
+            entry.statelessActivations = new ConcurrentLinkedDeque<>();
+        }
+        entry.reference = (ActorReference<?>) descriptor.factory.createReference(key != null ? String.valueOf(key) : null);
+        entry.reference.runtime = this;
+        entry.removable = true;
+        return entry;
+    }
+
+    /**
+     * Moves a local activation to another node along with its in-memory state, without a storage round trip.
+     * <p>
+     * Runs in the actor's turn, so no message is executed while it moves. Messages queued behind the move
+     * are forwarded to the new node, which is registered in the directory before the local activation is dropped.
+     * The dropped activation is deactivated without writing its state, which belongs to the new node.
+     * If the transfer fails this node is registered again as the location, and the actor stays here.
+     * Stateless workers and actors with timers stay where they are.
+     * </p>
+     *
+     * @return true if the actor now lives in the target node.
+     */
+    public Task<Boolean> migrateActivation(final ActorReference<?> reference, final NodeAddress target)
+    {
+        final InterfaceDescriptor descriptor = getDescriptor(ActorReference.getInterfaceClass(reference));
+        if (descriptor == null || descriptor.isObserver)
+        {
+            return Task.fromValue(false);
+        }
+        final EntryKey entryKey = new EntryKey(descriptor.factory.getInterfaceId(), ActorReference.getId(reference));
+        final Task<Boolean> moved = new Task<>();
+        if (!executionSerializer.offerJob(entryKey, () -> migrate(entryKey, target, moved), maxQueueSize))
+        {
+            moved.complete(false);
+        }
+        return moved;
+    }
+
+    // executed in the actor's turn
+    private Task<?> migrate(final EntryKey entryKey, final NodeAddress target, final Task<Boolean> moved)
+    {
+        final ReferenceEntry entry = localActors.get(entryKey);
+        final Activation activation = entry != null && !entry.statelessWorker ? entry.singleActivation : null;
+        if (activation == null || !(activation.instance instanceof AbstractActor)
+                || hasTimers((AbstractActor<?>) activation.instance))
+        {
+            moved.complete(false);
+            return Task.done();
+        }
+        final AbstractActor<?> actor = (AbstractActor<?>) activation.instance;
+        final Task<Void> turn = new Task<>();
+        Task<Boolean> accepted;
+        try
+        {
+            accepted = hosting.transferActivation(target, entry.reference, actor.state);
+        }
+        catch (Exception ex)
+        {
+            accepted = Task.fromException(ex);
+        }
+        final Task<Boolean> transferred = new Task<>();
+        accepted.whenComplete((ok, e) -> {
+            if (e == null)
+            {
+                transferred.complete(Boolean.TRUE.equals(ok));
+                return;
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Error moving " + entryKey + " to " + target, e);
+            }
+            // the target might have registered itself before the error, the actor stays here.
+            hosting.registerActivation(entry.reference).whenComplete((r, e2) -> transferred.complete(false));
+        });
+        transferred.thenAccept(ok -> {
+            if (!ok)
+            {
+                moved.complete(false);
+                turn.complete(null);
+                return;
+            }
+            activation.instance = null;
+            entry.singleActivation = null;
+            localActors.remove(entryKey);
+            hosting.moved(entry.reference, messaging.getNodeAddress(), target);
+            activationsMovedOut.increment();
+            bind();
+            if (actor.stateExtension != null)
+            {
+                // the state belongs to the target now, the deactivation must not write it back
+                actor.stateExtension = new MovedStorage(actor.stateExtension.getName());
+            }
+            Task.allOf(getAllExtensions(LifetimeExtension.class).stream().map(v -> v.preDeactivation(actor)))
+                    .thenCompose(() -> actor.deactivateAsync())
+                    .thenCompose(() -> Task.allOf(getAllExtensions(LifetimeExtension.class).stream().map(v -> v.postDeactivation(actor))))
+                    .whenComplete((r, e2) -> {
+                        if (e2 != null)
+                        {
+                            logger.error("Error deactivating the moved actor " + entryKey, e2);
+                        }
+                        moved.complete(true);
+                        turn.complete(null);
+                    });
+        });
+        return turn;
+    }
+
+    /**
+     * Activates an actor moved from another node with the state it had there,
+     * and registers this node as its location.
+     *
+     * @return true if the actor was activated.
+     */
+    public Task<Boolean> acceptActivation(final ActorReference<?> reference, final Object state)
+    {
+        final Class<?> interfaceClass = ActorReference.getInterfaceClass(reference);
+        final InterfaceDescriptor descriptor = getDescriptor(interfaceClass);
+        if (descriptor == null || descriptor.isObserver || interfaceClass.isAnnotationPresent(StatelessWorker.class))
+        {
+            return Task.fromValue(false);
+        }
+        resolveImplementation(interfaceClass, descriptor);
+        if (descriptor.cannotActivate)
+        {
+            return Task.fromValue(false);
+        }
+        final EntryKey entryKey = new EntryKey(descriptor.factory.getInterfaceId(), ActorReference.getId(reference));
+        final Task<Boolean> accepted = new Task<>();
+        if (!executionSerializer.offerJob(entryKey, () -> activateMoved(entryKey, descriptor, state, accepted), maxQueueSize))
+        {
+            accepted.complete(false);
+        }
+        return accepted;
+    }
+
+    // executed in the actor's turn
+    private Task<?> activateMoved(final EntryKey entryKey, final InterfaceDescriptor descriptor, final Object state,
+                                  final Task<Boolean> accepted)
+    {
+        if (localActors.containsKey(entryKey))
+        {
+            accepted.complete(false);
+            return Task.done();
+        }
+        final ReferenceEntry entry = newReferenceEntry(descriptor, entryKey.id);
+        final Activation activation = new Activation(entry, null);
+        activation.migratedState = state;
+        final ActorTaskContext context = ActorTaskContext.pushNew();
+        try
+        {
+            context.setProperty(Runtime.class.getName(), this);
+            bind();
+            return activation.getOrCreateInstance().whenComplete((r, e) -> {
+                if (e != null)
+                {
+                    logger.error("Error activating the moved actor " + entryKey, e);
+                    accepted.complete(false);
+                    return;
+                }
+                entry.pushActivation(activation);
+                localActors.put(entryKey, entry);
+                activationsMovedIn.increment();
+                hosting.registerActivation(entry.reference).whenComplete((r2, e2) -> {
+                    if (e2 != null)
+                    {
+                        logger.error("Error registering the moved actor " + entryKey, e2);
+                    }
+                    accepted.complete(true);
+                });
+            });
+        }
+        catch (Exception ex)
+        {
+            logger.error("Error activating the moved actor " + entryKey, ex);
+            accepted.complete(false);
+            return Task.done();
+        }
+        finally
+        {
+            context.pop();
+        }
+    }
+
+    /**
+     * The storage of an actor moved to another node, it doesn't persist anything anymore.
+     */
+    private static class MovedStorage implements com.ea.orbit.actors.extensions.StorageExtension
+    {
+        private final String name;
+
+        MovedStorage(final String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public Task<Void> clearState(final ActorReference<?> reference, final Object state)
+        {
+            return Task.done();
+        }
+
+        @Override
+        public Task<Boolean> readState(final ActorReference<?> reference, final Object state)
+        {
+            return Task.fromValue(false);
+        }
+
+        @Override
+        public Task<Void> writeState(final ActorReference<?> reference, final Object state)
+        {
+            return Task.done();
+        }
+    }
+
+    private boolean hasTimers(final AbstractActor<?> actor)
+    {
+        final Set<TimerTask> timers = actorTimers.get(actor);
+        return timers != null && !timers.isEmpty();
+    }
+
     ThreadLocal<MessageContext> currentMessage = new ThreadLocal<>();
 
     static class MessageContext
@@ -1031,11 +1555,12 @@ public class Execution implements Runtime
 
     private Task<?> executeMessage(
             final ReferenceEntry theEntry,
+            final EntryKey serialKey,
             final boolean oneway,
             final InterfaceDescriptor descriptor,
             final int methodId,
             final Object headers,
-            final Object[] params,
+            final Message message,
             final NodeAddress from,
             final int messageId)
     {
@@ -1045,6 +1570,8 @@ public class Execution implements Runtime
             context.setProperty(Runtime.class.getName(), this);
             final MessageContext messageContext = new MessageContext(theEntry, methodId, from);
             context.setProperty(MessageContext.class.getName(), messageContext);
+            // decoded inside the turn, failures are reported to the caller as any other invocation error.
+            final Object[] params = (Object[]) message.getPayload();
             Activation activation = theEntry.popActivation();
             activation.lastAccess = clock.millis();
             if (headers instanceof Map)
@@ -1067,7 +1594,7 @@ public class Execution implements Runtime
 
                 Task<?> future = descriptor.invoker.safeInvoke(actor, methodId, params);
                 return future.whenComplete((r, e) -> {
-                    sendResponseAndLogError(oneway, from, messageId, r, e);
+                    sendResponseAndLogError(oneway, from, messageId, exportStream(oneway, r, serialKey), e);
                 });
             }
             finally
@@ -1087,6 +1614,69 @@ public class Execution implements Runtime
         return Task.done();
     }
 
+    /**
+     * Replaces result streams by a handle the caller can use to pull the stream items.
+     */
+    private Object exportStream(final boolean oneway, final Object result, final EntryKey serialKey)
+    {
+        if (!(result instanceof ResultStream))
+        {
+            return result;
+        }
+        if (oneway)
+        {
+            // no one to consume it.
+            ((ResultStream<?>) result).close();
+            return null;
+        }
+        return exportedStreams.export((ResultStream<?>) result, serialKey);
+    }
+
+    /**
+     * Executes a job serially with the other jobs with the same key, as the messages to an actor.
+     *
+     * @param key the serialization key, if null the job is executed concurrently.
+     */
+    <R> Task<R> executeSerially(final Object key, final Supplier<Task<R>> job)
+    {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        if (!executionSerializer.offerJob(key, () -> {
+            try
+            {
+                return job.get().whenComplete((r, e) -> {
+                    if (e != null)
+                    {
+                        result.completeExceptionally(e);
+                    }
+                    else
+                    {
+                        result.complete(r);
+                    }
+                });
+            }
+            catch (Exception ex)
+            {
+                result.completeExceptionally(ex);
+                return Task.done();
+            }
+        }, maxQueueSize))
+        {
+            refusedExecutions.increment();
+            result.completeExceptionally(new UncheckedException("Execution refused"));
+        }
+        return Task.from(result);
+    }
+
+    public void setStreamIdleTimeoutMillis(final long streamIdleTimeoutMillis)
+    {
+        this.streamIdleTimeoutMillis = streamIdleTimeoutMillis;
+    }
+
+    public int getExportedStreamCount()
+    {
+        return exportedStreams.size();
+    }
+
     protected void sendResponseAndLogError(boolean oneway, final NodeAddress from, int messageId, Object result, Throwable exception)
     {
         if (exception != null && logger.isErrorEnabled())
@@ -1234,24 +1824,39 @@ public class Execution implements Runtime
                 .withHeader(MessageDefinitions.METHOD_ID, methodId)
                 .withHeader(MessageDefinitions.OBJECT_ID, ActorReference.getId(actorReference))
                 .withPayload(params);
-
+        // calls between the runtimes of the nodes are told apart from the application's
+        final MessageClass messageClass = toReference instanceof NodeCapabilities || toReference instanceof DirectoryPartition
+                ? MessageClass.SYSTEM : oneWay ? MessageClass.ONE_WAY : MessageClass.REQUEST;
 
         if (toNode == null)
         {
+            final MessageContext messageContext = getMessageContext();
+            if (messageContext != null && !messageContext.theEntry.statelessWorker)
+            {
+                hosting.onActorCall(messageContext.theEntry.reference, actorReference);
+            }
             // TODO: Ensure that both paths encode exception the same way.
-            return hosting.locateActor(actorReference, true)
-                    .thenCompose(x -> messaging.sendMessage(message.withToNode(x)));
+            return hosting.locateActor(actorReference, message)
+                    .thenCompose(x -> messaging.sendMessage(message.withToNode(x), messageClass));
         }
-        return messaging.sendMessage(message.withToNode(toNode));
+        return messaging.sendMessage(message.withToNode(toNode), messageClass);
     }
 
+    @SuppressWarnings("unchecked")
     public Task<?> invoke(Addressable toReference, Method m, boolean oneWay, final int methodId, final Object[] params)
     {
-        if (!verifyActivated(toReference, m))
+        if (m.isAnnotationPresent(OnlyIfActivated.class))
         {
-            return Task.done();
+            // the call is dropped if the actor isn't active, without blocking the caller.
+            return hosting.isActivated(toReference).thenCompose(activated -> activated
+                    ? (Task<Object>) invokeActivated(toReference, m, oneWay, methodId, params)
+                    : Task.fromValue(null));
         }
+        return invokeActivated(toReference, m, oneWay, methodId, params);
+    }
 
+    private Task<?> invokeActivated(Addressable toReference, Method m, boolean oneWay, final int methodId, final Object[] params)
+    {
         if (m.isAnnotationPresent(CacheResponse.class))
         {
             return cacheResponseInvoke(toReference, m, oneWay, methodId, params);
@@ -1401,6 +2006,18 @@ public class Execution implements Runtime
         return hosting.locateActor(actorReference, false);
     }
 
+    @Override
+    public NodeAddress getLocationHint(final Addressable actorReference)
+    {
+        return hosting.getLocationHint(actorReference);
+    }
+
+    @Override
+    public void setLocationHint(final Addressable actorReference, final NodeAddress address)
+    {
+        hosting.setLocationHint(actorReference, address);
+    }
+
     public NodeCapabilities.NodeState getState()
     {
         return state;
@@ -1421,27 +2038,46 @@ public class Execution implements Runtime
         return messagesHandled.longValue();
     }
 
-    public long getRefusedExecutionsCount()
+    /**
+     * @return references to the actors with a single activation in this node, stateless workers excluded.
+     */
+    public List<ActorReference<?>> getLocalActorReferences()
     {
-        return refusedExecutions.longValue();
+        return localActors.values().stream()
+                .filter(e -> !e.statelessWorker && e.reference != null)
+                .map(e -> e.reference)
+                .collect(Collectors.toList());
     }
 
     /**
-     * Checks if the method passes an Activated check.
-     * Verify passes on either of:
-     * - method can run only if activated, and the actor is active
-     * - the method is not marked with OnlyIfActivated.
+     * @return the number of received messages waiting in actor mailboxes.
      */
-    private boolean verifyActivated(Addressable toReference, Method method)
+    public long getBacklogSize()
     {
-        if (method.isAnnotationPresent(OnlyIfActivated.class))
-        {
-            NodeAddress actorAddress = locateActor(toReference, false).join();
-            if (actorAddress == null)
-            {
-                return false;
-            }
-        }
-        return true;
+        return Math.max(0, messagesReceived.longValue() - messagesHandled.longValue() - messagesRefused.longValue());
+    }
+
+    /**
+     * @return true if the actor has a single activation in this node.
+     */
+    public boolean isActivatedLocally(final int interfaceId, final Object id)
+    {
+        final ReferenceEntry entry = localActors.get(new EntryKey(interfaceId, id));
+        return entry != null && !entry.statelessWorker;
+    }
+
+    public long getActivationsMovedOutCount()
+    {
+        return activationsMovedOut.longValue();
+    }
+
+    public long getActivationsMovedInCount()
+    {
+        return activationsMovedIn.longValue();
+    }
+
+    public long getRefusedExecutionsCount()
+    {
+        return refusedExecutions.longValue();
     }
 }
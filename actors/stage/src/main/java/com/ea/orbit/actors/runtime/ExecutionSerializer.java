@@ -34,7 +34,9 @@ import com.ea.orbit.concurrent.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ExecutorService;
@@ -139,6 +141,59 @@ public class ExecutionSerializer<T>
         return true;
     }
 
+    /**
+     * Offers several jobs taking the lock only once, the jobs with the same key run in the list order.
+     * Each job is only accepted if the queue size of its key is not exceeded.
+     *
+     * @return for each job, true if it was accepted.
+     */
+    public boolean[] offerJobs(List<T> keys, List<Supplier<Task<?>>> runs, int maxQueueSize)
+    {
+        final boolean[] accepted = new boolean[keys.size()];
+        final List<Runner> started = new ArrayList<>();
+        synchronized (mutex)
+        {
+            for (int i = 0; i < accepted.length; i++)
+            {
+                final T key = keys.get(i);
+                if (key == null)
+                {
+                    continue;
+                }
+                Runner runner = running.get(key);
+                if (runner != null)
+                {
+                    if (runner.queue.size() >= maxQueueSize)
+                    {
+                        continue;
+                    }
+                    runner.queue.add(runs.get(i));
+                }
+                else
+                {
+                    runner = new Runner();
+                    runner.key = key;
+                    running.put(key, runner);
+                    runner.queue.add(runs.get(i));
+                    started.add(runner);
+                }
+                accepted[i] = true;
+            }
+        }
+        // the new runners only leave the map after running, they can start outside of the lock
+        started.forEach(executorService::execute);
+        for (int i = 0; i < accepted.length; i++)
+        {
+            if (keys.get(i) == null)
+            {
+                final Supplier<Task<?>> run = runs.get(i);
+                executorService.execute(() -> run.get());
+                accepted[i] = true;
+            }
+        }
+        return accepted;
+    }
+
     /**
      * Makes sure the runner is empty before removing it from the map.
      *
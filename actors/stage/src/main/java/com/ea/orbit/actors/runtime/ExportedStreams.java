@@ -0,0 +1,155 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.ResultStream;
+import com.ea.orbit.concurrent.ConcurrentHashSet;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Result streams returned by local actors and observers to remote callers.
+ * <p>
+ * Each stream is installed as a {@link StreamSource} observer, the caller receives a reference to it
+ * and pulls the items in chunks. The pulls are executed serially with the actor messages.
+ * </p>
+ */
+class ExportedStreams
+{
+    private static final Logger logger = LoggerFactory.getLogger(ExportedStreams.class);
+
+    /**
+     * Upper bound to the number of items sent in a single response, regardless of the credits given by the consumer.
+     */
+    static final int MAX_CHUNK_SIZE = 4096;
+
+    private final Execution execution;
+    // keeps the stream sources alive, the execution only holds weak references to the observers.
+    private final Set<ExportedStream> streams = new ConcurrentHashSet<>();
+
+    ExportedStreams(final Execution execution)
+    {
+        this.execution = execution;
+    }
+
+    /**
+     * @param stream    the stream returned by the actor or observer.
+     * @param serialKey the key used to serialize the pulls with the messages of the actor that returned the stream.
+     * @return the handle to be sent to the caller.
+     */
+    StreamHandle export(final ResultStream<?> stream, final Object serialKey)
+    {
+        final ExportedStream exported = new ExportedStream(stream, serialKey);
+        streams.add(exported);
+        return new StreamHandle(execution.getObjectReference(StreamSource.class, exported));
+    }
+
+    /**
+     * Closes the streams that were not pulled for longer than the given time.
+     */
+    void cleanup(final long idleTimeoutMillis)
+    {
+        final long now = execution.clock().millis();
+        for (final ExportedStream exported : streams)
+        {
+            if (now - exported.lastAccess > idleTimeoutMillis)
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Closing idle result stream: " + exported.stream);
+                }
+                exported.close();
+            }
+        }
+    }
+
+    int size()
+    {
+        return streams.size();
+    }
+
+    private class ExportedStream implements StreamSource
+    {
+        final ResultStream<?> stream;
+        final Object serialKey;
+        volatile long lastAccess;
+
+        ExportedStream(final ResultStream<?> stream, final Object serialKey)
+        {
+            this.stream = stream;
+            this.serialKey = serialKey;
+            this.lastAccess = execution.clock().millis();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Task<List<Object>> pull(final int credits)
+        {
+            if (!streams.contains(this))
+            {
+                return Task.fromException(new UncheckedException("Result stream closed"));
+            }
+            lastAccess = execution.clock().millis();
+            final int count = Math.max(1, Math.min(credits, MAX_CHUNK_SIZE));
+            final Task<List<Object>> items = execution.executeSerially(serialKey,
+                    () -> (Task<List<Object>>) (Task) stream.next(count));
+            return items.whenComplete((r, e) -> {
+                if (e != null || r == null || r.isEmpty())
+                {
+                    // the end, the consumer won't ask again.
+                    streams.remove(this);
+                }
+            });
+        }
+
+        @Override
+        public Task<Void> close()
+        {
+            if (streams.remove(this))
+            {
+                try
+                {
+                    return execution.executeSerially(serialKey, (Supplier<Task<Void>>) stream::close);
+                }
+                catch (Exception ex)
+                {
+                    logger.error("Error closing result stream", ex);
+                }
+            }
+            return Task.done();
+        }
+    }
+}
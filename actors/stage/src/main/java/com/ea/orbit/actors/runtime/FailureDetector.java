@@ -0,0 +1,164 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Phi accrual failure detector, fed with the heartbeats received from other nodes.
+ * <p>
+ * Instead of a fixed timeout, each node gets a suspicion level, phi, computed from the time since its last heartbeat
+ * and the distribution of its recent heartbeat intervals: phi = -log10(probability of a heartbeat arriving later).
+ * A phi of 8 means a one in 10^8 chance of the node still being alive given its history,
+ * so the threshold adapts to the jitter of each node and network.
+ * Nodes that never sent a heartbeat are not suspected.
+ * </p>
+ */
+class FailureDetector
+{
+    static final int DEFAULT_WINDOW_SIZE = 100;
+
+    private final ConcurrentMap<NodeAddress, History> histories = new ConcurrentHashMap<>();
+    private final int windowSize;
+    private final long expectedIntervalNanos;
+    private final long acceptablePauseNanos;
+    private final long minStdDeviationNanos;
+
+    private static class History
+    {
+        final long[] intervals;
+        int count;
+        int next;
+        long last;
+        double sum;
+        double sumOfSquares;
+
+        History(final int windowSize, final long expectedIntervalNanos, final long now)
+        {
+            intervals = new long[windowSize];
+            last = now;
+            // seeded with the expected interval so that a single heartbeat is enough to start suspecting
+            add(expectedIntervalNanos);
+        }
+
+        void add(final long interval)
+        {
+            if (count == intervals.length)
+            {
+                final long oldest = intervals[next];
+                sum -= oldest;
+                sumOfSquares -= (double) oldest * oldest;
+            }
+            else
+            {
+                count++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % intervals.length;
+            sum += interval;
+            sumOfSquares += (double) interval * interval;
+        }
+
+        synchronized void heartbeat(final long now)
+        {
+            add(now - last);
+            last = now;
+        }
+
+        synchronized double phi(final long now, final long acceptablePauseNanos, final long minStdDeviationNanos)
+        {
+            final double mean = sum / count;
+            final double variance = Math.max(0, sumOfSquares / count - mean * mean);
+            final double stdDeviation = Math.max(Math.sqrt(variance), minStdDeviationNanos);
+            return FailureDetector.phi(now - last, mean + acceptablePauseNanos, stdDeviation);
+        }
+    }
+
+    /**
+     * @param windowSize            how many of the last heartbeat intervals are kept for each node
+     * @param expectedIntervalNanos the heartbeat interval, used before the actual intervals are known
+     * @param acceptablePauseNanos  added to the mean interval, tolerates pauses like garbage collections
+     * @param minStdDeviationNanos  lower bound for the deviation, avoids suspecting on small delays after regular heartbeats
+     */
+    FailureDetector(final int windowSize, final long expectedIntervalNanos, final long acceptablePauseNanos, final long minStdDeviationNanos)
+    {
+        this.windowSize = windowSize;
+        this.expectedIntervalNanos = expectedIntervalNanos;
+        this.acceptablePauseNanos = acceptablePauseNanos;
+        this.minStdDeviationNanos = Math.max(1, minStdDeviationNanos);
+    }
+
+    void heartbeat(final NodeAddress node, final long now)
+    {
+        final History history = histories.get(node);
+        if (history == null)
+        {
+            if (histories.putIfAbsent(node, new History(windowSize, expectedIntervalNanos, now)) == null)
+            {
+                return;
+            }
+            heartbeat(node, now);
+            return;
+        }
+        history.heartbeat(now);
+    }
+
+    /**
+     * @return the suspicion level of the node, zero if it never sent a heartbeat.
+     */
+    double phi(final NodeAddress node, final long now)
+    {
+        final History history = histories.get(node);
+        return history != null ? history.phi(now, acceptablePauseNanos, minStdDeviationNanos) : 0;
+    }
+
+    void retainAll(final Collection<NodeAddress> nodes)
+    {
+        histories.keySet().retainAll(nodes);
+    }
+
+    /**
+     * Logistic approximation of the normal cumulative distribution, as used by Akka,
+     * it doesn't overflow for elapsed times far from the mean.
+     */
+    static double phi(final long elapsed, final double mean, final double stdDeviation)
+    {
+        final double y = (elapsed - mean) / stdDeviation;
+        final double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean)
+        {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+}
@@ -30,7 +30,9 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.Addressable;
+import com.ea.orbit.actors.annotation.NodeSelection;
 import com.ea.orbit.actors.annotation.StatelessWorker;
+import com.ea.orbit.actors.cluster.AsyncConcurrentMap;
 import com.ea.orbit.actors.cluster.ClusterPeer;
 import com.ea.orbit.actors.cluster.NodeAddress;
 import com.ea.orbit.annotation.Config;
@@ -44,13 +46,19 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 public class Hosting implements NodeCapabilities, Startable
@@ -62,13 +70,191 @@ public class Hosting implements NodeCapabilities, Startable
     private volatile Map<NodeAddress, NodeInfo> activeNodes = new HashMap<>(0);
     private volatile List<NodeInfo> serverNodes = new ArrayList<>(0);
     private final Object serverNodesUpdateMutex = new Object();
+    // completed and replaced when the server list changes, placements waiting for a capable server chain on it
+    private volatile Task<Void> serverNodesChanged = new Task<>();
     private Execution execution;
-    private ConcurrentMap<ActorKey, NodeAddress> localAddressCache = new ConcurrentHashMap<>();
-    private volatile ConcurrentMap<ActorKey, NodeAddress> distributedDirectory;
+    private Messaging messaging;
+    private LocationCache localAddressCache;
+    private volatile AsyncConcurrentMap<ActorKey, NodeAddress> distributedDirectory;
+    private final ConcurrentMap<ActorKey, Task<NodeAddress>> pendingLocations = new ConcurrentHashMap<>();
+    private final LongAdder coalescedLookups = new LongAdder();
+    private final LongAdder locationHintsSeeded = new LongAdder();
+    private final LongAdder activationClaims = new LongAdder();
     @Config("orbit.actors.timeToWaitForServersMillis")
     private long timeToWaitForServersMillis = 30000;
+
+    // how often the waiting placements are retried or checked for timeouts
+    static final long WAITING_PLACEMENTS_SWEEP_MILLIS = 250;
+
+    // placements waiting for a capable server or for a retry
+    private final ConcurrentMap<Task<NodeAddress>, Placement> waitingPlacements = new ConcurrentHashMap<>();
+
+    private static class Placement
+    {
+        final String interfaceClassName;
+        final NodeSelection.Strategy strategy;
+        final Task<NodeAddress> result = new Task<>();
+        final long deadline;
+        // the nodes that failed to answer, skipped until the next retry
+        final Set<NodeAddress> failedNodes = ConcurrentHashMap.newKeySet();
+        // if true the next sweep retries the placement, otherwise it waits for the servers to change
+        volatile boolean retry;
+
+        Placement(final String interfaceClassName, final NodeSelection.Strategy strategy, final long deadline)
+        {
+            this.interfaceClassName = interfaceClassName;
+            this.strategy = strategy;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * How often servers report their load to the other nodes, used to select where to activate actors.
+     *
+     * @see NodeSelection
+     */
+    @Config("orbit.actors.loadReportIntervalMillis")
+    private long loadReportIntervalMillis = 5000;
+
+    // how long the last probe task waited for an execution thread
+    private volatile long queueLatencyNanos;
+
+    /**
+     * How often a server moves activations to servers with fewer activations, zero disables the rebalancing.
+     * Only used with {@link PlacementMode#DIRECTORY}.
+     */
+    @Config("orbit.actors.rebalanceIntervalMillis")
+    private long rebalanceIntervalMillis = 0;
+
+    /**
+     * Maximum number of activations moved by each rebalancing round.
+     */
+    @Config("orbit.actors.rebalanceMaxMoves")
+    private int rebalanceMaxMoves = 100;
+
+    /**
+     * How far above the cluster average, in percent, the local activation count must be to move actors.
+     */
+    @Config("orbit.actors.rebalanceTolerancePercent")
+    private int rebalanceTolerancePercent = 20;
+
+    /**
+     * One in how many calls between actors is sampled to find the actors that talk to each other, zero disables it.
+     * New activations are placed in the node of their strongest partner,
+     * and the rebalancing avoids separating them. Only used with {@link PlacementMode#DIRECTORY}.
+     */
+    @Config("orbit.actors.affinitySampleRate")
+    private int affinitySampleRate = 0;
+
+    /**
+     * Maximum number of actors in the affinity graph, the least recently used are evicted first.
+     */
+    @Config("orbit.actors.affinityGraphSize")
+    private long affinityGraphSize = 100_000;
+
+    private AffinityGraph affinityGraph;
+    private final LongAdder affinityPlacements = new LongAdder();
+
+    /**
+     * Maximum number of actor locations remembered by this node, the least recently used are evicted first.
+     */
+    @Config("orbit.actors.locationCacheSize")
+    private long locationCacheSize = 1_000_000;
     private Random random = new Random();
 
+    public enum PlacementMode
+    {
+        DIRECTORY, // the actor owner is registered in the distributed directory
+        CONSISTENT_HASH // the actor owner is computed from the cluster view, only moved actors are in the directory
+    }
+
+    /**
+     * How the node that activates an actor is chosen.
+     * <p>
+     * With {@link PlacementMode#CONSISTENT_HASH} the callers don't consult the distributed directory,
+     * the owner is the first capable node on a hash ring of the cluster nodes.
+     * When the view changes, the actors that stay where they are while their ring owner changed
+     * are registered in the directory, which the new ring owner checks before activating them.
+     * All nodes of the cluster must use the same placement mode.
+     * </p>
+     */
+    @Config("orbit.actors.placement")
+    private PlacementMode placement = PlacementMode.DIRECTORY;
+
+    /**
+     * Number of points of each node in the consistent hash ring.
+     */
+    @Config("orbit.actors.virtualNodes")
+    private int virtualNodes = ConsistentHashRing.DEFAULT_VIRTUAL_NODES;
+
+    private volatile ConsistentHashRing hashRing = ConsistentHashRing.EMPTY;
+    // the ring before the last view change, the actors might still be where it placed them
+    private volatile ConsistentHashRing previousRing = ConsistentHashRing.EMPTY;
+    private volatile long previousRingDeadline;
+    // how long after a view change the nodes may still be registering their moved actors
+    private static final long MOVED_ACTORS_GRACE_MILLIS = 30_000;
+
+    public enum DirectoryMode
+    {
+        CLUSTER_PEER, // a cache provided by the cluster peer
+        PARTITIONED // partitioned among the servers, through the stage messaging
+    }
+
+    /**
+     * Where the actor locations are kept.
+     * <p>
+     * With {@link DirectoryMode#PARTITIONED} each server keeps the entries of a range of the
+     * {@link PartitionedDirectory} hash ring and the cluster peer cache isn't used.
+     * It's also used when the cluster peer has no distributed caches.
+     * All nodes of the cluster must use the same directory mode.
+     * </p>
+     */
+    @Config("orbit.actors.directory")
+    private DirectoryMode directory = DirectoryMode.CLUSTER_PEER;
+
+    /**
+     * Maximum number of operations sent together to a directory partition.
+     */
+    @Config("orbit.actors.directoryBatchSize")
+    private int directoryBatchSize = 256;
+
+    private PartitionedDirectory partitionedDirectory;
+
+    private static final int PRESENCE_BATCH_SIZE = 256;
+    private NodeBatcher<ActorKey, Boolean> presenceQueries;
+
+    /**
+     * How often servers send heartbeats to the other nodes, zero disables the failure detection.
+     * <p>
+     * Servers whose heartbeats stop are marked unreachable before the cluster view removes them:
+     * new activations skip them, their entries in the location cache are dropped,
+     * and the calls waiting for their responses fail right away instead of timing out.
+     * An unreachable server might only be paused, so its actors stay registered in the directory
+     * and calls to them fail until it is reachable again or the view drops it.
+     * </p>
+     */
+    @Config("orbit.actors.heartbeatIntervalMillis")
+    private long heartbeatIntervalMillis = 0;
+
+    /**
+     * Suspicion level above which a server is marked unreachable.
+     * Lower values detect failures sooner but mistake more slow servers for failed ones.
+     *
+     * @see FailureDetector
+     */
+    @Config("orbit.actors.phiThreshold")
+    private double phiThreshold = 8.0;
+
+    /**
+     * Heartbeat delay tolerated on top of the usual interval, to survive garbage collection pauses.
+     */
+    @Config("orbit.actors.acceptableHeartbeatPauseMillis")
+    private long acceptableHeartbeatPauseMillis = 3000;
+
+    private FailureDetector failureDetector;
+    private volatile long lastHeartbeatNanos;
+    private final LongAdder nodesSuspected = new LongAdder();
+
     public Hosting()
     {
         //
@@ -84,11 +270,223 @@ public class Hosting implements NodeCapabilities, Startable
         this.timeToWaitForServersMillis = timeToWaitForServersMillis;
     }
 
+    public PlacementMode getPlacement()
+    {
+        return placement;
+    }
+
+    public void setPlacement(final PlacementMode placement)
+    {
+        this.placement = placement;
+    }
+
+    public void setVirtualNodes(final int virtualNodes)
+    {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public DirectoryMode getDirectory()
+    {
+        return directory;
+    }
+
+    public void setDirectory(final DirectoryMode directory)
+    {
+        this.directory = directory;
+    }
+
+    public void setDirectoryBatchSize(final int directoryBatchSize)
+    {
+        this.directoryBatchSize = directoryBatchSize;
+    }
+
+    /**
+     * @return the number of directory entries kept by this node with the partitioned directory.
+     */
+    public long getDirectoryPartitionSize()
+    {
+        return partitionedDirectory != null ? partitionedDirectory.size() : 0;
+    }
+
+    /**
+     * @return the number of request batches sent to other directory partitions.
+     */
+    public long getDirectoryBatchCount()
+    {
+        return partitionedDirectory != null ? partitionedDirectory.getBatchCount() : 0;
+    }
+
+    /**
+     * @return the number of local actors registered again after the node keeping their directory entries left.
+     */
+    public long getDirectoryEntriesRestoredCount()
+    {
+        return partitionedDirectory != null ? partitionedDirectory.getRestoredCount() : 0;
+    }
+
+    PartitionedDirectory getPartitionedDirectory()
+    {
+        return partitionedDirectory;
+    }
+
+    public long getLoadReportIntervalMillis()
+    {
+        return loadReportIntervalMillis;
+    }
+
+    public void setLoadReportIntervalMillis(final long loadReportIntervalMillis)
+    {
+        this.loadReportIntervalMillis = loadReportIntervalMillis;
+    }
+
+    public long getHeartbeatIntervalMillis()
+    {
+        return heartbeatIntervalMillis;
+    }
+
+    public void setHeartbeatIntervalMillis(final long heartbeatIntervalMillis)
+    {
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    public double getPhiThreshold()
+    {
+        return phiThreshold;
+    }
+
+    public void setPhiThreshold(final double phiThreshold)
+    {
+        this.phiThreshold = phiThreshold;
+    }
+
+    public void setAcceptableHeartbeatPauseMillis(final long acceptableHeartbeatPauseMillis)
+    {
+        this.acceptableHeartbeatPauseMillis = acceptableHeartbeatPauseMillis;
+    }
+
+    /**
+     * @return the number of times a server was marked unreachable by the failure detector.
+     */
+    public long getNodesSuspectedCount()
+    {
+        return nodesSuspected.longValue();
+    }
+
+    /**
+     * @return true if the node is in the cluster view and wasn't marked unreachable.
+     */
+    public boolean isReachable(final NodeAddress nodeAddress)
+    {
+        final NodeInfo nodeInfo = activeNodes.get(nodeAddress);
+        return nodeInfo != null && !nodeInfo.unreachable;
+    }
+
+    public long getRebalanceIntervalMillis()
+    {
+        return rebalanceIntervalMillis;
+    }
+
+    public void setRebalanceIntervalMillis(final long rebalanceIntervalMillis)
+    {
+        this.rebalanceIntervalMillis = rebalanceIntervalMillis;
+    }
+
+    public void setRebalanceMaxMoves(final int rebalanceMaxMoves)
+    {
+        this.rebalanceMaxMoves = rebalanceMaxMoves;
+    }
+
+    public void setRebalanceTolerancePercent(final int rebalanceTolerancePercent)
+    {
+        this.rebalanceTolerancePercent = rebalanceTolerancePercent;
+    }
+
+    public void setAffinitySampleRate(final int affinitySampleRate)
+    {
+        this.affinitySampleRate = affinitySampleRate;
+    }
+
+    public void setAffinityGraphSize(final long affinityGraphSize)
+    {
+        this.affinityGraphSize = affinityGraphSize;
+    }
+
+    /**
+     * @return the number of activations placed next to an actor they talk to.
+     */
+    public long getAffinityPlacementCount()
+    {
+        return affinityPlacements.longValue();
+    }
+
+    /**
+     * @return the number of directory lookups that joined one already in flight for the same actor.
+     */
+    public long getCoalescedLookupCount()
+    {
+        return coalescedLookups.longValue();
+    }
+
+    /**
+     * @return the number of messages whose actor location was checked in the directory before activating it.
+     */
+    public long getActivationClaimCount()
+    {
+        return activationClaims.longValue();
+    }
+
+    /**
+     * @return the number of actor locations learned from references received from other nodes.
+     */
+    public long getLocationHintsSeededCount()
+    {
+        return locationHintsSeeded.longValue();
+    }
+
+    /**
+     * @return the last load reported by a node, or null if it didn't report yet.
+     */
+    public NodeLoad getNodeLoad(final NodeAddress nodeAddress)
+    {
+        final NodeInfo nodeInfo = activeNodes.get(nodeAddress);
+        return nodeInfo != null ? nodeInfo.load : null;
+    }
+
+    public void setLocationCacheSize(final long locationCacheSize)
+    {
+        this.locationCacheSize = locationCacheSize;
+    }
+
+    public long getLocationCacheHitCount()
+    {
+        return localAddressCache != null ? localAddressCache.hitCount() : 0;
+    }
+
+    public long getLocationCacheMissCount()
+    {
+        return localAddressCache != null ? localAddressCache.missCount() : 0;
+    }
+
+    public long getLocationCacheEvictionCount()
+    {
+        return localAddressCache != null ? localAddressCache.evictionCount() : 0;
+    }
+
+    public long getLocationCacheSize()
+    {
+        return localAddressCache != null ? localAddressCache.size() : 0;
+    }
+
     public void setExecution(final Execution execution)
     {
         this.execution = execution;
     }
 
+    public void setMessaging(final Messaging messaging)
+    {
+        this.messaging = messaging;
+    }
+
     public void setNodeType(final NodeTypeEnum nodeType)
     {
         this.nodeType = nodeType;
@@ -123,6 +521,12 @@ public class Hosting implements NodeCapabilities, Startable
         NodeCapabilities nodeCapabilities;
         boolean cannotHostActors;
         final ConcurrentHashMap<String, Integer> canActivate = new ConcurrentHashMap<>();
+        volatile NodeLoad load;
+        volatile NodeManifest manifest;
+        // heartbeats stopped, set and cleared by the failure detection
+        volatile boolean unreachable;
+        // activations sent to the node since its last load report
+        final AtomicInteger selectedSinceReport = new AtomicInteger();
 
         public NodeInfo(final NodeAddress address)
         {
@@ -141,6 +545,67 @@ public class Hosting implements NodeCapabilities, Startable
                 : actorSupported_no);
     }
 
+    @Override
+    public Task<NodeManifest> getManifest()
+    {
+        if (nodeType == NodeTypeEnum.CLIENT)
+        {
+            return Task.fromValue(new NodeManifest(false, null));
+        }
+        return Task.fromValue(new NodeManifest(true, execution.getActivatableInterfaceNames()));
+    }
+
+    /**
+     * @return the manifest received from a node, or null if it wasn't received yet.
+     */
+    public NodeManifest getNodeManifest(final NodeAddress nodeAddress)
+    {
+        final NodeInfo nodeInfo = activeNodes.get(nodeAddress);
+        return nodeInfo != null ? nodeInfo.manifest : null;
+    }
+
+    private void onManifest(final NodeInfo nodeInfo, final NodeManifest manifest)
+    {
+        nodeInfo.manifest = manifest;
+        if (!manifest.isHostsActors())
+        {
+            nodeInfo.cannotHostActors = true;
+            updateServerNodes();
+        }
+    }
+
+    private void requestManifests(final List<NodeInfo> nodes)
+    {
+        for (final NodeInfo nodeInfo : nodes)
+        {
+            // a single request per node, instead of one per actor type
+            nodeInfo.nodeCapabilities.getManifest().whenComplete((manifest, e) -> {
+                if (manifest != null)
+                {
+                    onManifest(nodeInfo, manifest);
+                }
+                else if (logger.isDebugEnabled())
+                {
+                    logger.debug("Error getting the manifest of " + nodeInfo.address, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return if the node can activate the actor, or null if that's unknown.
+     */
+    private Integer knownCapability(final NodeInfo nodeInfo, final String interfaceClassName)
+    {
+        final Integer canActivate = nodeInfo.canActivate.get(interfaceClassName);
+        if (canActivate != null)
+        {
+            return canActivate;
+        }
+        final NodeManifest manifest = nodeInfo.manifest;
+        return manifest != null ? manifest.canActivate(interfaceClassName) : null;
+    }
+
     @Override
     public Task<Void> nodeModeChanged(final NodeAddress nodeAddress, final NodeState newState)
     {
@@ -157,6 +622,299 @@ public class Hosting implements NodeCapabilities, Startable
         return Task.done();
     }
 
+    @Override
+    public Task<Void> loadReport(final NodeAddress nodeAddress, final NodeLoad load)
+    {
+        final NodeInfo node = activeNodes.get(nodeAddress);
+        if (node != null)
+        {
+            node.load = load;
+            node.selectedSinceReport.set(0);
+        }
+        return Task.done();
+    }
+
+    /**
+     * Sends the load of this node to all the other nodes, if this node hosts actors.
+     */
+    public void reportLoad()
+    {
+        if (nodeType != NodeTypeEnum.SERVER || execution.getState() != NodeState.RUNNING)
+        {
+            return;
+        }
+        final java.lang.Runtime runtime = java.lang.Runtime.getRuntime();
+        final long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        final NodeLoad load = new NodeLoad(
+                (int) Math.min(Integer.MAX_VALUE, execution.getLocalActorCount()),
+                (int) Math.min(Integer.MAX_VALUE, execution.getBacklogSize()),
+                (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(queueLatencyNanos)),
+                (float) usedHeap / runtime.maxMemory());
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        for (final NodeInfo nodeInfo : activeNodes.values())
+        {
+            if (nodeInfo.address.equals(localAddress))
+            {
+                loadReport(localAddress, load);
+            }
+            else if (nodeInfo.active)
+            {
+                nodeInfo.nodeCapabilities.loadReport(localAddress, load);
+            }
+        }
+        // measured for the next report
+        final long start = System.nanoTime();
+        execution.getExecutor().execute(() -> queueLatencyNanos = System.nanoTime() - start);
+    }
+
+    /**
+     * Sends heartbeats to the other nodes, if this node hosts actors,
+     * and updates which servers are unreachable.
+     */
+    public void heartbeat()
+    {
+        if (failureDetector == null || execution.getState() == NodeState.STOPPED)
+        {
+            return;
+        }
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        if (nodeType == NodeTypeEnum.SERVER)
+        {
+            for (final NodeInfo nodeInfo : activeNodes.values())
+            {
+                if (nodeInfo.active && !nodeInfo.address.equals(localAddress))
+                {
+                    messaging.sendHeartbeat(nodeInfo.address);
+                }
+            }
+        }
+        final long now = System.nanoTime();
+        final long sinceLast = now - lastHeartbeatNanos;
+        lastHeartbeatNanos = now;
+        if (sinceLast > TimeUnit.MILLISECONDS.toNanos(heartbeatIntervalMillis + acceptableHeartbeatPauseMillis))
+        {
+            // this node was paused, the heartbeats received meanwhile might not have been processed yet
+            return;
+        }
+        boolean changed = false;
+        for (final NodeInfo nodeInfo : serverNodes)
+        {
+            if (nodeInfo.address.equals(localAddress))
+            {
+                continue;
+            }
+            final boolean unreachable = failureDetector.phi(nodeInfo.address, now) > phiThreshold;
+            if (unreachable == nodeInfo.unreachable)
+            {
+                continue;
+            }
+            nodeInfo.unreachable = unreachable;
+            changed = true;
+            if (unreachable)
+            {
+                nodesSuspected.increment();
+                logger.warn("Node {} stopped sending heartbeats, marking it unreachable", nodeInfo.address);
+                localAddressCache.invalidate(nodeInfo.address);
+                messaging.onNodeUnreachable(nodeInfo.address);
+            }
+            else
+            {
+                logger.info("Node {} is reachable again", nodeInfo.address);
+            }
+        }
+        if (changed)
+        {
+            // wakes up the placements waiting for a server
+            updateServerNodes();
+        }
+    }
+
+    private void onHeartbeat(final NodeAddress from)
+    {
+        failureDetector.heartbeat(from, System.nanoTime());
+    }
+
+    @Override
+    public Task<Boolean> acceptActivation(final Addressable actorReference, final Object state)
+    {
+        if (nodeType != NodeTypeEnum.SERVER || execution.getState() != NodeState.RUNNING)
+        {
+            return Task.fromValue(false);
+        }
+        return execution.acceptActivation((ActorReference<?>) actorReference, state);
+    }
+
+    /**
+     * Moves activations from this server to the servers with fewer activations,
+     * up to {@code rebalanceMaxMoves} per call. The other servers' activation counts come from their load reports.
+     *
+     * @return the number of actors moved.
+     */
+    public Task<Integer> rebalance()
+    {
+        if (nodeType != NodeTypeEnum.SERVER || execution.getState() != NodeState.RUNNING
+                || placement != PlacementMode.DIRECTORY)
+        {
+            return Task.fromValue(0);
+        }
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        final List<NodeInfo> targets = serverNodes.stream()
+                .filter(n -> n.active && n.state == NodeState.RUNNING && n.load != null && !n.address.equals(localAddress))
+                .collect(Collectors.toList());
+        final List<ActorReference<?>> candidates = execution.getLocalActorReferences();
+        if (targets.isEmpty() || candidates.isEmpty())
+        {
+            return Task.fromValue(0);
+        }
+        // counts including the activations sent to each node since its last report
+        final int[] projected = new int[targets.size()];
+        long total = candidates.size();
+        for (int i = 0; i < projected.length; i++)
+        {
+            final NodeInfo nodeInfo = targets.get(i);
+            projected[i] = nodeInfo.load.getActivationCount() + nodeInfo.selectedSinceReport.get();
+            total += projected[i];
+        }
+        final double average = (double) total / (targets.size() + 1);
+        if (candidates.size() <= average * (100 + rebalanceTolerancePercent) / 100)
+        {
+            return Task.fromValue(0);
+        }
+        int budget = (int) Math.min(rebalanceMaxMoves, candidates.size() - Math.ceil(average));
+        final List<Task<Boolean>> moves = new ArrayList<>();
+        if (affinitySampleRate > 0)
+        {
+            // the actors talking to other local actors are moved last
+            final Map<ActorReference<?>, NodeAddress> partnerNodes = new HashMap<>();
+            candidates.forEach(r -> partnerNodes.put(r, partnerLocation(ActorKey.of(r))));
+            candidates.sort(Comparator.comparing(r -> localAddress.equals(partnerNodes.get(r))));
+        }
+        for (final ActorReference<?> reference : candidates)
+        {
+            if (budget <= 0)
+            {
+                break;
+            }
+            final String interfaceClassName = ActorReference.getInterfaceClass(reference).getName();
+            final NodeAddress partnerNode = affinitySampleRate > 0 ? partnerLocation(ActorKey.of(reference)) : null;
+            int best = -1;
+            for (int i = 0; i < projected.length; i++)
+            {
+                if (projected[i] < average && (best < 0 || projected[i] < projected[best] || targets.get(i).address.equals(partnerNode))
+                        && Objects.equals(actorSupported_yes, knownCapability(targets.get(i), interfaceClassName)))
+                {
+                    best = i;
+                    if (targets.get(i).address.equals(partnerNode))
+                    {
+                        // joins the actor it talks to the most
+                        break;
+                    }
+                }
+            }
+            if (best < 0)
+            {
+                continue;
+            }
+            projected[best]++;
+            targets.get(best).selectedSinceReport.incrementAndGet();
+            budget--;
+            moves.add(execution.migrateActivation(reference, targets.get(best).address));
+        }
+        return Task.allOf(moves).thenApply(m -> (int) m.stream().filter(t -> Boolean.TRUE.equals(t.join())).count());
+    }
+
+    /**
+     * Called by the execution when an actor calls another actor, samples the call for the affinity placement.
+     */
+    void onActorCall(final ActorReference<?> caller, final ActorReference<?> callee)
+    {
+        final int rate = affinitySampleRate;
+        if (rate > 0 && (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0))
+        {
+            affinityGraph.record(ActorKey.of(caller), ActorKey.of(callee));
+        }
+    }
+
+    /**
+     * @return where the strongest partner of the actor is known to be, or null.
+     */
+    private NodeAddress partnerLocation(final ActorKey key)
+    {
+        for (final ActorKey partner : affinityGraph.getPartners(key))
+        {
+            if (execution.isActivatedLocally(partner.getInterfaceId(), partner.getId()))
+            {
+                return clusterPeer.localAddress();
+            }
+            final NodeAddress address = localAddressCache.get(partner);
+            if (address != null && activeNodes.containsKey(address))
+            {
+                return address;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the node of an actor that talks to the new actor, if it can activate it.
+     */
+    private NodeAddress selectAffineNode(final ActorKey addressable, final String interfaceClassName)
+    {
+        final NodeAddress partnerNode = partnerLocation(addressable);
+        if (partnerNode == null)
+        {
+            return null;
+        }
+        final NodeInfo nodeInfo = activeNodes.get(partnerNode);
+        if (nodeInfo == null || !nodeInfo.active || nodeInfo.cannotHostActors || nodeInfo.state != NodeState.RUNNING)
+        {
+            return null;
+        }
+        final boolean capable = partnerNode.equals(clusterPeer.localAddress())
+                ? nodeType == NodeTypeEnum.SERVER && execution.canActivateActor(interfaceClassName)
+                : Objects.equals(actorSupported_yes, knownCapability(nodeInfo, interfaceClassName));
+        if (!capable)
+        {
+            return null;
+        }
+        affinityPlacements.increment();
+        nodeInfo.selectedSinceReport.incrementAndGet();
+        return partnerNode;
+    }
+
+    /**
+     * Sends an activation and its state to another node, called by the execution during the actor's turn.
+     */
+    Task<Boolean> transferActivation(final NodeAddress target, final ActorReference<?> reference, final Object state)
+    {
+        final NodeInfo nodeInfo = activeNodes.get(target);
+        if (nodeInfo == null || !nodeInfo.active || nodeInfo.cannotHostActors)
+        {
+            return Task.fromValue(false);
+        }
+        return nodeInfo.nodeCapabilities.acceptActivation(reference, state);
+    }
+
+    /**
+     * Registers this node as the location of an actor moved here.
+     */
+    Task<Void> registerActivation(final ActorReference<?> reference)
+    {
+        final ActorKey addressable = ActorKey.of(reference);
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        localAddressCache.put(addressable, localAddress);
+        return onExecutor(getDistributedDirectory().putAsync(addressable, localAddress).thenRun(() -> {
+        }));
+    }
+
+    /**
+     * Called once the node joined the cluster, so that the first lookups don't wait for the directory to start.
+     */
+    public void initDirectory()
+    {
+        getDistributedDirectory();
+    }
+
     public void setClusterPeer(final ClusterPeer clusterPeer)
     {
         this.clusterPeer = clusterPeer;
@@ -164,6 +922,27 @@ public class Hosting implements NodeCapabilities, Startable
 
     public Task<Void> start()
     {
+        localAddressCache = new LocationCache(locationCacheSize);
+        affinityGraph = new AffinityGraph(affinityGraphSize, AffinityGraph.DEFAULT_PARTNERS);
+        presenceQueries = new NodeBatcher<>(execution::getExecutor, PRESENCE_BATCH_SIZE,
+                (address, keys) -> execution.createReference(address, NodeCapabilities.class, "").isActivated(keys));
+        if (directory == DirectoryMode.CLUSTER_PEER && !clusterPeer.hasCaches())
+        {
+            logger.info("The cluster peer has no distributed caches, using the partitioned directory");
+            directory = DirectoryMode.PARTITIONED;
+        }
+        if (directory == DirectoryMode.PARTITIONED)
+        {
+            partitionedDirectory = new PartitionedDirectory(execution, clusterPeer, nodeType == NodeTypeEnum.SERVER, virtualNodes, directoryBatchSize);
+        }
+        if (heartbeatIntervalMillis > 0 && messaging != null)
+        {
+            final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatIntervalMillis);
+            failureDetector = new FailureDetector(FailureDetector.DEFAULT_WINDOW_SIZE, intervalNanos,
+                    TimeUnit.MILLISECONDS.toNanos(acceptableHeartbeatPauseMillis), intervalNanos / 4);
+            lastHeartbeatNanos = System.nanoTime();
+            messaging.registerHeartbeatListener(this::onHeartbeat);
+        }
         clusterPeer.registerViewListener(v -> onClusterViewChanged(v));
         return Task.done();
     }
@@ -193,32 +972,139 @@ public class Hosting implements NodeCapabilities, Startable
         }
         activeNodes = newNodes;
         updateServerNodes();
-        // TODO notify someone? (NodeInfo oldNodeInfo : oldNodes.values()) { ... }
+        presenceQueries.retainAll(newNodes.keySet());
+        if (failureDetector != null)
+        {
+            failureDetector.retainAll(newNodes.keySet());
+        }
+        if (justAddedNodes.size() > 0)
+        {
+            // not sending messages from the view listener, the cluster peer might not be ready yet
+            execution.getExecutor().execute(() -> requestManifests(justAddedNodes));
+        }
+        if (placement == PlacementMode.CONSISTENT_HASH)
+        {
+            final ConsistentHashRing oldRing = hashRing;
+            previousRing = oldRing;
+            previousRingDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MOVED_ACTORS_GRACE_MILLIS);
+            hashRing = ConsistentHashRing.build(newNodes.keySet(), virtualNodes);
+            // the ring owner of the local actors can only change to one of the new nodes
+            if (oldRing.getNodeCount() > 0 && justAddedNodes.size() > 0 && nodeType == NodeTypeEnum.SERVER)
+            {
+                execution.getExecutor().execute(this::registerMovedActors);
+            }
+        }
+        if (oldNodes.size() > 0)
+        {
+            // so that new calls to actors on the removed nodes find a new location right away.
+            oldNodes.keySet().forEach(localAddressCache::invalidate);
+            if (messaging != null)
+            {
+                oldNodes.keySet().forEach(messaging::onNodeDrop);
+            }
+        }
     }
 
     private void updateServerNodes()
     {
+        final Task<Void> changed;
         synchronized (serverNodesUpdateMutex)
         {
             this.serverNodes = activeNodes.values().stream().filter(
                     nodeInfo -> nodeInfo.active && !nodeInfo.cannotHostActors).collect(Collectors.toList());
-            if (serverNodes.size() > 0)
+            if (partitionedDirectory != null)
             {
-                serverNodesUpdateMutex.notifyAll();
+                partitionedDirectory.setOwners(serverNodes.stream().map(n -> n.address).collect(Collectors.toList()));
             }
+            changed = serverNodesChanged;
+            serverNodesChanged = new Task<>();
         }
+        // wakes up the pending placements
+        changed.complete(null);
     }
 
     public Task<NodeAddress> locateActor(final Addressable reference, final boolean forceActivation)
     {
-        return (forceActivation) ? locateAndActivateActor(reference) : locateActiveActor(reference);
+        return (forceActivation) ? locateAndActivateActor(reference, null) : locateActiveActor(reference);
+    }
+
+    /**
+     * Locates the actor a message is sent to, activating it if needed.
+     * <p>
+     * If the location is resolved in the directory rather than taken from the cache the message is marked as placed,
+     * so the receiver activates the actor without checking the directory again.
+     * </p>
+     */
+    public Task<NodeAddress> locateActor(final Addressable reference, final Message message)
+    {
+        return locateAndActivateActor(reference, message);
     }
 
 
+    /**
+     * Checks if an actor is active without activating it.
+     * <p>
+     * Actors of this node are checked locally, the node where the actor was last located is asked otherwise,
+     * along with the other queries sent to it at the same time.
+     * </p>
+     *
+     * @return true if the actor is active, false if it isn't or its location is unknown.
+     */
+    public Task<Boolean> isActivated(final Addressable actorReference)
+    {
+        final ActorKey key = ActorKey.of(actorReference);
+        if (execution.isActivatedLocally(key.getInterfaceId(), key.getId()))
+        {
+            return Task.fromValue(true);
+        }
+        final NodeAddress address = getLocationHint(actorReference);
+        if (address == null || address.equals(clusterPeer.localAddress()))
+        {
+            return Task.fromValue(false);
+        }
+        return presenceQueries.submit(address, key);
+    }
+
+    @Override
+    public Task<List<Boolean>> isActivated(final List<ActorKey> actors)
+    {
+        final List<Boolean> activated = new ArrayList<>(actors.size());
+        for (final ActorKey key : actors)
+        {
+            activated.add(execution.isActivatedLocally(key.getInterfaceId(), key.getId()));
+        }
+        return Task.fromValue(activated);
+    }
+
+    /**
+     * @return the cached location of the actor if its node is still active, otherwise null.
+     */
+    public NodeAddress getLocationHint(final Addressable actorReference)
+    {
+        final NodeAddress address = localAddressCache != null ? localAddressCache.get(ActorKey.of(actorReference)) : null;
+        return address != null && activeNodes.containsKey(address) ? address : null;
+    }
+
+    /**
+     * Caches an actor location received from another node, unless a location is already cached.
+     * If it's stale the node that receives the next message forwards it to the right one.
+     */
+    public void setLocationHint(final Addressable actorReference, final NodeAddress address)
+    {
+        if (localAddressCache == null || !activeNodes.containsKey(address)
+                || ((ActorReference<?>) actorReference)._interfaceClass().isAnnotationPresent(StatelessWorker.class))
+        {
+            return;
+        }
+        if (localAddressCache.putIfAbsent(ActorKey.of(actorReference), address))
+        {
+            locationHintsSeeded.increment();
+        }
+    }
+
     private Task<NodeAddress> locateActiveActor(final Addressable actorReference)
     {
-        ActorKey addressable = new ActorKey(((ActorReference) actorReference)._interfaceClass().getName(),
-                String.valueOf(((ActorReference) actorReference).id));
+        final ActorKey addressable = ActorKey.of(actorReference);
         NodeAddress address = localAddressCache.get(addressable);
         if (address != null && activeNodes.containsKey(address))
         {
@@ -227,157 +1113,572 @@ public class Hosting implements NodeCapabilities, Startable
         return Task.fromValue(null);
     }
 
-    private Task<NodeAddress> locateAndActivateActor(final Addressable actorReference)
+    /**
+     * Registers in the distributed directory the local actors whose ring owner is now another node,
+     * so that the new ring owner sends their messages here instead of activating them again.
+     */
+    private void registerMovedActors()
+    {
+        final List<ActorReference<?>> references = execution.getLocalActorReferences();
+        final Set<String> interfaceClassNames = references.stream()
+                .map(r -> r._interfaceClass().getName()).collect(Collectors.toSet());
+        // clients are also in the ring until they say they can't host actors,
+        // learns what the other nodes can activate before computing the ring owners.
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        final List<Task<Void>> lookups = new ArrayList<>();
+        for (final NodeInfo nodeInfo : activeNodes.values())
+        {
+            if (!nodeInfo.active || nodeInfo.cannotHostActors || nodeInfo.address.equals(localAddress))
+            {
+                continue;
+            }
+            for (final String interfaceClassName : interfaceClassNames)
+            {
+                if (knownCapability(nodeInfo, interfaceClassName) == null)
+                {
+                    lookups.add(nodeInfo.nodeCapabilities.canActivate(interfaceClassName)
+                            .thenAccept(c -> onCanActivate(nodeInfo, interfaceClassName, c)));
+                }
+            }
+        }
+        Task.allOf(lookups).whenCompleteAsync((r, e) -> registerMovedActors(references), execution.getExecutor());
+    }
+
+    private void registerMovedActors(final List<ActorReference<?>> references)
+    {
+        try
+        {
+            final NodeAddress localAddress = clusterPeer.localAddress();
+            for (final ActorReference<?> reference : references)
+            {
+                final String interfaceClassName = reference._interfaceClass().getName();
+                // nodes that didn't answer are assumed capable, at worst the actor is registered for nothing
+                final ActorKey key = ActorKey.of(reference);
+                final NodeAddress ringOwner = ringOwner(key, interfaceClassName, true);
+                if (ringOwner != null && !ringOwner.equals(localAddress))
+                {
+                    getDistributedDirectory().putAsync(key, localAddress).exceptionally(ex -> {
+                        logger.error("Error registering the moved actor " + reference, ex);
+                        return null;
+                    });
+                }
+            }
+        }
+        catch (Exception ex)
+        {
+            logger.error("Error registering moved actors", ex);
+        }
+    }
+
+    /**
+     * @param assumeCapable if true nodes that were not asked yet are assumed to be able to activate the actor,
+     *                      otherwise only this node and nodes known to be capable are considered.
+     */
+    private NodeAddress ringOwner(final ActorKey key, final String interfaceClassName, final boolean assumeCapable)
+    {
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        final boolean canActivateLocally = nodeType == NodeTypeEnum.SERVER
+                && execution.getState() == NodeState.RUNNING
+                && execution.canActivateActor(interfaceClassName);
+        return hashRing.select(key.ringHash(), address -> {
+            if (address.equals(localAddress))
+            {
+                return canActivateLocally;
+            }
+            final NodeInfo nodeInfo = activeNodes.get(address);
+            if (nodeInfo == null || !nodeInfo.active || nodeInfo.cannotHostActors || nodeInfo.state != NodeState.RUNNING)
+            {
+                return false;
+            }
+            final Integer canActivate = knownCapability(nodeInfo, interfaceClassName);
+            return canActivate != null ? canActivate == actorSupported_yes : assumeCapable;
+        });
+    }
+
+    private Task<NodeAddress> locateOnRing(final ActorKey addressable, final String interfaceClassName)
+    {
+        final NodeAddress owner = ringOwner(addressable, interfaceClassName, true);
+        if (owner == null)
+        {
+            // no capable server yet
+            return selectNodeAsync(interfaceClassName, NodeSelection.Strategy.RANDOM)
+                    .thenCompose(n -> locateOnRing(addressable, interfaceClassName));
+        }
+        final NodeInfo nodeInfo = activeNodes.get(owner);
+        if (nodeInfo != null && !owner.equals(clusterPeer.localAddress()) && knownCapability(nodeInfo, interfaceClassName) == null)
+        {
+            // ask if the node can activate this type of actor, without blocking.
+            return nodeInfo.nodeCapabilities.canActivate(interfaceClassName).thenCompose(canActivate -> {
+                onCanActivate(nodeInfo, interfaceClassName, canActivate);
+                return locateOnRing(addressable, interfaceClassName);
+            });
+        }
+        localAddressCache.put(addressable, owner);
+        return Task.fromValue(owner);
+    }
+
+    private void onCanActivate(final NodeInfo nodeInfo, final String interfaceClassName, final Integer canActivate)
+    {
+        if (canActivate == actorSupported_noneSupported)
+        {
+            nodeInfo.cannotHostActors = true;
+            nodeInfo.canActivate.put(interfaceClassName, actorSupported_no);
+            updateServerNodes();
+        }
+        else
+        {
+            nodeInfo.canActivate.put(interfaceClassName, canActivate);
+        }
+    }
+
+    private Task<NodeAddress> locateAndActivateActor(final Addressable actorReference, final Message message)
     {
-        ActorKey addressable = new ActorKey(((ActorReference) actorReference)._interfaceClass().getName(),
-                String.valueOf(((ActorReference) actorReference).id));
+        final ActorKey addressable = ActorKey.of(actorReference);
 
         NodeAddress address = localAddressCache.get(addressable);
-        if (address != null && activeNodes.containsKey(address))
+        if (address != null && isReachable(address))
         {
             return Task.fromValue(address);
         }
         final Class<?> interfaceClass = ((ActorReference<?>) actorReference)._interfaceClass();
         final String interfaceClassName = interfaceClass.getName();
+        final NodeSelection nodeSelection = interfaceClass.getAnnotation(NodeSelection.class);
+        final NodeSelection.Strategy strategy = nodeSelection != null ? nodeSelection.value() : NodeSelection.Strategy.RANDOM;
         if (interfaceClass.isAnnotationPresent(StatelessWorker.class))
         {
-            if (nodeType == NodeTypeEnum.SERVER && execution.canActivateActor(interfaceClassName))
+            // TODO: consider always using local instance if this node is a server
+            // ~90% chance of making a local call
+            if (nodeType == NodeTypeEnum.SERVER && execution.canActivateActor(interfaceClassName) && random.nextInt(100) < 90)
+            {
+                return Task.fromValue(clusterPeer.localAddress());
+            }
+            // randomly chooses one server node to process this actor
+            return selectNodeAsync(interfaceClassName, strategy);
+        }
+
+        if (placement == PlacementMode.CONSISTENT_HASH)
+        {
+            return locateOnRing(addressable, interfaceClassName);
+        }
+
+        if (message != null)
+        {
+            message.withHeader(MessageDefinitions.PLACED, true);
+        }
+        // concurrent lookups of the same actor share a single directory resolution.
+        final Task<NodeAddress> pending = pendingLocations.get(addressable);
+        if (pending != null)
+        {
+            coalescedLookups.increment();
+            return pending;
+        }
+        final Task<NodeAddress> location = new Task<>();
+        final Task<NodeAddress> other = pendingLocations.putIfAbsent(addressable, location);
+        if (other != null)
+        {
+            coalescedLookups.increment();
+            return other;
+        }
+        locateInDirectory(addressable, interfaceClassName, strategy).whenComplete((r, e) -> {
+            pendingLocations.remove(addressable, location);
+            if (e != null)
             {
-                // TODO: consider always using local instance if this node is a server
-                // ~90% chance of making a local call
-                if (random.nextInt(100) < 90)
+                location.completeExceptionally(e);
+            }
+            else
+            {
+                location.complete(r);
+            }
+        });
+        return location;
+    }
+
+    private Task<NodeAddress> locateInDirectory(final ActorKey addressable, final String interfaceClassName, final NodeSelection.Strategy strategy)
+    {
+        final AsyncConcurrentMap<ActorKey, NodeAddress> distributedDirectory = getDistributedDirectory();
+        return onExecutor(distributedDirectory.getAsync(addressable).thenCompose(nodeAddress -> {
+            if (nodeAddress != null && activeNodes.containsKey(nodeAddress))
+            {
+                if (!isReachable(nodeAddress))
                 {
-                    return Task.fromValue(clusterPeer.localAddress());
+                    // the owner might still be alive, its entry stays until the view drops it
+                    return Task.fromException(new UncheckedException("Node unreachable: " + nodeAddress));
                 }
-                // randomly chooses one server node to process this actor
-                final NodeAddress nodeAddress = selectNode(interfaceClassName, false);
-                if (nodeAddress != null)
+                localAddressCache.put(addressable, nodeAddress);
+                return Task.fromValue(nodeAddress);
+            }
+            // the owner left the cluster
+            final Task<Boolean> removal = nodeAddress != null ? distributedDirectory.removeAsync(addressable, nodeAddress) : Task.fromValue(false);
+            return removal.thenCompose(removed -> {
+                final NodeAddress affineNode = affinitySampleRate > 0 ? selectAffineNode(addressable, interfaceClassName) : null;
+                final Task<NodeAddress> selection = affineNode != null ? Task.fromValue(affineNode)
+                        : selectNodeAsync(interfaceClassName, strategy);
+                return selection.thenCompose(selected -> distributedDirectory.putIfAbsentAsync(addressable, selected)
+                        .thenApply(otherNodeAddress -> {
+                            // someone got there first.
+                            final NodeAddress owner = otherNodeAddress != null ? otherNodeAddress : selected;
+                            localAddressCache.put(addressable, owner);
+                            return owner;
+                        }));
+            });
+        }));
+    }
+
+    /**
+     * Continues in an execution thread if the task completes in a cluster peer thread.
+     */
+    private <T> Task<T> onExecutor(final Task<T> task)
+    {
+        if (task.isDone())
+        {
+            return task;
+        }
+        return task.whenCompleteAsync((r, e) -> {
+        }, execution.getExecutor());
+    }
+
+    private AsyncConcurrentMap<ActorKey, NodeAddress> getDistributedDirectory()
+    {
+        if (distributedDirectory == null)
+        {
+            synchronized (this)
+            {
+                if (distributedDirectory == null)
                 {
-                    return Task.fromValue(nodeAddress);
+                    distributedDirectory = partitionedDirectory != null ? partitionedDirectory
+                            : clusterPeer.getAsyncCache("distributedDirectory");
                 }
             }
         }
+        return distributedDirectory;
+    }
 
-        final CompletableFuture<NodeAddress> async = CompletableFuture.supplyAsync(() -> {
-            NodeAddress nodeAddress = null;
+    /**
+     * Called before activating an actor to handle a message received by this node.
+     * <p>
+     * Registers this node as the actor owner in the distributed directory, unless another active node already owns it.
+     * </p>
+     *
+     * @return the node that owns the actor, or null if the directory couldn't be consulted.
+     */
+    public Task<NodeAddress> claimActivation(final int interfaceId, final Class<?> interfaceClass, final Object id)
+    {
+        final ActorKey addressable = new ActorKey(interfaceId, id);
+        activationClaims.increment();
+        if (placement == PlacementMode.CONSISTENT_HASH)
+        {
+            return onExecutor(claimRingActivation(addressable, interfaceClass.getName()));
+        }
+        return onExecutor(claimActivation(addressable));
+    }
 
-            if (interfaceClass.isAnnotationPresent(StatelessWorker.class))
+    /**
+     * Sends the message to the node where the actor stayed if it was registered as moved,
+     * or to the ring owner if this node knows it's a better fit. Otherwise activates it here.
+     */
+    private Task<NodeAddress> claimRingActivation(final ActorKey addressable, final String interfaceClassName)
+    {
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        final AsyncConcurrentMap<ActorKey, NodeAddress> distributedDirectory = getDistributedDirectory();
+        return distributedDirectory.getAsync(addressable).thenCompose(owner -> {
+            if (owner == null)
             {
-                // randomly chooses one server node to process this actor
-                return selectNode(interfaceClassName, true);
+                return checkPreviousRingOwner(addressable);
             }
-            if (distributedDirectory == null)
+            if (owner.equals(localAddress))
             {
-                synchronized (this)
-                {
-                    if (distributedDirectory == null)
-                    {
-                        distributedDirectory = clusterPeer.getCache("distributedDirectory");
-                    }
-                }
+                // the actor stayed here
+                localAddressCache.put(addressable, localAddress);
+                return Task.fromValue(localAddress);
+            }
+            if (activeNodes.containsKey(owner))
+            {
+                localAddressCache.put(addressable, owner);
+                return Task.fromValue(owner);
+            }
+            // the node where the actor stayed left the cluster
+            return distributedDirectory.removeAsync(addressable, owner).thenApply(removed -> (NodeAddress) null);
+        }).exceptionally(ex -> {
+            logger.error("Error checking if " + addressable + " was moved", ex);
+            return null;
+        }).thenApply(owner -> {
+            if (owner != null)
+            {
+                return owner;
+            }
+            final NodeAddress ringOwner = ringOwner(addressable, interfaceClassName, false);
+            if (ringOwner != null && !ringOwner.equals(localAddress))
+            {
+                localAddressCache.put(addressable, ringOwner);
+                return ringOwner;
             }
-            nodeAddress = distributedDirectory.get(addressable);
+            localAddressCache.put(addressable, localAddress);
+            return localAddress;
+        });
+    }
 
-            if (nodeAddress != null && activeNodes.containsKey(nodeAddress))
+    /**
+     * The node that had the actor before the last view change might not have registered it in the directory yet.
+     *
+     * @return the previous ring owner if the actor is still active there, otherwise null.
+     */
+    private Task<NodeAddress> checkPreviousRingOwner(final ActorKey addressable)
+    {
+        if (System.nanoTime() - previousRingDeadline > 0)
+        {
+            // the moved actors are already registered
+            return Task.fromValue(null);
+        }
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        final NodeAddress previousOwner = previousRing.select(addressable.ringHash(), address -> {
+            final NodeInfo nodeInfo = activeNodes.get(address);
+            return nodeInfo != null && nodeInfo.active && !nodeInfo.cannotHostActors;
+        });
+        if (previousOwner == null || previousOwner.equals(localAddress))
+        {
+            return Task.fromValue(null);
+        }
+        return presenceQueries.submit(previousOwner, addressable).thenApply(activated -> {
+            if (Boolean.TRUE.equals(activated))
             {
-                localAddressCache.put(addressable, nodeAddress);
-                return nodeAddress;
+                localAddressCache.put(addressable, previousOwner);
+                return previousOwner;
             }
-            if (nodeAddress != null)
+            return (NodeAddress) null;
+        });
+    }
+
+    private Task<NodeAddress> claimActivation(final ActorKey addressable)
+    {
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        final AsyncConcurrentMap<ActorKey, NodeAddress> distributedDirectory = getDistributedDirectory();
+        return distributedDirectory.getAsync(addressable).thenCompose(owner -> {
+            if (owner != null && owner.equals(localAddress))
             {
-                distributedDirectory.remove(addressable, nodeAddress);
+                localAddressCache.put(addressable, localAddress);
+                return Task.fromValue(localAddress);
             }
-            nodeAddress = selectNode(interfaceClassName, true);
-            NodeAddress otherNodeAddress = distributedDirectory.putIfAbsent(addressable, nodeAddress);
-            // someone got there first.
-            if (otherNodeAddress != null)
+            if (owner != null && activeNodes.containsKey(owner))
             {
-                localAddressCache.put(addressable, otherNodeAddress);
-                return otherNodeAddress;
+                localAddressCache.put(addressable, owner);
+                return Task.fromValue(owner);
             }
-            localAddressCache.put(addressable, nodeAddress);
-            return nodeAddress;
-        }, execution.getExecutor());
-        return Task.from(async);
+            // the owner left the cluster
+            final Task<Boolean> removal = owner != null ? distributedDirectory.removeAsync(addressable, owner) : Task.fromValue(false);
+            return removal.thenCompose(removed -> distributedDirectory.putIfAbsentAsync(addressable, localAddress)
+                    .thenApply(otherOwner -> {
+                        // someone got there first.
+                        final NodeAddress winner = otherOwner != null ? otherOwner : localAddress;
+                        localAddressCache.put(addressable, winner);
+                        return winner;
+                    }));
+        }).exceptionally(ex -> {
+            logger.error("Error checking the owner of " + addressable, ex);
+            return null;
+        });
     }
 
-    private NodeAddress selectNode(final String interfaceClassName, boolean allowToBlock)
+    /**
+     * Tells a node that sent a message to the wrong place where the actor actually is.
+     */
+    public void sendLocationHint(final NodeAddress caller, final Addressable actorReference, final NodeAddress owner)
     {
-        List<NodeInfo> potentialNodes;
-        long start = System.currentTimeMillis();
+        final NodeInfo nodeInfo = activeNodes.get(caller);
+        if (nodeInfo != null)
+        {
+            nodeInfo.nodeCapabilities.moved(actorReference, clusterPeer.localAddress(), owner);
+        }
+    }
 
-        while (true)
+    @Override
+    public Task<Void> moved(final Addressable actorReference, final NodeAddress oldAddress, final NodeAddress newAddress)
+    {
+        final ActorKey addressable = ActorKey.of(actorReference);
+        if (newAddress != null && activeNodes.containsKey(newAddress))
+        {
+            localAddressCache.put(addressable, newAddress);
+        }
+        else
         {
-            if (System.currentTimeMillis() - start > timeToWaitForServersMillis)
+            localAddressCache.remove(addressable, oldAddress);
+        }
+        return Task.done();
+    }
+
+    /**
+     * Chooses a server that can activate the actor type.
+     * <p>
+     * If there is none yet, the placement waits for the server list to change, without holding a thread.
+     * A node that fails to answer is skipped, and the placement is retried by the next sweep.
+     * The placement fails {@code timeToWaitForServersMillis} after it started.
+     * </p>
+     */
+    private Task<NodeAddress> selectNodeAsync(final String interfaceClassName, final NodeSelection.Strategy strategy)
+    {
+        final Placement placement = new Placement(interfaceClassName, strategy,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeToWaitForServersMillis));
+        trySelectNode(placement);
+        return placement.result;
+    }
+
+    private void waitForServers(final Placement placement, final boolean retry)
+    {
+        if (execution.getState() == NodeState.STOPPED)
+        {
+            // no more sweeps
+            placement.result.completeExceptionally(new IllegalStateException("Stage is stopped"));
+            return;
+        }
+        placement.retry = retry;
+        if (waitingPlacements.putIfAbsent(placement.result, placement) == null)
+        {
+            placement.result.whenComplete((r, e) -> waitingPlacements.remove(placement.result));
+        }
+    }
+
+    /**
+     * Retries the placements that had a failing node, and fails those that waited too long for a capable server.
+     */
+    void sweepWaitingPlacements()
+    {
+        if (waitingPlacements.isEmpty())
+        {
+            return;
+        }
+        final long now = System.nanoTime();
+        waitingPlacements.forEach((result, placement) -> {
+            if (now - placement.deadline >= 0)
             {
-                String err = "Timeout waiting for a server capable of handling: " + interfaceClassName;
-                logger.error(err);
-                throw new UncheckedException(err);
+                timeout(placement);
             }
+            else if (placement.retry)
+            {
+                placement.retry = false;
+                execution.getExecutor().execute(() -> trySelectNode(placement));
+            }
+        });
+    }
 
-            List<NodeInfo> currentServerNodes = serverNodes;
+    private void timeout(final Placement placement)
+    {
+        final String err = "Timeout waiting for a server capable of handling: " + placement.interfaceClassName;
+        if (placement.result.completeExceptionally(new UncheckedException(err)))
+        {
+            logger.error(err);
+        }
+    }
 
-            potentialNodes = currentServerNodes.stream()
-                    .filter(n -> (!n.cannotHostActors && n.state == NodeState.RUNNING)
-                            && NodeCapabilities.actorSupported_no != n.canActivate.getOrDefault(interfaceClassName, NodeCapabilities.actorSupported_yes))
-                    .collect(Collectors.toList());
+    private void trySelectNode(final Placement placement)
+    {
+        if (placement.result.isDone())
+        {
+            return;
+        }
+        if (System.nanoTime() - placement.deadline >= 0)
+        {
+            timeout(placement);
+            return;
+        }
+        final String interfaceClassName = placement.interfaceClassName;
+        // taken before reading the server list, so that no change is missed
+        final Task<Void> changed = serverNodesChanged;
+        final List<NodeInfo> capableNodes = serverNodes.stream()
+                .filter(n -> (!n.cannotHostActors && !n.unreachable && n.state == NodeState.RUNNING)
+                        && !Objects.equals(actorSupported_no, knownCapability(n, interfaceClassName)))
+                .collect(Collectors.toList());
+        final List<NodeInfo> potentialNodes = capableNodes.stream()
+                .filter(n -> !placement.failedNodes.contains(n.address))
+                .collect(Collectors.toList());
 
-            if (potentialNodes.size() == 0)
+        if (potentialNodes.size() == 0)
+        {
+            if (capableNodes.size() > 0)
             {
-                if (!allowToBlock)
+                // only failing nodes are left, they are asked again by the next sweep
+                placement.failedNodes.clear();
+                waitForServers(placement, true);
+                return;
+            }
+            // waits for servers, not resuming on the thread of the view listener
+            waitForServers(placement, false);
+            changed.thenRunAsync(() -> trySelectNode(placement), execution.getExecutor());
+            return;
+        }
+        final NodeInfo nodeInfo = pickNode(potentialNodes, placement.strategy);
+        final Integer canActivate = knownCapability(nodeInfo, interfaceClassName);
+        if (canActivate == null)
+        {
+            // the node can't list its actors, ask if it can activate this type of actor.
+            nodeInfo.nodeCapabilities.canActivate(interfaceClassName).whenComplete((c, e) -> {
+                if (e != null)
                 {
-                    return null;
+                    logger.error("Error locating server for " + interfaceClassName, e);
+                    placement.failedNodes.add(nodeInfo.address);
+                    waitForServers(placement, true);
+                    return;
                 }
-                // waits for servers
-                synchronized (serverNodesUpdateMutex)
+                onCanActivate(nodeInfo, interfaceClassName, c);
+                trySelectNode(placement);
+            });
+            return;
+        }
+        if (canActivate == actorSupported_yes)
+        {
+            nodeInfo.selectedSinceReport.incrementAndGet();
+            placement.result.complete(nodeInfo.address);
+            return;
+        }
+        trySelectNode(placement);
+    }
+
+    private NodeInfo pickNode(final List<NodeInfo> potentialNodes, final NodeSelection.Strategy strategy)
+    {
+        final int size = potentialNodes.size();
+        switch (strategy)
+        {
+            case LEAST_LOADED:
+            {
+                NodeInfo best = null;
+                double bestScore = Double.MAX_VALUE;
+                // starting at a random position to spread the ties
+                final int offset = random.nextInt(size);
+                for (int i = 0; i < size; i++)
                 {
-                    if (serverNodes.size() == 0)
+                    final NodeInfo nodeInfo = potentialNodes.get((offset + i) % size);
+                    final double score = loadScore(nodeInfo);
+                    if (score < bestScore)
                     {
-                        try
-                        {
-                            serverNodesUpdateMutex.wait(5);
-                        }
-                        catch (InterruptedException e)
-                        {
-                            throw new UncheckedException(e);
-                        }
+                        best = nodeInfo;
+                        bestScore = score;
                     }
                 }
+                return best;
             }
-            else
+            case POWER_OF_TWO_CHOICES:
             {
-                NodeInfo nodeInfo = potentialNodes.get(random.nextInt(potentialNodes.size()));
-
-                Integer canActivate = nodeInfo.canActivate.get(interfaceClassName);
-                if (canActivate == null)
+                final NodeInfo first = potentialNodes.get(random.nextInt(size));
+                if (size == 1)
                 {
-                    // ask if the node can activate this type of actor.
-                    try
-                    {
-                        canActivate = nodeInfo.nodeCapabilities.canActivate(interfaceClassName).join();
-                        if (canActivate == actorSupported_noneSupported)
-                        {
-                            nodeInfo.cannotHostActors = true;
-                            // jic
-                            nodeInfo.canActivate.put(interfaceClassName, actorSupported_no);
-                        }
-                        else
-                        {
-                            nodeInfo.canActivate.put(interfaceClassName, canActivate);
-                        }
-                    }
-                    catch (Exception ex)
-                    {
-                        logger.error("Error locating server for " + interfaceClassName, ex);
-                        continue;
-                    }
+                    return first;
                 }
-                if (canActivate == actorSupported_yes)
+                NodeInfo second;
+                do
                 {
-                    return nodeInfo.address;
+                    second = potentialNodes.get(random.nextInt(size));
                 }
+                while (second == first);
+                return loadScore(second) < loadScore(first) ? second : first;
             }
+            default:
+                return potentialNodes.get(random.nextInt(size));
         }
     }
 
+    private double loadScore(final NodeInfo nodeInfo)
+    {
+        final NodeLoad load = nodeInfo.load;
+        // nodes that didn't report yet are considered idle
+        return (load != null ? load.getScore() : 0) + nodeInfo.selectedSinceReport.get();
+    }
+
 }
@@ -1,5 +1,7 @@
 package com.ea.orbit.actors.runtime;
 
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Addressable;
 import com.ea.orbit.actors.cluster.NodeAddress;
 import com.ea.orbit.actors.extensions.MessageSerializer;
 
@@ -18,6 +20,11 @@ import java.util.Map;
  */
 public class JavaMessageSerializer implements MessageSerializer
 {
+    /**
+     * Format of the location hints attached to actor references, hints of other formats are ignored.
+     */
+    static final int LOCATION_HINT_VERSION = 1;
+
     public Message deserializeMessage(final Runtime runtime, final InputStream inputStream) throws Exception
     {
         final ObjectInput in = createObjectInput(runtime, inputStream);
@@ -47,6 +54,9 @@ public class JavaMessageSerializer implements MessageSerializer
         Class<?> interfaceClass;
         Object id;
         NodeAddress address;
+        // where the sender believes the actor is, absent when sent by older nodes.
+        int hintVersion;
+        NodeAddress locationHint;
     }
 
     protected ObjectOutput createObjectOutput(final Runtime runtime, final OutputStream outputStream) throws IOException
@@ -88,6 +98,11 @@ public class JavaMessageSerializer implements MessageSerializer
                 replacement.address = reference.address;
                 replacement.interfaceClass = reference._interfaceClass();
                 replacement.id = reference.id;
+                if (reference.address == null && reference instanceof Actor)
+                {
+                    replacement.locationHint = runtime.getLocationHint(reference);
+                    replacement.hintVersion = replacement.locationHint != null ? LOCATION_HINT_VERSION : 0;
+                }
                 return replacement;
             }
         };
@@ -112,7 +127,12 @@ public class JavaMessageSerializer implements MessageSerializer
                     {
                         return runtime.getRemoteObjectReference(replacement.address, (Class) replacement.interfaceClass, replacement.id);
                     }
-                    return runtime.getReference((Class) replacement.interfaceClass, replacement.id);
+                    final Actor reference = runtime.getReference((Class) replacement.interfaceClass, replacement.id);
+                    if (replacement.locationHint != null && replacement.hintVersion == LOCATION_HINT_VERSION)
+                    {
+                        runtime.setLocationHint((Addressable) reference, replacement.locationHint);
+                    }
+                    return reference;
 
                 }
                 return super.resolveObject(obj);
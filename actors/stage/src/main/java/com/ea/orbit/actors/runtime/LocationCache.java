@@ -0,0 +1,163 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The actor locations known by a node, the least recently used are evicted first.
+ * <p>
+ * Each location is stamped with the generation of its node.
+ * Invalidating a node only bumps its generation, its locations are dropped when they are next read,
+ * so the cost doesn't depend on the size of the cache.
+ * </p>
+ */
+class LocationCache
+{
+    private final Cache<ActorKey, Location> cache;
+    // only the invalidated nodes are present, the others are at generation zero
+    private final ConcurrentMap<NodeAddress, Long> generations = new ConcurrentHashMap<>();
+    // stale locations are hits for the cache, but misses for its users
+    private final LongAdder staleReads = new LongAdder();
+
+    private static class Location
+    {
+        final NodeAddress address;
+        final long generation;
+
+        Location(final NodeAddress address, final long generation)
+        {
+            this.address = address;
+            this.generation = generation;
+        }
+    }
+
+    LocationCache(final long maximumSize)
+    {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return the location of the actor, or null if it's unknown or its node was invalidated since.
+     */
+    NodeAddress get(final ActorKey key)
+    {
+        final Location location = cache.getIfPresent(key);
+        if (location == null)
+        {
+            return null;
+        }
+        if (isStale(location))
+        {
+            staleReads.increment();
+            cache.asMap().remove(key, location);
+            return null;
+        }
+        return location.address;
+    }
+
+    void put(final ActorKey key, final NodeAddress address)
+    {
+        cache.put(key, stamp(address));
+    }
+
+    /**
+     * @return true if the location was cached, false if a valid one was already present.
+     */
+    boolean putIfAbsent(final ActorKey key, final NodeAddress address)
+    {
+        final Location location = stamp(address);
+        final Location previous = cache.asMap().putIfAbsent(key, location);
+        return previous == null || (isStale(previous) && cache.asMap().replace(key, previous, location));
+    }
+
+    /**
+     * Removes the location of the actor if it's still the given one.
+     */
+    void remove(final ActorKey key, final NodeAddress address)
+    {
+        final Location location = cache.getIfPresent(key);
+        if (location != null && location.address.equals(address))
+        {
+            cache.asMap().remove(key, location);
+        }
+    }
+
+    /**
+     * Forgets all the locations on a node.
+     */
+    void invalidate(final NodeAddress node)
+    {
+        generations.merge(node, 1L, Long::sum);
+    }
+
+    /**
+     * @return the number of cached locations, including those of invalidated nodes that weren't read since.
+     */
+    long size()
+    {
+        return cache.size();
+    }
+
+    long hitCount()
+    {
+        return cache.stats().hitCount() - staleReads.sum();
+    }
+
+    long missCount()
+    {
+        return cache.stats().missCount() + staleReads.sum();
+    }
+
+    long evictionCount()
+    {
+        return cache.stats().evictionCount();
+    }
+
+    private Location stamp(final NodeAddress address)
+    {
+        return new Location(address, generations.getOrDefault(address, 0L));
+    }
+
+    private boolean isStale(final Location location)
+    {
+        return location.generation != generations.getOrDefault(location.address, 0L);
+    }
+}
@@ -40,4 +40,6 @@ public class MessageDefinitions
     public static final Byte INTERFACE_ID = 0;
     public static final Byte METHOD_ID = 1;
     public static final Byte OBJECT_ID = 2;
+    // set by the sender when it just resolved the actor location in the directory
+    public static final Byte PLACED = 3;
 }
@@ -29,9 +29,12 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.cluster.ClusterPeer;
+import com.ea.orbit.actors.cluster.MessageClass;
 import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
 import com.ea.orbit.actors.extensions.MessageSerializer;
 import com.ea.orbit.annotation.Config;
+import com.ea.orbit.concurrent.ConcurrentHashSet;
 import com.ea.orbit.concurrent.ExecutorUtils;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.container.Startable;
@@ -42,16 +45,31 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Map;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class Messaging implements Startable
 {
@@ -64,17 +82,110 @@ public class Messaging implements Startable
     private ClusterPeer clusterPeer;
     private Execution execution;
     private final AtomicInteger messageIdGen = new AtomicInteger();
-    private final Map<Integer, PendingResponse> pendingResponseMap = new ConcurrentHashMap<>();
+    private final PendingResponseMap pendingResponseMap = new PendingResponseMap();
     private final PriorityBlockingQueue<PendingResponse> pendingResponsesQueue = new PriorityBlockingQueue<>(50, new PendingResponseComparator());
     private Clock clock = Clock.systemUTC();
 
     @Config("orbit.actors.defaultMessageTimeout")
     private long responseTimeoutMillis = 30_000;
 
+    /**
+     * Serialized messages larger than this number of bytes are compressed before being sent.
+     * Zero or less disables compression.
+     * <p>
+     * Compression is negotiated: a node only receives compressed frames if it has compression enabled,
+     * which it advertises in the flags of every frame it sends.
+     * </p>
+     */
+    @Config("orbit.actors.compressionThreshold")
+    private int compressionThreshold = 0;
+
+    /**
+     * Maximum number of requests awaiting response that this node sends to each peer.
+     * Zero or less disables flow control.
+     * <p>
+     * Each response carries the number of requests the responding node is willing to accept from the caller,
+     * computed from the remaining room in its message executor and actor mailboxes.
+     * Requests exceeding the window are queued locally, up to {@link #flowControlQueueSize},
+     * after which they fail with {@link OverloadException}. One way messages are not subject to flow control.
+     * </p>
+     */
+    @Config("orbit.actors.flowControlWindow")
+    private int flowControlWindow = 0;
+
+    /**
+     * Maximum number of requests queued for each peer when the flow control window is exhausted.
+     */
+    @Config("orbit.actors.flowControlQueueSize")
+    private int flowControlQueueSize = 10_000;
+
+    /**
+     * Number of threads that decode the received requests. Zero or less decodes them in the messaging executor.
+     * <p>
+     * The requests from each node are decoded in order, by one thread at a time, and handed to the execution in batches,
+     * so decoding doesn't compete with the actors for the messaging executor.
+     * Responses skip the decoding lanes and complete the calls waiting for them right away.
+     * </p>
+     */
+    @Config("orbit.actors.decodeThreads")
+    private int decodeThreads = Math.max(1, java.lang.Runtime.getRuntime().availableProcessors() / 2);
+
+    // requests decoded before handing them to the execution
+    private static final int DECODE_BATCH_SIZE = 64;
+
+    // frame flags, the first byte of every frame.
+    static final int FLAG_COMPRESSED = 1;
+    static final int FLAG_ACCEPTS_COMPRESSION = 2;
+    static final int FLAG_FORWARDED = 4;
+    static final int FLAG_CREDIT = 8;
+    static final int FLAG_RESPONSE = 16;
+    // heartbeat frames have no header or payload, just the flags
+    static final int FLAG_HEARTBEAT = 32;
+
+    // frame layout: [flags][int header length][header][payload]
+    // the header is decoded on reception, the payload only when someone asks for it.
+    // only the payload section is compressed.
+    static final int HEADER_OFFSET = 5;
+
+    // forwarded frames carry the hop count and the origin node before the header length:
+    // [flags][byte hops][long origin msb][long origin lsb][int header length][header][payload]
+    static final int FORWARDING_ENVELOPE_SIZE = 18;
+
+    // responses may carry the flow control credit granted to the caller before the header length:
+    // [flags][int credit][int header length][header][payload]
+    static final int CREDIT_SIZE = 4;
+
+    /**
+     * Maximum number of times a message can be relayed between nodes before being rejected.
+     */
+    static final int MAX_FORWARDING_HOPS = 3;
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    // nodes that advertised being able to receive compressed frames
+    private final Set<NodeAddress> compressionPeers = new ConcurrentHashSet<>();
+
+    private final ConcurrentMap<NodeAddress, PeerCredits> peerCredits = new ConcurrentHashMap<>();
+
     private final LongAdder networkMessagesReceived = new LongAdder();
     private final LongAdder objectMessagesReceived = new LongAdder();
     private final LongAdder responsesReceived = new LongAdder();
+    private final LongAdder messagesCompressed = new LongAdder();
+    private final LongAdder bytesBeforeCompression = new LongAdder();
+    private final LongAdder bytesAfterCompression = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+    private final LongAdder decompressionNanos = new LongAdder();
+    private final LongAdder messagesForwarded = new LongAdder();
+    private final LongAdder messagesThrottled = new LongAdder();
+    private final LongAdder messagesOverloaded = new LongAdder();
+    private final LongAdder decodeBatches = new LongAdder();
+    // frames waiting in the decoding lanes
+    private final LongAdder decodeBacklog = new LongAdder();
     private ExecutorService executor;
+    private ExecutorService decodeExecutor;
+    private final ConcurrentMap<NodeAddress, DecodeLane> decodeLanes = new ConcurrentHashMap<>();
+    private volatile Consumer<NodeAddress> heartbeatListener;
     protected MessageSerializer messageSerializer = new JavaMessageSerializer();
 
     public void setExecution(final Execution execution)
@@ -92,6 +203,41 @@ public class Messaging implements Startable
         this.responseTimeoutMillis = responseTimeoutMillis;
     }
 
+    public void setCompressionThreshold(final int compressionThreshold)
+    {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionThreshold()
+    {
+        return compressionThreshold;
+    }
+
+    public void setFlowControlWindow(final int flowControlWindow)
+    {
+        this.flowControlWindow = flowControlWindow;
+    }
+
+    public int getFlowControlWindow()
+    {
+        return flowControlWindow;
+    }
+
+    public void setFlowControlQueueSize(final int flowControlQueueSize)
+    {
+        this.flowControlQueueSize = flowControlQueueSize;
+    }
+
+    public void setDecodeThreads(final int decodeThreads)
+    {
+        this.decodeThreads = decodeThreads;
+    }
+
+    public int getDecodeThreads()
+    {
+        return decodeThreads;
+    }
+
     public NodeAddress getNodeAddress()
     {
         return clusterPeer.localAddress();
@@ -125,11 +271,18 @@ public class Messaging implements Startable
     {
         final int messageId;
         final long timeoutAt;
+        final NodeAddress toNode;
 
         public PendingResponse(final int messageId, final long timeoutAt)
+        {
+            this(messageId, timeoutAt, null);
+        }
+
+        public PendingResponse(final int messageId, final long timeoutAt, final NodeAddress toNode)
         {
             this.messageId = messageId;
             this.timeoutAt = timeoutAt;
+            this.toNode = toNode;
         }
 
         @Override
@@ -143,6 +296,152 @@ public class Messaging implements Startable
         {
             return super.internalCompleteExceptionally(ex);
         }
+
+        @Override
+        public int hashCode()
+        {
+            // cheaper than the identity hash for the index of the pending responses by node, equality is still identity.
+            return messageId;
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            return this == obj;
+        }
+    }
+
+    /**
+     * Send credits for one peer: how many requests can be waiting for its responses,
+     * and the requests waiting for a credit.
+     */
+    static class PeerCredits
+    {
+        volatile int window;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger queuedCount = new AtomicInteger();
+        final ConcurrentLinkedQueue<QueuedFrame> queued = new ConcurrentLinkedQueue<>();
+
+        PeerCredits(final int window)
+        {
+            this.window = window;
+        }
+
+        boolean tryAcquire()
+        {
+            for (; ; )
+            {
+                final int current = inFlight.get();
+                if (current >= window)
+                {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1))
+                {
+                    return true;
+                }
+            }
+        }
+
+        void release()
+        {
+            inFlight.decrementAndGet();
+        }
+
+        boolean offer(final QueuedFrame queuedFrame, final int maxQueueSize)
+        {
+            if (queuedCount.incrementAndGet() > maxQueueSize)
+            {
+                queuedCount.decrementAndGet();
+                return false;
+            }
+            queued.add(queuedFrame);
+            return true;
+        }
+
+        QueuedFrame poll()
+        {
+            final QueuedFrame queuedFrame = queued.poll();
+            if (queuedFrame != null)
+            {
+                queuedCount.decrementAndGet();
+            }
+            return queuedFrame;
+        }
+    }
+
+    static class QueuedFrame
+    {
+        final byte[] frame;
+        final MessageClass messageClass;
+        final PendingResponse pendingResponse;
+
+        QueuedFrame(final byte[] frame, final MessageClass messageClass, final PendingResponse pendingResponse)
+        {
+            this.frame = frame;
+            this.messageClass = messageClass;
+            this.pendingResponse = pendingResponse;
+        }
+    }
+
+    /**
+     * Message received from the network whose payload is kept as raw bytes until it is requested.
+     * <p>
+     * This allows the runtime to route and admit messages using only the headers,
+     * and to decode the payload inside the actor turn, if ever.
+     * </p>
+     */
+    class InboundMessage extends Message
+    {
+        final byte[] frame;
+        // where the header length starts, after the forwarding envelope, if any.
+        final int headerStart;
+        final int payloadOffset;
+        final int hops;
+        private volatile boolean decoded;
+
+        InboundMessage(final Message header, final byte[] frame, final int headerStart, final int payloadOffset, final int hops)
+        {
+            this.frame = frame;
+            this.headerStart = headerStart;
+            this.payloadOffset = payloadOffset;
+            this.hops = hops;
+            setMessageType(header.getMessageType());
+            setMessageId(header.getMessageId());
+            setOneWay(header.isOneWay());
+            setHeaders(header.getHeaders());
+        }
+
+        @Override
+        public Object getPayload()
+        {
+            if (!decoded)
+            {
+                synchronized (this)
+                {
+                    if (!decoded)
+                    {
+                        super.setPayload(decodePayload(frame, payloadOffset));
+                        decoded = true;
+                    }
+                }
+            }
+            return super.getPayload();
+        }
+
+        @Override
+        public void setPayload(final Object payload)
+        {
+            super.setPayload(payload);
+            decoded = true;
+        }
+
+        @Override
+        public Message withPayload(final Object payload)
+        {
+            setPayload(payload);
+            return this;
+        }
     }
 
     public void setClock(final Clock clock)
@@ -156,7 +455,13 @@ public class Messaging implements Startable
         {
             executor = ExecutorUtils.newScalingThreadPool(64);
         }
-        clusterPeer.registerMessageReceiver((from, buff) -> executor.execute(() -> onMessageReceived(from, buff)));
+        if (decodeThreads > 0)
+        {
+            decodeExecutor = ExecutorUtils.newScalingThreadPool(decodeThreads);
+        }
+        clusterPeer.registerMessageReceiver(this::onFrameReceived);
+        // the clients of a gateway are never in the view
+        clusterPeer.registerClientListener(this::onNodeDrop);
         //timeoutCleanup()
         return Task.done();
     }
@@ -164,6 +469,18 @@ public class Messaging implements Startable
     @Override
     public Task<?> stop()
     {
+        if (decodeExecutor != null)
+        {
+            decodeExecutor.shutdown();
+            try
+            {
+                decodeExecutor.awaitTermination(60, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
         executor.shutdown();
         try
         {
@@ -176,111 +493,546 @@ public class Messaging implements Startable
         return Task.done();
     }
 
+    /**
+     * Registers who is notified of the heartbeats received, in the cluster peer thread.
+     */
+    public void registerHeartbeatListener(final Consumer<NodeAddress> heartbeatListener)
+    {
+        this.heartbeatListener = heartbeatListener;
+    }
+
+    /**
+     * Sends a heartbeat frame to a node, bypassing the flow control and the serialization.
+     */
+    public void sendHeartbeat(final NodeAddress to)
+    {
+        try
+        {
+            clusterPeer.sendMessage(to, new byte[]{ FLAG_HEARTBEAT }, MessageClass.SYSTEM);
+        }
+        catch (Exception ex)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Error sending heartbeat to " + to, ex);
+            }
+        }
+    }
+
+    private void onFrameReceived(final NodeAddress from, final byte[] buff)
+    {
+        if ((buff[0] & FLAG_HEARTBEAT) != 0)
+        {
+            // handled right away, so that busy executors don't delay it
+            final Consumer<NodeAddress> listener = heartbeatListener;
+            if (listener != null)
+            {
+                listener.accept(from);
+            }
+            return;
+        }
+        if (decodeExecutor == null || (buff[0] & FLAG_RESPONSE) != 0)
+        {
+            // responses don't wait behind the requests being decoded
+            executor.execute(() -> onMessageReceived(from, buff));
+            return;
+        }
+        DecodeLane lane = decodeLanes.get(from);
+        if (lane == null)
+        {
+            lane = decodeLanes.computeIfAbsent(from, DecodeLane::new);
+        }
+        lane.add(buff);
+    }
+
     private void onMessageReceived(final NodeAddress from, final byte[] buff)
     {
-        // deserialize and send to runtime
+        final Message message = decode(from, buff);
+        if (message != null)
+        {
+            if (isRequest(message))
+            {
+                execution.onMessageReceived(message);
+            }
+            else
+            {
+                onResponseReceived(message);
+            }
+        }
+    }
+
+    private static boolean isRequest(final Message message)
+    {
+        return message.getMessageType() == MessageDefinitions.NORMAL_MESSAGE
+                || message.getMessageType() == MessageDefinitions.ONEWAY_MESSAGE;
+    }
+
+    /**
+     * Decodes the frame envelope and the message header.
+     *
+     * @return the message, or null if the frame is invalid
+     */
+    private Message decode(final NodeAddress from, final byte[] buff)
+    {
         try
         {
             networkMessagesReceived.increment();
-            Message message = messageSerializer.deserializeMessage(execution, new ByteArrayInputStream(buff));
-            message.withFromNode(from);
-            switch (message.getMessageType())
+            final int flags = buff[0];
+            if ((flags & FLAG_ACCEPTS_COMPRESSION) != 0)
+            {
+                compressionPeers.add(from);
+            }
+            int headerStart = 1;
+            int hops = 0;
+            NodeAddress origin = from;
+            if ((flags & FLAG_FORWARDED) != 0)
+            {
+                // relayed by another node, the response must go to the origin.
+                hops = buff[1];
+                origin = new NodeAddressImpl(new UUID(readLong(buff, 2), readLong(buff, 10)));
+                headerStart += FORWARDING_ENVELOPE_SIZE - 1;
+            }
+            else if ((flags & FLAG_CREDIT) != 0)
+            {
+                onCreditReceived(from, readInt(buff, 1));
+                headerStart += CREDIT_SIZE;
+            }
+            final int headerLength = readInt(buff, headerStart);
+            final Message header = messageSerializer.deserializeMessage(execution,
+                    new ByteArrayInputStream(buff, headerStart + 4, headerLength));
+            final Message message = new InboundMessage(header, buff, headerStart, headerStart + 4 + headerLength, hops);
+            message.withFromNode(origin);
+            if (!isRequest(message)
+                    && message.getMessageType() != MessageDefinitions.NORMAL_RESPONSE
+                    && message.getMessageType() != MessageDefinitions.EXCEPTION_RESPONSE
+                    && message.getMessageType() != MessageDefinitions.ERROR_RESPONSE)
+            {
+                logger.error("Illegal protocol, invalid message type: {}", message.getMessageType());
+                return null;
+            }
+            return message;
+        }
+        catch (Exception ex)
+        {
+            logger.error("Error processing message. ", ex);
+            return null;
+        }
+    }
+
+    private void onResponseReceived(final Message message)
+    {
+        responsesReceived.increment();
+        PendingResponse pendingResponse = pendingResponseMap.remove(message.getMessageId());
+        if (pendingResponse == null)
+        {
+            // missing counterpart
+            logger.warn("Missing counterpart (pending message) for message with id: {} and type: {}.",
+                    message.getMessageId(), message.getMessageType());
+            return;
+        }
+        pendingResponsesQueue.remove(pendingResponse);
+        Object res;
+        try
+        {
+            res = message.getPayload();
+        }
+        catch (Exception ex)
+        {
+            logger.error("Error deserializing response", ex);
+            pendingResponse.internalCompleteExceptionally(new UncheckedException("Error deserializing response", ex));
+            return;
+        }
+        switch (message.getMessageType())
+        {
+            case MessageDefinitions.NORMAL_RESPONSE:
+                pendingResponse.internalComplete(res);
+                return;
+            case MessageDefinitions.EXCEPTION_RESPONSE:
+                pendingResponse.internalCompleteExceptionally((Throwable) res);
+                return;
+            default:
+                pendingResponse.internalCompleteExceptionally(
+                        new UncheckedException("Error invoking but no exception provided. Response: " + res));
+        }
+    }
+
+    /**
+     * The frames received from one node, decoded in arrival order by one task at a time,
+     * and handed to the execution in batches.
+     */
+    private class DecodeLane
+    {
+        final NodeAddress from;
+        final Queue<byte[]> frames = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        DecodeLane(final NodeAddress from)
+        {
+            this.from = from;
+        }
+
+        void add(final byte[] frame)
+        {
+            frames.add(frame);
+            decodeBacklog.increment();
+            if (scheduled.compareAndSet(false, true))
+            {
+                decodeExecutor.execute(this::drain);
+            }
+        }
+
+        void drain()
+        {
+            try
             {
-                case MessageDefinitions.NORMAL_MESSAGE:
-                case MessageDefinitions.ONEWAY_MESSAGE:
-                    execution.onMessageReceived(message);
-                    return;
-
-                case MessageDefinitions.NORMAL_RESPONSE:
-                case MessageDefinitions.EXCEPTION_RESPONSE:
-                case MessageDefinitions.ERROR_RESPONSE:
+                final List<Message> batch = new ArrayList<>();
+                byte[] frame;
+                while (batch.size() < DECODE_BATCH_SIZE && (frame = frames.poll()) != null)
                 {
-                    responsesReceived.increment();
-                    PendingResponse pendingResponse = pendingResponseMap.remove(message.getMessageId());
-                    if (pendingResponse != null)
+                    decodeBacklog.decrement();
+                    final Message message = decode(from, frame);
+                    if (message == null)
                     {
-                        pendingResponsesQueue.remove(pendingResponse);
-                        Object res;
-                        try
-                        {
-                            res = message.getPayload();
-                        }
-                        catch (Exception ex)
-                        {
-                            logger.error("Error deserializing response", ex);
-                            pendingResponse.internalCompleteExceptionally(new UncheckedException("Error deserializing response", ex));
-                            return;
-                        }
-                        switch (message.getMessageType())
-                        {
-                            case MessageDefinitions.NORMAL_RESPONSE:
-                                pendingResponse.internalComplete(res);
-                                return;
-                            case MessageDefinitions.EXCEPTION_RESPONSE:
-                                pendingResponse.internalCompleteExceptionally((Throwable) res);
-                                return;
-                            case MessageDefinitions.ERROR_RESPONSE:
-                                pendingResponse.internalCompleteExceptionally(
-                                        new UncheckedException("Error invoking but no exception provided. Response: " + res));
-                                return;
-                            default:
-                                // should be impossible
-                                logger.error("Illegal protocol, invalid response message type: {}",
-                                        message.getMessageType());
-                                return;
-                        }
+                        continue;
+                    }
+                    if (isRequest(message))
+                    {
+                        batch.add(message);
                     }
                     else
                     {
-                        // missing counterpart
-                        logger.warn("Missing counterpart (pending message) for message with id: {} and type: {}.",
-                                message.getMessageId(), message.getMessageType());
+                        // from a node that doesn't flag its responses
+                        onResponseReceived(message);
                     }
-                    break;
                 }
-                default:
-                    logger.error("Illegal protocol, invalid message type: {}", message.getMessageType());
-                    return;
+                if (!batch.isEmpty())
+                {
+                    decodeBatches.increment();
+                    execution.onMessagesReceived(batch);
+                }
+            }
+            catch (Exception ex)
+            {
+                logger.error("Error processing messages from " + from, ex);
+            }
+            finally
+            {
+                scheduled.set(false);
+            }
+            // frames might have arrived after the last poll
+            if (!frames.isEmpty() && scheduled.compareAndSet(false, true))
+            {
+                decodeExecutor.execute(this::drain);
             }
         }
-        catch (Exception ex)
+    }
+
+    /**
+     * Releases the state kept for a node that left the cluster, or for a gone client,
+     * and fails the calls waiting for its responses.
+     */
+    public void onNodeDrop(final NodeAddress address)
+    {
+        compressionPeers.remove(address);
+        peerCredits.remove(address);
+        decodeLanes.remove(address);
+        failPendingCalls(address, "Node left the cluster: ");
+    }
+
+    /**
+     * Fails the calls waiting for responses from a node suspected to have failed, before it leaves the cluster view.
+     */
+    public void onNodeUnreachable(final NodeAddress address)
+    {
+        failPendingCalls(address, "Node unreachable: ");
+    }
+
+    private void failPendingCalls(final NodeAddress address, final String reason)
+    {
+        final List<PendingResponse> dropped = pendingResponseMap.removeAll(address);
+        for (final PendingResponse pendingResponse : dropped)
         {
-            logger.error("Error processing message. ", ex);
+            pendingResponsesQueue.remove(pendingResponse);
+            pendingResponse.internalCompleteExceptionally(new UncheckedException(reason + address));
+        }
+        if (dropped.size() > 0 && logger.isDebugEnabled())
+        {
+            logger.debug("Failed {} pending calls to {}", dropped.size(), address);
         }
     }
 
-    public void onNodeDrop(final NodeAddress address)
+    /**
+     * @return true if the message was forwarded by another node than its sender.
+     */
+    static boolean isForwarded(final Message message)
+    {
+        return message instanceof InboundMessage && ((InboundMessage) message).hops > 0;
+    }
+
+    /**
+     * Relays a received message to another node without re-encoding it.
+     * <p>
+     * The target node will respond directly to the node that originated the message.
+     * </p>
+     *
+     * @param message a message received by this node
+     * @param to      the node to relay the message to
+     * @return false if the message can't be forwarded because it was already relayed too many times.
+     */
+    public boolean forwardMessage(final Message message, final NodeAddress to)
     {
-        // could be used to decrease the timeout of messages sent to failed nodes.
+        final InboundMessage inbound = (InboundMessage) message;
+        if (inbound.hops >= MAX_FORWARDING_HOPS)
+        {
+            return false;
+        }
+        final byte[] original = inbound.frame;
+        final int originalFlags = original[0];
+        final UUID origin = message.getFromNode().asUUID();
+        try
+        {
+            final int headerLength = inbound.payloadOffset - inbound.headerStart;
+            byte[] payload = original;
+            int payloadOffset = inbound.payloadOffset;
+            int flags = FLAG_FORWARDED | (compressionThreshold > 0 ? FLAG_ACCEPTS_COMPRESSION : 0);
+            if ((originalFlags & FLAG_COMPRESSED) != 0)
+            {
+                if (compressionPeers.contains(to))
+                {
+                    flags |= FLAG_COMPRESSED;
+                }
+                else
+                {
+                    // the target can't read compressed frames
+                    payload = decompress(original, inbound.payloadOffset);
+                    payloadOffset = 0;
+                }
+            }
+            final int payloadLength = payload.length - payloadOffset;
+            final byte[] frame = new byte[FORWARDING_ENVELOPE_SIZE + headerLength + payloadLength];
+            frame[0] = (byte) flags;
+            frame[1] = (byte) (inbound.hops + 1);
+            writeLong(frame, 2, origin.getMostSignificantBits());
+            writeLong(frame, 10, origin.getLeastSignificantBits());
+            System.arraycopy(original, inbound.headerStart, frame, FORWARDING_ENVELOPE_SIZE, headerLength);
+            System.arraycopy(payload, payloadOffset, frame, FORWARDING_ENVELOPE_SIZE + headerLength, payloadLength);
+            clusterPeer.sendMessage(to, frame, inbound.isOneWay() ? MessageClass.ONE_WAY : MessageClass.REQUEST);
+        }
+        catch (Exception e)
+        {
+            throw new UncheckedException(e);
+        }
+        messagesForwarded.increment();
+        return true;
     }
 
     public void sendResponse(NodeAddress to, int messageType, int messageId, Object res)
     {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        final byte[] frame;
         try
         {
-            messageSerializer.serializeMessage(execution, byteArrayOutputStream,
+            frame = encodeFrame(to,
                     new Message()
                             .withMessageId(messageId)
-                            .withMessageType(messageType)
-                            .withPayload(res));
+                            .withMessageType(messageType), res,
+                    flowControlWindow > 0 ? grantCredit() : -1);
         }
         catch (Exception e)
         {
             throw new UncheckedException(e);
         }
-        clusterPeer.sendMessage(to, byteArrayOutputStream.toByteArray());
+        clusterPeer.sendMessage(to, frame, MessageClass.RESPONSE);
+    }
+
+    /**
+     * Serializes the header and the payload in separate sections of the same frame,
+     * so that the receiver can decode the header without touching the payload.
+     * <p>
+     * The payload section is compressed if it's larger than the compression threshold
+     * and the target node accepts compressed frames.
+     * </p>
+     *
+     * @param to      the target node
+     * @param header  the message without payload
+     * @param payload the message payload
+     * @param credit  the flow control credit granted to the target node, or -1 for none
+     * @return the frame to be sent
+     */
+    private byte[] encodeFrame(final NodeAddress to, final Message header, final Object payload, final int credit) throws Exception
+    {
+        final int headerOffset = credit >= 0 ? HEADER_OFFSET + CREDIT_SIZE : HEADER_OFFSET;
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        // placeholder for the flags, the credit and the header length
+        byteArrayOutputStream.write(new byte[headerOffset]);
+        messageSerializer.serializeMessage(execution, byteArrayOutputStream, header);
+        final int payloadOffset = byteArrayOutputStream.size();
+        messageSerializer.serializeMessage(execution, byteArrayOutputStream, new Message().withPayload(payload));
+        final byte[] frame = byteArrayOutputStream.toByteArray();
+        writeInt(frame, headerOffset - 4, payloadOffset - headerOffset);
+
+        int flags = isRequest(header) ? 0 : FLAG_RESPONSE;
+        if (credit >= 0)
+        {
+            flags |= FLAG_CREDIT;
+            writeInt(frame, 1, credit);
+        }
+        if (compressionThreshold > 0)
+        {
+            flags |= FLAG_ACCEPTS_COMPRESSION;
+            if (frame.length - payloadOffset > compressionThreshold && compressionPeers.contains(to))
+            {
+                final byte[] compressed = compress(frame, payloadOffset, flags | FLAG_COMPRESSED);
+                if (compressed != null)
+                {
+                    return compressed;
+                }
+            }
+        }
+        frame[0] = (byte) flags;
+        return frame;
+    }
+
+    private Object decodePayload(final byte[] frame, final int payloadOffset)
+    {
+        try
+        {
+            final ByteArrayInputStream in = (frame[0] & FLAG_COMPRESSED) != 0
+                    ? new ByteArrayInputStream(decompress(frame, payloadOffset))
+                    : new ByteArrayInputStream(frame, payloadOffset, frame.length - payloadOffset);
+            return messageSerializer.deserializeMessage(execution, in).getPayload();
+        }
+        catch (Exception ex)
+        {
+            throw new UncheckedException("Error deserializing message payload", ex);
+        }
+    }
+
+    /**
+     * Compresses the frame contents starting at offset, the bytes before the offset are copied as they are.
+     *
+     * @return the compressed frame, or null if the compression doesn't reduce the frame size.
+     */
+    private byte[] compress(final byte[] frame, final int offset, final int flags) throws IOException
+    {
+        final long start = System.nanoTime();
+        final int length = frame.length - offset;
+        final Deflater deflater = deflaters.get();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(offset + length / 2 + 16);
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeByte(flags);
+        dataOut.write(frame, 1, offset - 1);
+        dataOut.writeInt(length);
+        try
+        {
+            deflater.setInput(frame, offset, length);
+            deflater.finish();
+            final byte[] buffer = new byte[Math.min(length, 8192)];
+            while (!deflater.finished())
+            {
+                final int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+                if (out.size() >= frame.length)
+                {
+                    // not worth it
+                    return null;
+                }
+            }
+        }
+        finally
+        {
+            deflater.reset();
+            compressionNanos.add(System.nanoTime() - start);
+        }
+        messagesCompressed.increment();
+        bytesBeforeCompression.add(frame.length);
+        bytesAfterCompression.add(out.size());
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(final byte[] frame, final int offset) throws DataFormatException
+    {
+        final long start = System.nanoTime();
+        final int length = readInt(frame, offset);
+        final Inflater inflater = inflaters.get();
+        try
+        {
+            inflater.setInput(frame, offset + 4, frame.length - offset - 4);
+            final byte[] result = new byte[length];
+            int count = 0;
+            while (count < length && !inflater.finished())
+            {
+                final int n = inflater.inflate(result, count, length - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    break;
+                }
+                count += n;
+            }
+            if (count != length)
+            {
+                throw new DataFormatException("Truncated compressed frame, expected " + length + " bytes, got " + count);
+            }
+            return result;
+        }
+        finally
+        {
+            inflater.reset();
+            decompressionNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private static int readInt(final byte[] buff, final int offset)
+    {
+        return ((buff[offset] & 0xff) << 24) | ((buff[offset + 1] & 0xff) << 16)
+                | ((buff[offset + 2] & 0xff) << 8) | (buff[offset + 3] & 0xff);
+    }
+
+    private static long readLong(final byte[] buff, final int offset)
+    {
+        return ((long) readInt(buff, offset) << 32) | (readInt(buff, offset + 4) & 0xffffffffL);
+    }
+
+    private static void writeLong(final byte[] buff, final int offset, final long value)
+    {
+        writeInt(buff, offset, (int) (value >>> 32));
+        writeInt(buff, offset + 4, (int) value);
+    }
+
+    private static void writeInt(final byte[] buff, final int offset, final int value)
+    {
+        buff[offset] = (byte) (value >>> 24);
+        buff[offset + 1] = (byte) (value >>> 16);
+        buff[offset + 2] = (byte) (value >>> 8);
+        buff[offset + 3] = (byte) value;
     }
 
     public Task<?> sendMessage(Message message)
+    {
+        return sendMessage(message, message.isOneWay() ? MessageClass.ONE_WAY : MessageClass.REQUEST);
+    }
+
+    /**
+     * Sends a message, telling the cluster peer what it is for.
+     *
+     * @param message      the message to send
+     * @param messageClass what the message is for, the peer may use it to pick how to deliver it
+     * @return completed with the response, or when a one way message is sent
+     */
+    public Task<?> sendMessage(Message message, MessageClass messageClass)
     {
         int messageId = messageIdGen.incrementAndGet();
         message.setMessageId(messageId);
-        PendingResponse pendingResponse = new PendingResponse(messageId, clock.millis() + responseTimeoutMillis);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        PendingResponse pendingResponse = new PendingResponse(messageId, clock.millis() + responseTimeoutMillis, message.getToNode());
+        final byte[] frame;
         try
         {
-            messageSerializer.serializeMessage(execution, byteArrayOutputStream, message);
+            frame = encodeFrame(message.getToNode(),
+                    new Message()
+                            .withMessageId(messageId)
+                            .withMessageType(message.getMessageType())
+                            .withOneWay(message.isOneWay())
+                            .withHeaders(message.getHeaders()),
+                    message.getPayload(), -1);
         }
         catch (Exception | Error e)
         {
@@ -294,12 +1046,17 @@ public class Messaging implements Startable
         if (!oneWay)
         {
 
-            pendingResponseMap.put(messageId, pendingResponse);
+            pendingResponseMap.put(pendingResponse);
             pendingResponsesQueue.add(pendingResponse);
+            if (flowControlWindow > 0)
+            {
+                sendWithCredit(message.getToNode(), frame, messageClass, pendingResponse);
+                return pendingResponse;
+            }
         }
         try
         {
-            clusterPeer.sendMessage(message.getToNode(), byteArrayOutputStream.toByteArray());
+            clusterPeer.sendMessage(message.getToNode(), frame, messageClass);
             if (oneWay)
             {
                 pendingResponse.internalComplete(NIL);
@@ -307,13 +1064,104 @@ public class Messaging implements Startable
         }
         catch (Exception ex)
         {
-            pendingResponseMap.remove(messageId);
+            pendingResponseMap.remove(pendingResponse);
             pendingResponsesQueue.remove(pendingResponse);
             pendingResponse.internalCompleteExceptionally(ex);
         }
         return pendingResponse;
     }
 
+    private void sendWithCredit(final NodeAddress to, final byte[] frame, final MessageClass messageClass, final PendingResponse pendingResponse)
+    {
+        final PeerCredits credits = peerCredits.computeIfAbsent(to, k -> new PeerCredits(flowControlWindow));
+        if (credits.tryAcquire())
+        {
+            transmit(to, credits, frame, messageClass, pendingResponse);
+            return;
+        }
+        if (!credits.offer(new QueuedFrame(frame, messageClass, pendingResponse), flowControlQueueSize))
+        {
+            messagesOverloaded.increment();
+            pendingResponseMap.remove(pendingResponse);
+            pendingResponsesQueue.remove(pendingResponse);
+            pendingResponse.internalCompleteExceptionally(
+                    new OverloadException("Too many requests waiting for credits from " + to));
+            return;
+        }
+        messagesThrottled.increment();
+        // a credit might have been released while the frame was being queued
+        drainQueued(to, credits);
+    }
+
+    private void transmit(final NodeAddress to, final PeerCredits credits, final byte[] frame, final MessageClass messageClass, final PendingResponse pendingResponse)
+    {
+        // the credit returns when the call completes, be it by response, timeout or node drop.
+        pendingResponse.whenComplete((r, e) -> {
+            credits.release();
+            drainQueued(to, credits);
+        });
+        try
+        {
+            clusterPeer.sendMessage(to, frame, messageClass);
+        }
+        catch (Exception ex)
+        {
+            pendingResponseMap.remove(pendingResponse);
+            pendingResponsesQueue.remove(pendingResponse);
+            pendingResponse.internalCompleteExceptionally(ex);
+        }
+    }
+
+    private void drainQueued(final NodeAddress to, final PeerCredits credits)
+    {
+        while (!credits.queued.isEmpty() && credits.tryAcquire())
+        {
+            final QueuedFrame queuedFrame = credits.poll();
+            if (queuedFrame == null)
+            {
+                credits.release();
+                // another thread emptied the queue, it will also pick up any newly queued frame
+                return;
+            }
+            if (queuedFrame.pendingResponse.isDone())
+            {
+                // timed out while waiting for a credit
+                credits.release();
+                continue;
+            }
+            transmit(to, credits, queuedFrame.frame, queuedFrame.messageClass, queuedFrame.pendingResponse);
+        }
+    }
+
+    private void onCreditReceived(final NodeAddress from, final int credit)
+    {
+        final PeerCredits credits = peerCredits.get(from);
+        if (credits != null && credits.window != credit)
+        {
+            credits.window = credit;
+            drainQueued(from, credits);
+        }
+    }
+
+    /**
+     * The number of requests a caller may have waiting for responses from this node,
+     * what's left of the flow control window after the messages already waiting to be processed.
+     * It's never less than one so that callers are slowed down, but not stalled.
+     */
+    private int grantCredit()
+    {
+        long backlog = execution.getBacklogSize() + decodeBacklog.sum();
+        if (executor instanceof ForkJoinPool)
+        {
+            backlog += ((ForkJoinPool) executor).getQueuedSubmissionCount();
+        }
+        else if (executor instanceof ThreadPoolExecutor)
+        {
+            backlog += ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return (int) Math.max(1, flowControlWindow - backlog);
+    }
+
     public void timeoutCleanup()
     {
         PendingResponse top = pendingResponsesQueue.peek();
@@ -331,7 +1179,7 @@ public class Messaging implements Startable
                 {
                     top.internalCompleteExceptionally(new TimeoutException("Response timeout"));
                 }
-                pendingResponseMap.remove(top.messageId);
+                pendingResponseMap.remove(top);
             }
         }
     }
@@ -341,4 +1189,57 @@ public class Messaging implements Startable
         this.executor = pool;
     }
 
+    /**
+     * @return the number of request batches handed to the execution by the decoding lanes.
+     */
+    public long getDecodeBatchCount()
+    {
+        return decodeBatches.longValue();
+    }
+
+    /**
+     * @return the number of requests that had to wait for flow control credits.
+     */
+    public long getMessagesThrottledCount()
+    {
+        return messagesThrottled.longValue();
+    }
+
+    /**
+     * @return the number of requests rejected with {@link OverloadException}.
+     */
+    public long getMessagesOverloadedCount()
+    {
+        return messagesOverloaded.longValue();
+    }
+
+    public long getMessagesForwardedCount()
+    {
+        return messagesForwarded.longValue();
+    }
+
+    public long getMessagesCompressedCount()
+    {
+        return messagesCompressed.longValue();
+    }
+
+    /**
+     * @return the compressed size over the uncompressed size of the frames that were compressed, 1.0 if none was.
+     */
+    public double getCompressionRatio()
+    {
+        final long before = bytesBeforeCompression.longValue();
+        return before == 0 ? 1.0 : bytesAfterCompression.doubleValue() / before;
+    }
+
+    public long getCompressionTimeNanos()
+    {
+        return compressionNanos.longValue();
+    }
+
+    public long getDecompressionTimeNanos()
+    {
+        return decompressionNanos.longValue();
+    }
+
 }
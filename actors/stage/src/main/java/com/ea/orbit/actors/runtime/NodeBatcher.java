@@ -0,0 +1,172 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.concurrent.Task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Groups the requests sent to the same node.
+ * <p>
+ * The first request queued for a node schedules a flush, the requests queued until it runs are sent in the same message.
+ * </p>
+ *
+ * @param <Q> the request type
+ * @param <R> the result type, the node answers with one result per request
+ */
+class NodeBatcher<Q, R>
+{
+    private final Supplier<? extends Executor> executor;
+    private final int maxBatchSize;
+    private final BiFunction<NodeAddress, List<Q>, Task<List<R>>> sender;
+    private final ConcurrentMap<NodeAddress, Batch<Q, R>> batches = new ConcurrentHashMap<>();
+    private final LongAdder batchesSent = new LongAdder();
+
+    private static class Pending<Q, R>
+    {
+        final Q request;
+        final Task<R> result = new Task<>();
+
+        Pending(final Q request)
+        {
+            this.request = request;
+        }
+    }
+
+    private static class Batch<Q, R>
+    {
+        final NodeAddress target;
+        final Queue<Pending<Q, R>> queue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Batch(final NodeAddress target)
+        {
+            this.target = target;
+        }
+    }
+
+    /**
+     * @param sender sends a batch of requests to a node
+     */
+    NodeBatcher(final Supplier<? extends Executor> executor, final int maxBatchSize,
+                final BiFunction<NodeAddress, List<Q>, Task<List<R>>> sender)
+    {
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.sender = sender;
+    }
+
+    Task<R> submit(final NodeAddress target, final Q request)
+    {
+        final Pending<Q, R> pending = new Pending<>(request);
+        final Batch<Q, R> batch = batches.computeIfAbsent(target, Batch::new);
+        batch.queue.add(pending);
+        if (batch.scheduled.compareAndSet(false, true))
+        {
+            executor.get().execute(() -> flush(batch));
+        }
+        return pending.result;
+    }
+
+    /**
+     * Forgets the nodes that are no longer in the cluster.
+     */
+    void retainAll(final Collection<NodeAddress> nodes)
+    {
+        batches.keySet().retainAll(nodes);
+    }
+
+    long getBatchCount()
+    {
+        return batchesSent.longValue();
+    }
+
+    private void flush(final Batch<Q, R> batch)
+    {
+        batch.scheduled.set(false);
+        List<Pending<Q, R>> drained = new ArrayList<>();
+        Pending<Q, R> pending;
+        while ((pending = batch.queue.poll()) != null)
+        {
+            drained.add(pending);
+            if (drained.size() == maxBatchSize)
+            {
+                send(batch.target, drained);
+                drained = new ArrayList<>();
+            }
+        }
+        if (drained.size() > 0)
+        {
+            send(batch.target, drained);
+        }
+    }
+
+    private void send(final NodeAddress target, final List<Pending<Q, R>> drained)
+    {
+        final List<Q> requests = new ArrayList<>(drained.size());
+        drained.forEach(p -> requests.add(p.request));
+        batchesSent.increment();
+        Task<List<R>> response;
+        try
+        {
+            response = sender.apply(target, requests);
+        }
+        catch (Exception ex)
+        {
+            response = Task.fromException(ex);
+        }
+        response.whenComplete((results, e) -> {
+            for (int i = 0; i < drained.size(); i++)
+            {
+                if (e != null)
+                {
+                    drained.get(i).result.completeExceptionally(e);
+                }
+                else
+                {
+                    drained.get(i).result.complete(results.get(i));
+                }
+            }
+        });
+    }
+}
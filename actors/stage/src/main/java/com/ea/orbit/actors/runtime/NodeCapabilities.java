@@ -29,9 +29,13 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.ActorObserver;
+import com.ea.orbit.actors.Addressable;
+import com.ea.orbit.actors.annotation.OneWay;
 import com.ea.orbit.actors.cluster.NodeAddress;
 import com.ea.orbit.concurrent.Task;
 
+import java.util.List;
+
 public interface NodeCapabilities extends ActorObserver
 {
     enum NodeTypeEnum
@@ -54,5 +58,46 @@ public interface NodeCapabilities extends ActorObserver
      */
     Task<Integer> canActivate(String interfaceName);
 
+    /**
+     * Asked once when the node joins the cluster, lists all the actors this node can activate.
+     */
+    Task<NodeManifest> getManifest();
+
     Task<Void> nodeModeChanged(NodeAddress nodeAddress, NodeState newMode);
+
+    /**
+     * Location hint sent to a node that addressed a message to a node that doesn't own the actor.
+     * The message itself is forwarded by the receiving node.
+     *
+     * @param actorReference the actor
+     * @param oldAddress     the node that received the message
+     * @param newAddress     the node that owns the actor
+     */
+    @OneWay
+    Task<Void> moved(Addressable actorReference, NodeAddress oldAddress, NodeAddress newAddress);
+
+    /**
+     * Periodic load report of a server node.
+     *
+     * @param nodeAddress the reporting node
+     * @param load        its current load
+     */
+    @OneWay
+    Task<Void> loadReport(NodeAddress nodeAddress, NodeLoad load);
+
+    /**
+     * Hands over an activation moved from another node, along with its in-memory state.
+     *
+     * @param actorReference the actor
+     * @param state          the actor state in the node it's moved from
+     * @return true if this node activated the actor and registered itself as its location.
+     */
+    Task<Boolean> acceptActivation(Addressable actorReference, Object state);
+
+    /**
+     * Batched presence query, used to check calls to methods that only run if the actor is already active.
+     *
+     * @return for each actor, true if it's active in this node.
+     */
+    Task<List<Boolean>> isActivated(List<ActorKey> actors);
 }
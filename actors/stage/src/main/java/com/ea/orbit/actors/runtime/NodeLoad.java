@@ -0,0 +1,98 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import java.io.Serializable;
+
+/**
+ * Load of a server node, periodically reported to the other nodes to help choosing where to activate actors.
+ */
+public class NodeLoad implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int activationCount;
+    private final int backlog;
+    private final int queueLatencyMicros;
+    private final float heapUsage;
+
+    public NodeLoad(final int activationCount, final int backlog, final int queueLatencyMicros, final float heapUsage)
+    {
+        this.activationCount = activationCount;
+        this.backlog = backlog;
+        this.queueLatencyMicros = queueLatencyMicros;
+        this.heapUsage = heapUsage;
+    }
+
+    public int getActivationCount()
+    {
+        return activationCount;
+    }
+
+    /**
+     * @return the number of messages waiting in the actor mailboxes.
+     */
+    public int getBacklog()
+    {
+        return backlog;
+    }
+
+    /**
+     * @return the time a task waited for an execution thread.
+     */
+    public int getQueueLatencyMicros()
+    {
+        return queueLatencyMicros;
+    }
+
+    /**
+     * @return the used heap over the maximum heap.
+     */
+    public float getHeapUsage()
+    {
+        return heapUsage;
+    }
+
+    /**
+     * Single load figure, in activations: each waiting message counts as 10 activations
+     * and each millisecond of queue latency as 100. The result grows quickly as the heap fills up.
+     */
+    public double getScore()
+    {
+        final double score = activationCount + backlog * 10.0 + queueLatencyMicros / 10.0;
+        return score / (1.0 - Math.min(heapUsage, 0.9f));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NodeLoad{activations=" + activationCount + ", backlog=" + backlog
+                + ", queueLatencyMicros=" + queueLatencyMicros + ", heapUsage=" + heapUsage + "}";
+    }
+}
@@ -0,0 +1,116 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The actor types a node can activate, exchanged once when a node joins the cluster.
+ */
+public class NodeManifest implements Serializable
+{
+    private static final long serialVersionUID = 2L;
+
+    private final boolean hostsActors;
+    // sorted interface ids, null if the node can't list the actors it supports
+    private final int[] interfaceIds;
+    // the interface names, in the order of their ids: different names can share an id
+    private final String[] interfaceNames;
+
+    /**
+     * @param interfaceNames the actor interfaces the node can activate, null if it can't list them
+     */
+    public NodeManifest(final boolean hostsActors, final String[] interfaceNames)
+    {
+        this.hostsActors = hostsActors;
+        if (interfaceNames != null)
+        {
+            // the interface id is the hash code of the interface name, as computed by the ActorFactoryGenerator
+            this.interfaceNames = Arrays.stream(interfaceNames)
+                    .map(NodeManifest::fullName)
+                    .sorted(Comparator.comparingInt(String::hashCode).thenComparing(Comparator.naturalOrder()))
+                    .toArray(String[]::new);
+            this.interfaceIds = Arrays.stream(this.interfaceNames).mapToInt(String::hashCode).toArray();
+        }
+        else
+        {
+            this.interfaceNames = null;
+            this.interfaceIds = null;
+        }
+    }
+
+    public boolean isHostsActors()
+    {
+        return hostsActors;
+    }
+
+    /**
+     * @return NodeCapabilities#actorSupported_yes, NodeCapabilities#actorSupported_no,
+     * or null if the manifest doesn't tell. A type missing from the list is reported as unknown
+     * rather than unsupported, so classes the finder didn't see are still asked for one by one.
+     */
+    public Integer canActivate(final String interfaceName)
+    {
+        if (!hostsActors)
+        {
+            return NodeCapabilities.actorSupported_no;
+        }
+        if (interfaceIds == null)
+        {
+            return null;
+        }
+        final String fullName = fullName(interfaceName);
+        final int id = fullName.hashCode();
+        int i = Arrays.binarySearch(interfaceIds, id);
+        if (i < 0)
+        {
+            return null;
+        }
+        // the id matched, the name must match too
+        while (i > 0 && interfaceIds[i - 1] == id)
+        {
+            i--;
+        }
+        for (; i < interfaceIds.length && interfaceIds[i] == id; i++)
+        {
+            if (interfaceNames[i].equals(fullName))
+            {
+                return NodeCapabilities.actorSupported_yes;
+            }
+        }
+        return null;
+    }
+
+    private static String fullName(final String interfaceName)
+    {
+        return interfaceName.replace('$', '.');
+    }
+}
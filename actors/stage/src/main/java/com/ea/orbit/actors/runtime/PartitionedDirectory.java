@@ -0,0 +1,439 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.AsyncConcurrentMap;
+import com.ea.orbit.actors.cluster.ClusterPeer;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.concurrent.Task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Actor directory partitioned among the server nodes, through the stage messaging.
+ * <p>
+ * Each key belongs to the first server clockwise from its hash in a {@link ConsistentHashRing}.
+ * Operations for the same remote partition are sent together in batches.
+ * When the servers change the entries are handed off to their new owners,
+ * and the servers register again their local actors whose entries were kept by the nodes that left.
+ * Until a previous owner tells that its hand-off is complete, the new owner looks for the keys it misses there.
+ * </p>
+ */
+class PartitionedDirectory implements AsyncConcurrentMap<ActorKey, NodeAddress>, DirectoryPartition
+{
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedDirectory.class);
+
+    // how long the previous owners are asked for the missing keys, if they don't complete their hand-off
+    static final long HAND_OFF_TIMEOUT_MILLIS = 30_000;
+
+    private final Execution execution;
+    private final ClusterPeer clusterPeer;
+    private final boolean server;
+    private final int virtualNodes;
+    private final int maxBatchSize;
+
+    private final ConcurrentMap<ActorKey, NodeAddress> entries = new ConcurrentHashMap<>();
+    private final NodeBatcher<Request, NodeAddress> batcher;
+    private final ConcurrentMap<NodeAddress, DirectoryPartition> partitions = new ConcurrentHashMap<>();
+    private volatile Set<NodeAddress> owners = Collections.emptySet();
+    private volatile ConsistentHashRing ring = ConsistentHashRing.EMPTY;
+    private volatile ConsistentHashRing previousRing = ConsistentHashRing.EMPTY;
+    // the servers that didn't complete their hand-off to this node since the servers changed
+    private volatile Set<NodeAddress> handingOff = Collections.emptySet();
+    private volatile long handOffDeadline;
+    // hand-offs completed by nodes that saw the new servers before this node
+    private final ConcurrentMap<NodeAddress, Set<NodeAddress>> earlyHandOffs = new ConcurrentHashMap<>();
+    private final LongAdder entriesRestored = new LongAdder();
+
+    /**
+     * @param server if false this node never owns a partition, it only forwards the requests.
+     */
+    PartitionedDirectory(final Execution execution, final ClusterPeer clusterPeer, final boolean server,
+                         final int virtualNodes, final int maxBatchSize)
+    {
+        this.execution = execution;
+        this.clusterPeer = clusterPeer;
+        this.server = server;
+        this.virtualNodes = virtualNodes;
+        this.maxBatchSize = maxBatchSize;
+        this.batcher = new NodeBatcher<>(execution::getExecutor, maxBatchSize, (owner, requests) -> partition(owner).execute(requests));
+    }
+
+    /**
+     * Called when the servers of the cluster change.
+     */
+    void setOwners(final Collection<NodeAddress> newOwners)
+    {
+        final Set<NodeAddress> ownerSet = new HashSet<>(newOwners);
+        if (ownerSet.equals(owners))
+        {
+            return;
+        }
+        final ConsistentHashRing oldRing = ring;
+        final Set<NodeAddress> departed = new HashSet<>(owners);
+        departed.removeAll(ownerSet);
+        if (server)
+        {
+            // the keys this node gains were kept by the server that owns them when this node is left out,
+            // whatever views this node has seen before.
+            final NodeAddress localAddress = clusterPeer.localAddress();
+            final Set<NodeAddress> others = new HashSet<>(ownerSet);
+            others.remove(localAddress);
+            final Set<NodeAddress> previousOwners = ConcurrentHashMap.newKeySet();
+            for (final NodeAddress other : others)
+            {
+                if (!ownerSet.equals(earlyHandOffs.get(other)))
+                {
+                    previousOwners.add(other);
+                }
+            }
+            earlyHandOffs.clear();
+            previousRing = ConsistentHashRing.build(others, virtualNodes);
+            handOffDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HAND_OFF_TIMEOUT_MILLIS);
+            handingOff = previousOwners;
+        }
+        owners = ownerSet;
+        ring = ConsistentHashRing.build(ownerSet, virtualNodes);
+        batcher.retainAll(ownerSet);
+        partitions.keySet().retainAll(ownerSet);
+        // not sending messages from the view listener
+        execution.getExecutor().execute(() -> {
+            handOff(ownerSet);
+            if (server && !departed.isEmpty())
+            {
+                registerAgain(oldRing, departed);
+            }
+        });
+    }
+
+    /**
+     * @return the number of entries kept by this node.
+     */
+    int size()
+    {
+        return entries.size();
+    }
+
+    long getBatchCount()
+    {
+        return batcher.getBatchCount();
+    }
+
+    long getRestoredCount()
+    {
+        return entriesRestored.longValue();
+    }
+
+    @Override
+    public Task<NodeAddress> getAsync(final ActorKey key)
+    {
+        return route(new Request(Operation.GET, key, null, false), false);
+    }
+
+    @Override
+    public Task<NodeAddress> putAsync(final ActorKey key, final NodeAddress value)
+    {
+        return route(new Request(Operation.PUT, key, value, false), false);
+    }
+
+    @Override
+    public Task<NodeAddress> putIfAbsentAsync(final ActorKey key, final NodeAddress value)
+    {
+        return route(new Request(Operation.PUT_IF_ABSENT, key, value, false), false);
+    }
+
+    @Override
+    public Task<Boolean> removeAsync(final ActorKey key, final NodeAddress value)
+    {
+        return route(new Request(Operation.REMOVE, key, value, false), false).thenApply(Objects::nonNull);
+    }
+
+    @Override
+    public Task<List<NodeAddress>> execute(final List<Request> requests)
+    {
+        final List<Task<NodeAddress>> results = new ArrayList<>(requests.size());
+        for (final Request request : requests)
+        {
+            // the sender might have an outdated view, the request is forwarded at most once.
+            // a client passes on even the forwarded requests, since it doesn't keep entries.
+            results.add(request.forwarded && server ? Task.fromValue(apply(request)) : route(request, true));
+        }
+        return Task.allOf(results).thenApply(r -> results.stream().map(Task::join).collect(Collectors.toList()));
+    }
+
+    @Override
+    public Task<Void> transfer(final Map<ActorKey, NodeAddress> handedOff)
+    {
+        if (!server)
+        {
+            // the sender thought this client was a server, it keeps the entries until it knows better
+            return Task.fromException(new IllegalStateException("Clients don't keep directory entries"));
+        }
+        handedOff.forEach(entries::putIfAbsent);
+        return Task.done();
+    }
+
+    @Override
+    public Task<Void> handOffCompleted(final NodeAddress previousOwner, final Set<NodeAddress> ownerSet)
+    {
+        if (ownerSet.equals(owners))
+        {
+            handingOff.remove(previousOwner);
+        }
+        else
+        {
+            earlyHandOffs.put(previousOwner, ownerSet);
+        }
+        return Task.done();
+    }
+
+    private Task<NodeAddress> route(final Request request, final boolean forward)
+    {
+        final NodeAddress owner = owner(request.key);
+        if (owner == null || owner.equals(clusterPeer.localAddress()))
+        {
+            return applyOwned(request);
+        }
+        if (isLookup(request))
+        {
+            // an entry not handed off yet still answers the lookup
+            final NodeAddress kept = entries.get(request.key);
+            if (kept != null)
+            {
+                return Task.fromValue(kept);
+            }
+        }
+        return batcher.submit(owner, forward ? request.forward() : request);
+    }
+
+    private Task<NodeAddress> applyOwned(final Request request)
+    {
+        if (isLookup(request) && !entries.containsKey(request.key))
+        {
+            final NodeAddress previousOwner = previousOwner(request.key);
+            if (previousOwner != null)
+            {
+                // the previous owner might still have the entry
+                return batcher.submit(previousOwner, new Request(Operation.GET, request.key, null, true))
+                        .handle((kept, e) -> {
+                            if (kept != null)
+                            {
+                                entries.putIfAbsent(request.key, kept);
+                            }
+                            return apply(request);
+                        });
+            }
+        }
+        return Task.fromValue(apply(request));
+    }
+
+    private static boolean isLookup(final Request request)
+    {
+        return request.operation == Operation.GET || request.operation == Operation.PUT_IF_ABSENT;
+    }
+
+    private NodeAddress previousOwner(final ActorKey key)
+    {
+        final Set<NodeAddress> pending = handingOff;
+        if (pending.isEmpty() || System.nanoTime() > handOffDeadline)
+        {
+            return null;
+        }
+        final NodeAddress previousOwner = owner(previousRing, key);
+        return previousOwner != null && pending.contains(previousOwner) ? previousOwner : null;
+    }
+
+    private NodeAddress apply(final Request request)
+    {
+        switch (request.operation)
+        {
+            case GET:
+                return entries.get(request.key);
+            case PUT:
+                return entries.put(request.key, request.value);
+            case PUT_IF_ABSENT:
+                return entries.putIfAbsent(request.key, request.value);
+            case REMOVE:
+                return entries.remove(request.key, request.value) ? request.value : null;
+            default:
+                throw new IllegalArgumentException("Unknown directory operation: " + request.operation);
+        }
+    }
+
+    private NodeAddress owner(final ActorKey key)
+    {
+        return owner(ring, key);
+    }
+
+    private NodeAddress owner(final ConsistentHashRing ring, final ActorKey key)
+    {
+        final Predicate<NodeAddress> filter;
+        if (server)
+        {
+            filter = address -> true;
+        }
+        else
+        {
+            // clients don't keep entries, even if another node thinks they do.
+            final NodeAddress localAddress = clusterPeer.localAddress();
+            filter = address -> !address.equals(localAddress);
+        }
+        return ring.select(key.ringHash(), filter);
+    }
+
+    private DirectoryPartition partition(final NodeAddress owner)
+    {
+        return partitions.computeIfAbsent(owner, address -> execution.createReference(address, DirectoryPartition.class, ""));
+    }
+
+    /**
+     * Sends the entries that now belong to other partitions to their owners, then tells the other servers it's done.
+     */
+    private void handOff(final Set<NodeAddress> ownerSet)
+    {
+        if (!server)
+        {
+            return;
+        }
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        final List<Task<Void>> transfers = new ArrayList<>();
+        final Map<NodeAddress, Map<ActorKey, NodeAddress>> moving = new HashMap<>();
+        for (final Map.Entry<ActorKey, NodeAddress> entry : entries.entrySet())
+        {
+            final NodeAddress owner = owner(entry.getKey());
+            if (owner != null && !owner.equals(localAddress))
+            {
+                final Map<ActorKey, NodeAddress> handedOff = moving.computeIfAbsent(owner, o -> new HashMap<>());
+                handedOff.put(entry.getKey(), entry.getValue());
+                if (handedOff.size() == maxBatchSize)
+                {
+                    transfers.add(transfer(owner, moving.remove(owner)));
+                }
+            }
+        }
+        moving.forEach((owner, handedOff) -> transfers.add(transfer(owner, handedOff)));
+        Task.allOf(transfers).whenComplete((r, e) -> {
+            // the new owners keep asking this node for the entries it didn't hand off
+            if (e == null)
+            {
+                completeHandOff(ownerSet);
+            }
+        });
+    }
+
+    private void completeHandOff(final Set<NodeAddress> ownerSet)
+    {
+        if (!ownerSet.equals(owners))
+        {
+            // the servers changed again, the next hand-off will tell
+            return;
+        }
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        for (final NodeAddress owner : ownerSet)
+        {
+            if (!owner.equals(localAddress))
+            {
+                try
+                {
+                    partition(owner).handOffCompleted(localAddress, ownerSet);
+                }
+                catch (Exception ex)
+                {
+                    logger.warn("Error completing the directory hand-off to " + owner, ex);
+                }
+            }
+        }
+    }
+
+    private Task<Void> transfer(final NodeAddress owner, final Map<ActorKey, NodeAddress> handedOff)
+    {
+        Task<Void> transferred;
+        try
+        {
+            transferred = partition(owner).transfer(handedOff);
+        }
+        catch (Exception ex)
+        {
+            transferred = Task.fromException(ex);
+        }
+        return transferred.whenComplete((r, e) -> {
+            if (e != null)
+            {
+                logger.warn("Error handing off " + handedOff.size() + " directory entries to " + owner, e);
+                return;
+            }
+            // the entries that changed while in transit stay, they still answer the lookups
+            handedOff.forEach((key, value) -> entries.remove(key, value));
+        });
+    }
+
+    /**
+     * Registers again the local actors whose directory entries were kept by nodes that left the cluster.
+     */
+    private void registerAgain(final ConsistentHashRing oldRing, final Set<NodeAddress> departed)
+    {
+        final NodeAddress localAddress = clusterPeer.localAddress();
+        for (final ActorReference<?> reference : execution.getLocalActorReferences())
+        {
+            final ActorKey key = ActorKey.of(reference);
+            final NodeAddress oldOwner = owner(oldRing, key);
+            if (oldOwner != null && departed.contains(oldOwner))
+            {
+                putAsync(key, localAddress).whenComplete((r, e) -> {
+                    if (e != null)
+                    {
+                        logger.error("Error registering " + key + " again", e);
+                    }
+                    else
+                    {
+                        entriesRestored.increment();
+                    }
+                });
+            }
+        }
+    }
+}
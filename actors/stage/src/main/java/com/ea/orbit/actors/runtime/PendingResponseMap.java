@@ -0,0 +1,212 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent map from message id to the pending response, specialized for sequential int keys.
+ * <p>
+ * The responses are stored in a ring indexed by {@code messageId & mask}.
+ * Since the message ids are sequential, each message gets its own slot as long as there are fewer
+ * calls in flight than slots. No boxing or allocation is required to add or remove a response.
+ * </p>
+ * <p>
+ * When a slot is still taken by an older message (too many calls in flight, or a call waiting for a very long time)
+ * the response goes to an overflow map.
+ * </p>
+ * <p>
+ * The responses are also indexed by the node they wait for, so that failing the calls to a node
+ * doesn't depend on the number of calls in flight.
+ * </p>
+ */
+class PendingResponseMap
+{
+    static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private final AtomicReferenceArray<Messaging.PendingResponse> slots;
+    private final int mask;
+    private final Map<Integer, Messaging.PendingResponse> overflow = new ConcurrentHashMap<>();
+    private final ConcurrentMap<NodeAddress, Set<Messaging.PendingResponse>> byNode = new ConcurrentHashMap<>();
+
+    PendingResponseMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two.
+     */
+    PendingResponseMap(final int capacity)
+    {
+        if (capacity < 1 || capacity > 1 << 30)
+        {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        slots = new AtomicReferenceArray<>(Math.max(size, 1));
+        mask = slots.length() - 1;
+    }
+
+    void put(final Messaging.PendingResponse pendingResponse)
+    {
+        final int messageId = pendingResponse.messageId;
+        if (!slots.compareAndSet(messageId & mask, null, pendingResponse))
+        {
+            overflow.put(messageId, pendingResponse);
+        }
+        if (pendingResponse.toNode != null)
+        {
+            byNode.computeIfAbsent(pendingResponse.toNode, n -> ConcurrentHashMap.newKeySet()).add(pendingResponse);
+        }
+    }
+
+    Messaging.PendingResponse get(final int messageId)
+    {
+        final Messaging.PendingResponse current = slots.get(messageId & mask);
+        if (current != null && current.messageId == messageId)
+        {
+            return current;
+        }
+        return overflow.isEmpty() ? null : overflow.get(messageId);
+    }
+
+    /**
+     * Removes and returns the response for the given message id.
+     */
+    Messaging.PendingResponse remove(final int messageId)
+    {
+        final int index = messageId & mask;
+        final Messaging.PendingResponse current = slots.get(index);
+        if (current != null && current.messageId == messageId && slots.compareAndSet(index, current, null))
+        {
+            unindex(current);
+            return current;
+        }
+        final Messaging.PendingResponse removed = overflow.isEmpty() ? null : overflow.remove(messageId);
+        if (removed != null)
+        {
+            unindex(removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the response only if it is still registered.
+     *
+     * @return true if it was removed.
+     */
+    boolean remove(final Messaging.PendingResponse pendingResponse)
+    {
+        final int messageId = pendingResponse.messageId;
+        if (slots.compareAndSet(messageId & mask, pendingResponse, null)
+                || (!overflow.isEmpty() && overflow.remove(messageId, pendingResponse)))
+        {
+            unindex(pendingResponse);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all the responses waited from a node.
+     *
+     * @return the removed responses.
+     */
+    List<Messaging.PendingResponse> removeAll(final NodeAddress node)
+    {
+        final Set<Messaging.PendingResponse> pending = byNode.remove(node);
+        if (pending == null)
+        {
+            return Collections.emptyList();
+        }
+        final List<Messaging.PendingResponse> removed = new ArrayList<>(pending.size());
+        for (final Messaging.PendingResponse pendingResponse : pending)
+        {
+            if (remove(pendingResponse))
+            {
+                removed.add(pendingResponse);
+            }
+        }
+        return removed;
+    }
+
+    private void unindex(final Messaging.PendingResponse pendingResponse)
+    {
+        if (pendingResponse.toNode != null)
+        {
+            final Set<Messaging.PendingResponse> pending = byNode.get(pendingResponse.toNode);
+            if (pending != null)
+            {
+                pending.remove(pendingResponse);
+            }
+        }
+    }
+
+    /**
+     * Visits all pending responses, concurrent changes might not be visible.
+     */
+    void forEach(final Consumer<Messaging.PendingResponse> consumer)
+    {
+        for (int i = 0, l = slots.length(); i < l; i++)
+        {
+            final Messaging.PendingResponse pendingResponse = slots.get(i);
+            if (pendingResponse != null)
+            {
+                consumer.accept(pendingResponse);
+            }
+        }
+        overflow.values().forEach(consumer);
+    }
+
+    /**
+     * Counts the pending responses, this is a linear operation.
+     */
+    int size()
+    {
+        final int[] count = { 0 };
+        forEach(p -> count[0]++);
+        return count[0];
+    }
+
+    int capacity()
+    {
+        return slots.length();
+    }
+}
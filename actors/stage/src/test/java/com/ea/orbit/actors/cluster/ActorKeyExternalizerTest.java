@@ -0,0 +1,93 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.cluster;
+
+import com.ea.orbit.actors.runtime.ActorKey;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.UUID;
+
+public class ActorKeyExternalizerTest extends TestCase
+{
+    private final ActorKeyExternalizer externalizer = new ActorKeyExternalizer();
+
+    private byte[] write(final ActorKey key) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            externalizer.writeObject(out, key);
+        }
+        return bytes.toByteArray();
+    }
+
+    private ActorKey roundTrip(final ActorKey key) throws Exception
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(write(key))))
+        {
+            return externalizer.readObject(in);
+        }
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        for (Object id : new Object[]{ "player-1", "", 42, 42L, null, new UUID(1, 2) })
+        {
+            final ActorKey key = new ActorKey(0x1234_5678, id);
+            final ActorKey read = roundTrip(key);
+            assertEquals(key, read);
+            assertEquals(key.hashCode(), read.hashCode());
+        }
+    }
+
+    public void testSmallerThanJavaSerialization() throws Exception
+    {
+        final ActorKey key = new ActorKey(-134851317, "player-1");
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized))
+        {
+            out.writeObject(key);
+        }
+        assertTrue(write(key).length < serialized.size() / 2);
+    }
+
+    public void testDifferentInterfaces() throws Exception
+    {
+        assertFalse(new ActorKey(1, "a").equals(new ActorKey(2, "a")));
+        assertFalse(new ActorKey(1, "a").equals(new ActorKey(1, "b")));
+        assertEquals(new ActorKey(1, null), new ActorKey(1, null));
+    }
+}
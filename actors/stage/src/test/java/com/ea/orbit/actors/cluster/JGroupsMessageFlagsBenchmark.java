@@ -0,0 +1,167 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.cluster;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ReceiverAdapter;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency/throughput tradeoff of the message flags and bundlers used by the {@link JGroupsClusterPeer}.
+ * <p>
+ * Two channels with the default jgroups configuration exchange small requests and responses.
+ * The requests keep the defaults of the channel, as the application calls do,
+ * the responses are sent with each combination of the OOB and DONT_BUNDLE flags.
+ * Each combination is measured with one call at a time (latency) and with a window of calls in flight (throughput).
+ * </p>
+ * <p>
+ * Not part of the test suite, run it with its main method.
+ * </p>
+ */
+public class JGroupsMessageFlagsBenchmark
+{
+    private static final String[] BUNDLERS = { "transfer-queue", "sender-sends-with-timer" };
+    // the defaults of the channel, each flag alone, and both
+    private static final Message.Flag[][] RESPONSE_FLAGS = { {}, { Message.Flag.DONT_BUNDLE }, { Message.Flag.OOB }, { Message.Flag.OOB, Message.Flag.DONT_BUNDLE } };
+    private static final int SEQUENTIAL_CALLS = 500;
+    private static final int WINDOWED_CALLS = 100_000;
+    private static final int IN_FLIGHT = 1_000;
+    private static final int PAYLOAD_SIZE = 100;
+
+    public static void main(String[] args) throws Exception
+    {
+        for (final String bundler : BUNDLERS)
+        {
+            for (final Message.Flag[] responseFlags : RESPONSE_FLAGS)
+            {
+                measure(bundler, responseFlags);
+            }
+        }
+    }
+
+    private static void measure(final String bundler, final Message.Flag[] responseFlags) throws Exception
+    {
+        final String clusterName = "benchmark-" + UUID.randomUUID();
+        final JChannel caller = createChannel(bundler);
+        final JChannel callee = createChannel(bundler);
+        try
+        {
+            callee.setReceiver(new ReceiverAdapter()
+            {
+                @Override
+                public void receive(final Message msg)
+                {
+                    try
+                    {
+                        final Message response = new Message(msg.getSrc(), msg.getBuffer());
+                        if (responseFlags.length > 0)
+                        {
+                            response.setFlag(responseFlags);
+                        }
+                        callee.send(response);
+                    }
+                    catch (Exception e)
+                    {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            final Semaphore window = new Semaphore(0);
+            caller.setReceiver(new ReceiverAdapter()
+            {
+                @Override
+                public void receive(final Message msg)
+                {
+                    window.release();
+                }
+            });
+            caller.connect(clusterName);
+            callee.connect(clusterName);
+            final Address calleeAddress = callee.getAddress();
+            final byte[] payload = new byte[PAYLOAD_SIZE];
+
+            // warm up
+            runWindowed(caller, calleeAddress, payload, window, WINDOWED_CALLS / 10, IN_FLIGHT);
+
+            final long sequential = runWindowed(caller, calleeAddress, payload, window, SEQUENTIAL_CALLS, 1);
+            final long windowed = runWindowed(caller, calleeAddress, payload, window, WINDOWED_CALLS, IN_FLIGHT);
+            System.out.println(String.format("%s, responses with %s: %d us/call one at a time, %d calls/s with %d in flight",
+                    bundler, Arrays.toString(responseFlags),
+                    TimeUnit.NANOSECONDS.toMicros(sequential / SEQUENTIAL_CALLS),
+                    WINDOWED_CALLS * TimeUnit.SECONDS.toNanos(1) / windowed, IN_FLIGHT));
+        }
+        finally
+        {
+            caller.close();
+            callee.close();
+        }
+    }
+
+    private static JChannel createChannel(final String bundler) throws Exception
+    {
+        final JChannel channel = new JChannel(JGroupsClusterPeer.class.getResource("/conf/jgroups.xml"));
+        channel.getProtocolStack().getTransport().setValue("bundler_type", bundler);
+        return channel;
+    }
+
+    /**
+     * Sends the calls keeping at most {@code inFlight} of them without a response.
+     *
+     * @return the elapsed time in nanoseconds, until the last response arrived
+     */
+    private static long runWindowed(final JChannel caller, final Address callee, final byte[] payload,
+                                    final Semaphore responses, final int calls, final int inFlight) throws Exception
+    {
+        final long start = System.nanoTime();
+        for (int i = 0; i < calls; i++)
+        {
+            if (i >= inFlight)
+            {
+                awaitResponses(responses, 1);
+            }
+            caller.send(new Message(callee, payload));
+        }
+        awaitResponses(responses, Math.min(calls, inFlight));
+        return System.nanoTime() - start;
+    }
+
+    private static void awaitResponses(final Semaphore responses, final int count) throws InterruptedException
+    {
+        if (!responses.tryAcquire(count, 60, TimeUnit.SECONDS))
+        {
+            throw new IllegalStateException("Responses lost, the benchmark needs a reliable network");
+        }
+    }
+}
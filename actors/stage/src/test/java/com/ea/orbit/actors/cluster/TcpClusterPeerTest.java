@@ -0,0 +1,201 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.cluster;
+
+import com.ea.orbit.exception.UncheckedException;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class TcpClusterPeerTest extends TestCase
+{
+    private final List<TcpClusterPeer> peers = new ArrayList<>();
+
+    private static class Received
+    {
+        final NodeAddress from;
+        final byte[] message;
+
+        Received(final NodeAddress from, final byte[] message)
+        {
+            this.from = from;
+            this.message = message;
+        }
+    }
+
+    private static class Peer
+    {
+        final TcpClusterPeer peer = new TcpClusterPeer();
+        volatile Collection<NodeAddress> view = Collections.emptyList();
+        final BlockingQueue<Received> received = new LinkedBlockingQueue<>();
+        final BlockingQueue<NodeAddress> clientsLeft = new LinkedBlockingQueue<>();
+    }
+
+    private Peer join(final String clusterName, final String seeds)
+    {
+        return join(clusterName, seeds, false);
+    }
+
+    private Peer join(final String clusterName, final String seeds, final boolean client)
+    {
+        final Peer peer = new Peer();
+        peer.peer.setSeeds(seeds);
+        peer.peer.setClient(client);
+        peer.peer.registerViewListener(v -> peer.view = v);
+        peer.peer.registerMessageReceiver((from, message) -> peer.received.add(new Received(from, message)));
+        peer.peer.registerClientListener(peer.clientsLeft::add);
+        peer.peer.join(clusterName, null).join();
+        peers.add(peer.peer);
+        return peer;
+    }
+
+    private static void await(final BooleanSupplier condition)
+    {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean())
+        {
+            if (System.currentTimeMillis() > deadline)
+            {
+                fail("timeout");
+            }
+            try
+            {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException ex)
+            {
+                throw new UncheckedException(ex);
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        peers.forEach(TcpClusterPeer::leave);
+    }
+
+    public void testMembersConnectAndExchangeMessages() throws Exception
+    {
+        final Peer peer1 = join("cluster", "");
+        final String seed = "127.0.0.1:" + peer1.peer.getPort();
+        final Peer peer2 = join("cluster", seed);
+        final Peer peer3 = join("cluster", seed);
+        await(() -> peer1.view.size() == 3 && peer2.view.size() == 3 && peer3.view.size() == 3);
+
+        // peer2 and peer3 only know each other through the seed
+        peer3.peer.sendMessage(peer2.peer.localAddress(), "hello".getBytes());
+        final Received received = peer2.received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(received);
+        assertEquals(peer3.peer.localAddress(), received.from);
+        assertEquals("hello", new String(received.message));
+    }
+
+    public void testMessagesArriveInOrder() throws Exception
+    {
+        final Peer peer1 = join("cluster", "");
+        final Peer peer2 = join("cluster", "127.0.0.1:" + peer1.peer.getPort());
+        await(() -> peer1.view.size() == 2 && peer2.view.size() == 2);
+
+        final List<byte[]> sent = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            // some messages are larger than the read buffer
+            final byte[] message = new byte[i % 100 == 0 ? 200_000 : i];
+            Arrays.fill(message, (byte) i);
+            sent.add(message);
+            peer1.peer.sendMessage(peer2.peer.localAddress(), message);
+        }
+        for (final byte[] message : sent)
+        {
+            final Received received = peer2.received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(received);
+            assertTrue(Arrays.equals(message, received.message));
+        }
+    }
+
+    public void testMembersLeave() throws Exception
+    {
+        final Peer peer1 = join("cluster", "");
+        final String seed = "127.0.0.1:" + peer1.peer.getPort();
+        final Peer peer2 = join("cluster", seed);
+        final Peer peer3 = join("cluster", seed);
+        await(() -> peer1.view.size() == 3 && peer2.view.size() == 3 && peer3.view.size() == 3);
+
+        peer3.peer.leave();
+        await(() -> peer1.view.size() == 2 && peer2.view.size() == 2);
+        assertFalse(peer1.view.contains(peer3.peer.localAddress()));
+    }
+
+    public void testMembersAreToldWhenClientsLeave() throws Exception
+    {
+        final Peer gateway = join("cluster", "");
+        final String seed = "127.0.0.1:" + gateway.peer.getPort();
+        final Peer member = join("cluster", seed);
+        await(() -> gateway.view.size() == 2 && member.view.size() == 2);
+        final Peer client = join("cluster", seed, true);
+        await(() -> client.view.size() == 3);
+
+        client.peer.sendMessage(member.peer.localAddress(), "hello".getBytes());
+        client.peer.sendMessage(gateway.peer.localAddress(), "hello".getBytes());
+        assertNotNull(member.received.poll(10, TimeUnit.SECONDS));
+        assertNotNull(gateway.received.poll(10, TimeUnit.SECONDS));
+        // the member answers through the gateway
+        member.peer.sendMessage(client.peer.localAddress(), "answer".getBytes());
+        final Received answer = client.received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(answer);
+        assertEquals("answer", new String(answer.message));
+
+        client.peer.leave();
+        assertEquals(client.peer.localAddress(), gateway.clientsLeft.poll(10, TimeUnit.SECONDS));
+        assertEquals(client.peer.localAddress(), member.clientsLeft.poll(10, TimeUnit.SECONDS));
+        assertEquals(0, gateway.peer.getClientCount());
+        assertEquals(2, member.view.size());
+    }
+
+    public void testOtherClustersAreIgnored() throws Exception
+    {
+        final Peer peer1 = join("cluster", "");
+        final Peer peer2 = join("other", "127.0.0.1:" + peer1.peer.getPort());
+        await(() -> peer2.view.size() == 1);
+        Thread.sleep(100);
+        assertEquals(1, peer1.view.size());
+        assertEquals(1, peer2.view.size());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.runtime;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class AffinityGraphTest extends TestCase
+{
+    private static ActorKey key(String id)
+    {
+        return new ActorKey(1, id);
+    }
+
+    public void testCallsAreRecordedBothWays() throws Exception
+    {
+        final AffinityGraph graph = new AffinityGraph(100, 4);
+        graph.record(key("a"), key("b"));
+        assertEquals(Collections.singletonList(key("b")), graph.getPartners(key("a")));
+        assertEquals(Collections.singletonList(key("a")), graph.getPartners(key("b")));
+        assertEquals(Collections.emptyList(), graph.getPartners(key("c")));
+    }
+
+    public void testStrongestFirst() throws Exception
+    {
+        final AffinityGraph graph = new AffinityGraph(100, 4);
+        graph.record(key("a"), key("b"));
+        graph.record(key("a"), key("c"));
+        graph.record(key("a"), key("c"));
+        graph.record(key("a"), key("d"));
+        graph.record(key("a"), key("d"));
+        graph.record(key("a"), key("d"));
+        assertEquals(Arrays.asList(key("d"), key("c"), key("b")), graph.getPartners(key("a")));
+    }
+
+    public void testWeakestPartnerIsReplaced() throws Exception
+    {
+        final AffinityGraph graph = new AffinityGraph(100, 2);
+        graph.record(key("a"), key("b"));
+        graph.record(key("a"), key("b"));
+        graph.record(key("a"), key("c"));
+        graph.record(key("a"), key("d"));
+        assertEquals(2, graph.getPartners(key("a")).size());
+        assertTrue(graph.getPartners(key("a")).contains(key("b")));
+        assertTrue(graph.getPartners(key("a")).contains(key("d")));
+    }
+
+    public void testSelfCallsAreIgnored() throws Exception
+    {
+        final AffinityGraph graph = new AffinityGraph(100, 4);
+        graph.record(key("a"), key("a"));
+        assertEquals(0, graph.size());
+    }
+}
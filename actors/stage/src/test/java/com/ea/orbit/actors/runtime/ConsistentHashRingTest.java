@@ -0,0 +1,133 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class ConsistentHashRingTest extends TestCase
+{
+    private static final int INTERFACE = 1234;
+
+    private List<NodeAddress> nodes(int count)
+    {
+        final List<NodeAddress> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            nodes.add(new NodeAddressImpl(new UUID(i * 31L, i)));
+        }
+        return nodes;
+    }
+
+    public void testEmptyRing() throws Exception
+    {
+        assertNull(ConsistentHashRing.EMPTY.select(new ActorKey(INTERFACE, "1").ringHash(), n -> true));
+    }
+
+    public void testSameViewSameOwner() throws Exception
+    {
+        final List<NodeAddress> nodes = nodes(5);
+        final ConsistentHashRing ring1 = ConsistentHashRing.build(nodes, 64);
+        Collections.reverse(nodes);
+        final ConsistentHashRing ring2 = ConsistentHashRing.build(nodes, 64);
+        for (int i = 0; i < 1000; i++)
+        {
+            final long hash = new ActorKey(INTERFACE, String.valueOf(i)).ringHash();
+            assertEquals(ring1.select(hash, n -> true), ring2.select(hash, n -> true));
+        }
+    }
+
+    public void testBalance() throws Exception
+    {
+        final ConsistentHashRing ring = ConsistentHashRing.build(nodes(10), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        final Map<NodeAddress, Integer> counts = new HashMap<>();
+        final int keys = 100_000;
+        for (int i = 0; i < keys; i++)
+        {
+            counts.merge(ring.select(new ActorKey(INTERFACE, String.valueOf(i)).ringHash(), n -> true), 1, Integer::sum);
+        }
+        assertEquals(10, counts.size());
+        for (int count : counts.values())
+        {
+            assertTrue("unbalanced: " + counts.values(), count > keys / 10 / 2 && count < keys / 10 * 3 / 2);
+        }
+    }
+
+    public void testAddingANodeOnlyMovesKeysToIt() throws Exception
+    {
+        final List<NodeAddress> nodes = nodes(11);
+        final NodeAddress added = nodes.remove(10);
+        final ConsistentHashRing before = ConsistentHashRing.build(nodes, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        nodes.add(added);
+        final ConsistentHashRing after = ConsistentHashRing.build(nodes, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        int moved = 0;
+        final int keys = 10_000;
+        for (int i = 0; i < keys; i++)
+        {
+            final long hash = new ActorKey(INTERFACE, String.valueOf(i)).ringHash();
+            final NodeAddress oldOwner = before.select(hash, n -> true);
+            final NodeAddress newOwner = after.select(hash, n -> true);
+            if (!oldOwner.equals(newOwner))
+            {
+                assertEquals(added, newOwner);
+                moved++;
+            }
+        }
+        assertTrue("moved: " + moved, moved > 0 && moved < keys * 2 / 11);
+    }
+
+    public void testFilter() throws Exception
+    {
+        final ConsistentHashRing ring = ConsistentHashRing.build(nodes(3), 16);
+        final long hash = new ActorKey(INTERFACE, "1").ringHash();
+        final NodeAddress owner = ring.select(hash, n -> true);
+        final NodeAddress next = ring.select(hash, n -> !n.equals(owner));
+        assertNotNull(next);
+        assertFalse(owner.equals(next));
+        assertNull(ring.select(hash, n -> false));
+    }
+
+    public void testKeyHash() throws Exception
+    {
+        // the same in every node, even for different instances of the key
+        assertEquals(new ActorKey(INTERFACE, "1").ringHash(), ConsistentHashRing.hash(new ActorKey(INTERFACE, "1")));
+        assertEquals(new ActorKey(INTERFACE, 1L).ringHash(), new ActorKey(INTERFACE, 1L).ringHash());
+        assertFalse(new ActorKey(INTERFACE, "1").ringHash() == new ActorKey(INTERFACE + 1, "1").ringHash());
+        assertFalse(new ActorKey(INTERFACE, "1").ringHash() == new ActorKey(INTERFACE, "2").ringHash());
+    }
+}
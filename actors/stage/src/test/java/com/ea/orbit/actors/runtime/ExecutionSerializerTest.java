@@ -0,0 +1,116 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.concurrent.Task;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Test for {@link ExecutionSerializer}.
+ */
+public class ExecutionSerializerTest extends TestCase
+{
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    public void testBatchKeepsTheOrderPerKey() throws Exception
+    {
+        final ExecutionSerializer<Object> serializer = new ExecutionSerializer<>(executor);
+        final Map<Object, List<Integer>> executed = new ConcurrentHashMap<>();
+        final CountDownLatch done = new CountDownLatch(100);
+        final List<Object> keys = new ArrayList<>();
+        final List<Supplier<Task<?>>> jobs = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            final Object key = "key" + (i % 3);
+            final int index = i;
+            keys.add(key);
+            jobs.add(() -> {
+                executed.computeIfAbsent(key, k -> new ArrayList<>()).add(index);
+                done.countDown();
+                return Task.done();
+            });
+        }
+        final boolean[] accepted = serializer.offerJobs(keys, jobs, 1000);
+        for (boolean a : accepted)
+        {
+            assertTrue(a);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int k = 0; k < 3; k++)
+        {
+            final List<Integer> order = executed.get("key" + k);
+            assertEquals(k < 1 ? 34 : 33, order.size());
+            for (int j = 0; j < order.size(); j++)
+            {
+                assertEquals(k + j * 3, (int) order.get(j));
+            }
+        }
+    }
+
+    public void testBatchRefusesOverTheQueueSize() throws Exception
+    {
+        final ExecutionSerializer<Object> serializer = new ExecutionSerializer<>(executor);
+        final CountDownLatch started = new CountDownLatch(1);
+        final Task<Void> blocker = new Task<>();
+        serializer.offerJob("a", () -> {
+            started.countDown();
+            return blocker;
+        }, 10);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        final CountDownLatch done = new CountDownLatch(3);
+        final Supplier<Task<?>> job = () -> {
+            done.countDown();
+            return Task.done();
+        };
+        final boolean[] accepted = serializer.offerJobs(Arrays.asList("a", "a", "a", "b"), Arrays.asList(job, job, job, job), 2);
+        assertTrue(Arrays.equals(new boolean[]{ true, true, false, true }, accepted));
+
+        blocker.complete(null);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
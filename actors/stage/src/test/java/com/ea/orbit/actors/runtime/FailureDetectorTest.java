@@ -0,0 +1,113 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class FailureDetectorTest extends TestCase
+{
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private final NodeAddress node = new NodeAddressImpl(UUID.randomUUID());
+
+    private FailureDetector regularHeartbeats(final int count)
+    {
+        final FailureDetector detector = new FailureDetector(FailureDetector.DEFAULT_WINDOW_SIZE, INTERVAL, 0, INTERVAL / 10);
+        for (int i = 0; i < count; i++)
+        {
+            detector.heartbeat(node, i * INTERVAL);
+        }
+        return detector;
+    }
+
+    public void testUnknownNodesAreNotSuspected() throws Exception
+    {
+        final FailureDetector detector = regularHeartbeats(0);
+        assertEquals(0.0, detector.phi(node, TimeUnit.HOURS.toNanos(1)));
+    }
+
+    public void testPhiGrowsWithTheSilence() throws Exception
+    {
+        final FailureDetector detector = regularHeartbeats(10);
+        final long last = 9 * INTERVAL;
+        final double onTime = detector.phi(node, last + INTERVAL);
+        final double late = detector.phi(node, last + 2 * INTERVAL);
+        final double silent = detector.phi(node, last + 10 * INTERVAL);
+        assertTrue(onTime < 1);
+        assertTrue(late > onTime);
+        assertTrue(silent > 8);
+        assertTrue(silent >= late);
+    }
+
+    public void testJitterRaisesTheTolerance() throws Exception
+    {
+        final FailureDetector regular = regularHeartbeats(20);
+        final FailureDetector jittery = new FailureDetector(FailureDetector.DEFAULT_WINDOW_SIZE, INTERVAL, 0, INTERVAL / 10);
+        long time = 0;
+        for (int i = 0; i < 20; i++)
+        {
+            time += i % 2 == 0 ? INTERVAL / 2 : INTERVAL * 3 / 2;
+            jittery.heartbeat(node, time);
+        }
+        final long elapsed = INTERVAL * 2;
+        assertTrue(jittery.phi(node, time + elapsed) < regular.phi(node, 19 * INTERVAL + elapsed));
+    }
+
+    public void testAcceptablePauseDelaysTheSuspicion() throws Exception
+    {
+        final FailureDetector detector = new FailureDetector(FailureDetector.DEFAULT_WINDOW_SIZE, INTERVAL, 5 * INTERVAL, INTERVAL / 10);
+        for (int i = 0; i < 10; i++)
+        {
+            detector.heartbeat(node, i * INTERVAL);
+        }
+        assertTrue(detector.phi(node, 9 * INTERVAL + 5 * INTERVAL) < 1);
+        assertTrue(detector.phi(node, 9 * INTERVAL + 10 * INTERVAL) > 8);
+    }
+
+    public void testHeartbeatsClearTheSuspicion() throws Exception
+    {
+        final FailureDetector detector = regularHeartbeats(10);
+        assertTrue(detector.phi(node, 30 * INTERVAL) > 8);
+        detector.heartbeat(node, 30 * INTERVAL);
+        assertTrue(detector.phi(node, 30 * INTERVAL) < 1);
+    }
+
+    public void testRemovedNodesAreForgotten() throws Exception
+    {
+        final FailureDetector detector = regularHeartbeats(10);
+        detector.retainAll(Collections.emptyList());
+        assertEquals(0.0, detector.phi(node, 30 * INTERVAL));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+
+import junit.framework.TestCase;
+
+import java.util.UUID;
+
+public class LocationCacheTest extends TestCase
+{
+    private final NodeAddress node1 = new NodeAddressImpl(UUID.randomUUID());
+    private final NodeAddress node2 = new NodeAddressImpl(UUID.randomUUID());
+
+    private static ActorKey key(String id)
+    {
+        return new ActorKey(1, id);
+    }
+
+    public void testInvalidateOnlyForgetsTheNode() throws Exception
+    {
+        final LocationCache cache = new LocationCache(100);
+        cache.put(key("a"), node1);
+        cache.put(key("b"), node2);
+        cache.invalidate(node1);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(key("a")));
+        assertEquals(node2, cache.get(key("b")));
+        // the invalidated location was dropped when read, and counted as a miss
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        // the locations cached after the invalidation are kept
+        cache.put(key("a"), node1);
+        assertEquals(node1, cache.get(key("a")));
+    }
+
+    public void testPutIfAbsentReplacesInvalidatedLocations() throws Exception
+    {
+        final LocationCache cache = new LocationCache(100);
+        assertTrue(cache.putIfAbsent(key("a"), node1));
+        assertFalse(cache.putIfAbsent(key("a"), node2));
+        assertEquals(node1, cache.get(key("a")));
+        cache.invalidate(node1);
+        assertTrue(cache.putIfAbsent(key("a"), node2));
+        assertEquals(node2, cache.get(key("a")));
+    }
+
+    public void testRemoveMatchesTheLocation() throws Exception
+    {
+        final LocationCache cache = new LocationCache(100);
+        cache.put(key("a"), node1);
+        cache.remove(key("a"), node2);
+        assertEquals(node1, cache.get(key("a")));
+        cache.remove(key("a"), node1);
+        assertNull(cache.get(key("a")));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import junit.framework.TestCase;
+
+public class NodeManifestTest extends TestCase
+{
+    public void testNamesSharingAnIdAreTold() throws Exception
+    {
+        // "Aa" and "BB" have the same hash code, so the interfaces have the same id
+        assertEquals("some.Aa".hashCode(), "some.BB".hashCode());
+        final NodeManifest manifest = new NodeManifest(true, new String[]{ "some.Aa", "other.Actor" });
+        assertEquals((Integer) NodeCapabilities.actorSupported_yes, manifest.canActivate("some.Aa"));
+        assertNull(manifest.canActivate("some.BB"));
+        assertNull(manifest.canActivate("some.Missing"));
+    }
+
+    public void testNestedInterfacesMatch() throws Exception
+    {
+        final NodeManifest manifest = new NodeManifest(true, new String[]{ "some.Outer$Inner", "some.BB", "some.Aa" });
+        assertEquals((Integer) NodeCapabilities.actorSupported_yes, manifest.canActivate("some.Outer$Inner"));
+        assertEquals((Integer) NodeCapabilities.actorSupported_yes, manifest.canActivate("some.Outer.Inner"));
+        assertEquals((Integer) NodeCapabilities.actorSupported_yes, manifest.canActivate("some.BB"));
+        assertEquals((Integer) NodeCapabilities.actorSupported_yes, manifest.canActivate("some.Aa"));
+    }
+
+    public void testNodesWithoutActors() throws Exception
+    {
+        assertEquals((Integer) NodeCapabilities.actorSupported_no, new NodeManifest(false, null).canActivate("some.Aa"));
+        assertNull(new NodeManifest(true, null).canActivate("some.Aa"));
+    }
+}
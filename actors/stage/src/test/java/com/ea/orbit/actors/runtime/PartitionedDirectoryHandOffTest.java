@@ -0,0 +1,182 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.ClusterPeer;
+import com.ea.orbit.actors.cluster.MessageListener;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+import com.ea.orbit.actors.cluster.ViewListener;
+import com.ea.orbit.concurrent.Task;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for the hand-off of the {@link PartitionedDirectory} entries.
+ */
+public class PartitionedDirectoryHandOffTest extends TestCase
+{
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final NodeAddress localAddress = new NodeAddressImpl(UUID.randomUUID());
+    private final NodeAddress newServer = new NodeAddressImpl(UUID.randomUUID());
+    private final NodeAddress otherServer = new NodeAddressImpl(UUID.randomUUID());
+    private final SlowPartition remote = new SlowPartition();
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    public void testEntriesChangedDuringTheHandOffAreKept() throws Exception
+    {
+        final PartitionedDirectory directory = new PartitionedDirectory(new TestExecution(), new TestClusterPeer(), true, 100, 1000);
+        directory.setOwners(Collections.singletonList(localAddress));
+        for (int i = 0; i < 100; i++)
+        {
+            assertNull(directory.putIfAbsentAsync(new ActorKey(1, String.valueOf(i)), localAddress).join());
+        }
+        directory.setOwners(Arrays.asList(localAddress, newServer));
+        final Map<ActorKey, NodeAddress> handedOff = remote.transfers.poll(10, TimeUnit.SECONDS);
+        assertNotNull(handedOff);
+        assertTrue(handedOff.size() > 0 && handedOff.size() < 100);
+
+        // a node with an older view moves the actor while its entry is in transit
+        final ActorKey moved = handedOff.keySet().iterator().next();
+        final List<NodeAddress> results = directory.execute(Arrays.asList(
+                new DirectoryPartition.Request(DirectoryPartition.Operation.REMOVE, moved, localAddress, true),
+                new DirectoryPartition.Request(DirectoryPartition.Operation.PUT_IF_ABSENT, moved, otherServer, true))).join();
+        assertEquals(Arrays.asList(localAddress, null), results);
+        remote.transferred.complete(null);
+
+        // only the entries handed off unchanged are removed
+        assertEquals(100 - handedOff.size() + 1, directory.size());
+        assertEquals(otherServer, directory.getAsync(moved).join());
+    }
+
+    private class TestExecution extends Execution
+    {
+        @Override
+        public ExecutorService getExecutor()
+        {
+            return executor;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        <T> T createReference(final NodeAddress a, final Class<T> iClass, final String id)
+        {
+            assertEquals(newServer, a);
+            return (T) remote;
+        }
+    }
+
+    private class TestClusterPeer implements ClusterPeer
+    {
+        @Override
+        public NodeAddress localAddress()
+        {
+            return localAddress;
+        }
+
+        @Override
+        public void registerViewListener(final ViewListener viewListener)
+        {
+        }
+
+        @Override
+        public void registerMessageReceiver(final MessageListener messageListener)
+        {
+        }
+
+        @Override
+        public void sendMessage(final NodeAddress toAddress, final byte[] message)
+        {
+        }
+
+        @Override
+        public <K, V> ConcurrentMap<K, V> getCache(final String name)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Task<?> join(final String clusterName, final String nodeName)
+        {
+            return Task.done();
+        }
+
+        @Override
+        public void leave()
+        {
+        }
+    }
+
+    /**
+     * The new server, its transfers complete when the test says so.
+     */
+    private static class SlowPartition implements DirectoryPartition
+    {
+        final BlockingQueue<Map<ActorKey, NodeAddress>> transfers = new LinkedBlockingQueue<>();
+        final Task<Void> transferred = new Task<>();
+
+        @Override
+        public Task<List<NodeAddress>> execute(final List<Request> requests)
+        {
+            return Task.fromException(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Task<Void> transfer(final Map<ActorKey, NodeAddress> entries)
+        {
+            transfers.add(entries);
+            return transferred;
+        }
+
+        @Override
+        public Task<Void> handOffCompleted(final NodeAddress previousOwner, final Set<NodeAddress> owners)
+        {
+            return Task.done();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+import com.ea.orbit.actors.runtime.Messaging.PendingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Compares the {@link PendingResponseMap} with the previous ConcurrentHashMap based bookkeeping
+ * with many calls in flight: each thread keeps a window of outstanding calls.
+ * <p>
+ * The first window fits in the ring, the second is twice its capacity, so that half the calls go to the overflow map.
+ * </p>
+ * <p>
+ * Not part of the test suite, run it with its main method.
+ * </p>
+ */
+public class PendingResponseMapBenchmark
+{
+    private static final int THREADS = 8;
+    private static final int[] IN_FLIGHT_PER_THREAD = { 2_000, PendingResponseMap.DEFAULT_CAPACITY * 2 / THREADS };
+    private static final int OPERATIONS = 400_000;
+    // the calls are spread over a few nodes, as the responses are indexed by node
+    private static final int NODES = 4;
+
+    public static void main(String[] args) throws Exception
+    {
+        for (final int inFlight : IN_FLIGHT_PER_THREAD)
+        {
+            // warm up, then the best of a few runs
+            long ring = Long.MAX_VALUE;
+            long hashMap = Long.MAX_VALUE;
+            for (int i = 0; i < 10; i++)
+            {
+                final long ringRun = measureRing(inFlight);
+                final long hashMapRun = measureHashMap(inFlight);
+                if (i >= 5)
+                {
+                    ring = Math.min(ring, ringRun);
+                    hashMap = Math.min(hashMap, hashMapRun);
+                }
+            }
+            System.out.println(String.format("pending response bookkeeping, %d calls in flight, %d threads: ring %d ns/op, ConcurrentHashMap %d ns/op",
+                    THREADS * inFlight, THREADS, ring / OPERATIONS, hashMap / OPERATIONS));
+        }
+    }
+
+    private static long measureRing(final int inFlight) throws InterruptedException
+    {
+        final PendingResponseMap map = new PendingResponseMap();
+        return runWithWindow(inFlight, map::put, r -> map.remove(r.messageId));
+    }
+
+    private static long measureHashMap(final int inFlight) throws InterruptedException
+    {
+        final Map<Integer, PendingResponse> map = new ConcurrentHashMap<>();
+        return runWithWindow(inFlight, r -> map.put(r.messageId, r), r -> map.remove(r.messageId));
+    }
+
+    private static long runWithWindow(final int inFlight, final Consumer<PendingResponse> put, final Consumer<PendingResponse> remove)
+            throws InterruptedException
+    {
+        final NodeAddress[] nodes = new NodeAddress[NODES];
+        for (int n = 0; n < NODES; n++)
+        {
+            nodes[n] = new NodeAddressImpl(UUID.randomUUID());
+        }
+        // the responses are allocated beforehand, only the bookkeeping is measured.
+        final AtomicInteger idGen = new AtomicInteger();
+        final List<PendingResponse[]> perThread = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            final PendingResponse[] responses = new PendingResponse[OPERATIONS / THREADS];
+            for (int i = 0; i < responses.length; i++)
+            {
+                responses[i] = new PendingResponse(idGen.incrementAndGet(), 0, nodes[i % NODES]);
+            }
+            perThread.add(responses);
+        }
+        final long start = System.nanoTime();
+        runConcurrently(t -> {
+            final PendingResponse[] responses = perThread.get(t);
+            for (int i = 0; i < responses.length; i++)
+            {
+                put.accept(responses[i]);
+                if (i >= inFlight)
+                {
+                    remove.accept(responses[i - inFlight]);
+                }
+            }
+            for (int i = Math.max(0, responses.length - inFlight); i < responses.length; i++)
+            {
+                remove.accept(responses[i]);
+            }
+        });
+        return System.nanoTime() - start;
+    }
+
+    private static void runConcurrently(final IntConsumer body) throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++)
+        {
+            final int threadIndex = t;
+            new Thread(() -> {
+                try
+                {
+                    body.accept(threadIndex);
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+    }
+}
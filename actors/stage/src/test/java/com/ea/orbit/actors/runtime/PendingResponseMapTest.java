@@ -0,0 +1,199 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+import com.ea.orbit.actors.runtime.Messaging.PendingResponse;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Test for {@link PendingResponseMap}.
+ */
+public class PendingResponseMapTest extends TestCase
+{
+    public void testPutGetRemove() throws Exception
+    {
+        final PendingResponseMap map = new PendingResponseMap(16);
+        final PendingResponse r1 = new PendingResponse(1, 0);
+        final PendingResponse r2 = new PendingResponse(2, 0);
+        map.put(r1);
+        map.put(r2);
+        assertSame(r1, map.get(1));
+        assertSame(r2, map.get(2));
+        assertNull(map.get(3));
+        assertEquals(2, map.size());
+
+        assertSame(r1, map.remove(1));
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertEquals(1, map.size());
+    }
+
+    public void testCollisionsGoToTheOverflow() throws Exception
+    {
+        final PendingResponseMap map = new PendingResponseMap(4);
+        assertEquals(4, map.capacity());
+        final PendingResponse r1 = new PendingResponse(1, 0);
+        final PendingResponse r5 = new PendingResponse(5, 0);
+        final PendingResponse r9 = new PendingResponse(9, 0);
+        map.put(r1);
+        map.put(r5);
+        map.put(r9);
+        assertEquals(3, map.size());
+
+        assertSame(r5, map.remove(5));
+        assertSame(r1, map.get(1));
+        assertSame(r9, map.get(9));
+        assertSame(r1, map.remove(1));
+        assertSame(r9, map.remove(9));
+        assertEquals(0, map.size());
+    }
+
+    public void testConditionalRemove() throws Exception
+    {
+        final PendingResponseMap map = new PendingResponseMap(4);
+        final PendingResponse old = new PendingResponse(1, 0);
+        final PendingResponse recent = new PendingResponse(1, 0);
+        map.put(recent);
+        assertFalse(map.remove(old));
+        assertSame(recent, map.get(1));
+        assertTrue(map.remove(recent));
+        assertNull(map.get(1));
+    }
+
+    public void testRemoveAllOfANode() throws Exception
+    {
+        final NodeAddress node1 = new NodeAddressImpl(UUID.randomUUID());
+        final NodeAddress node2 = new NodeAddressImpl(UUID.randomUUID());
+        final PendingResponseMap map = new PendingResponseMap(4);
+        final List<PendingResponse> toNode1 = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            // more than the slots, some go to the overflow
+            final PendingResponse r = new PendingResponse(i, 0, i % 2 == 0 ? node1 : node2);
+            map.put(r);
+            if (i % 2 == 0)
+            {
+                toNode1.add(r);
+            }
+        }
+        // answered already
+        assertSame(toNode1.remove(0), map.remove(0));
+
+        final List<PendingResponse> removed = map.removeAll(node1);
+        assertEquals(new HashSet<>(toNode1), new HashSet<>(removed));
+        assertEquals(5, map.size());
+        assertEquals(Collections.emptyList(), map.removeAll(node1));
+        assertEquals(5, map.removeAll(node2).size());
+        assertEquals(0, map.size());
+    }
+
+    public void testNegativeMessageIds() throws Exception
+    {
+        final PendingResponseMap map = new PendingResponseMap(8);
+        final PendingResponse r = new PendingResponse(Integer.MIN_VALUE + 3, 0);
+        map.put(r);
+        assertSame(r, map.remove(Integer.MIN_VALUE + 3));
+    }
+
+    public void testConcurrentUse() throws Exception
+    {
+        final PendingResponseMap map = new PendingResponseMap(1024);
+        final AtomicInteger idGen = new AtomicInteger();
+        final AtomicInteger lost = new AtomicInteger();
+        runConcurrently(8, t -> {
+            for (int i = 0; i < 50_000; i++)
+            {
+                final PendingResponse r = new PendingResponse(idGen.incrementAndGet(), 0);
+                map.put(r);
+                if (map.remove(r.messageId) != r)
+                {
+                    lost.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(0, lost.get());
+        assertEquals(0, map.size());
+    }
+
+    public void testWraparoundWithManyCallsInFlight() throws Exception
+    {
+        // more calls in flight than slots: the ids wrap around the ring and the extra ones overflow
+        final PendingResponseMap map = new PendingResponseMap(16);
+        final int inFlight = 40;
+        final PendingResponse[] responses = new PendingResponse[1000];
+        for (int i = 0; i < responses.length; i++)
+        {
+            responses[i] = new PendingResponse(i, 0);
+            map.put(responses[i]);
+            if (i >= inFlight)
+            {
+                assertSame(responses[i - inFlight], map.remove(i - inFlight));
+            }
+            assertEquals(Math.min(i + 1, inFlight), map.size());
+            assertSame(responses[i], map.get(i));
+        }
+        for (int i = responses.length - inFlight; i < responses.length; i++)
+        {
+            assertSame(responses[i], map.remove(i));
+        }
+        assertEquals(0, map.size());
+    }
+
+    private void runConcurrently(final int threads, final IntConsumer body) throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            final int threadIndex = t;
+            new Thread(() -> {
+                try
+                {
+                    body.accept(threadIndex);
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+    }
+}
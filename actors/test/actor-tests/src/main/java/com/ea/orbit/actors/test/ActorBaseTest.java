@@ -61,6 +61,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.fail;
@@ -166,6 +167,16 @@ public class ActorBaseTest
     }
 
     public Stage createStage() throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+        });
+    }
+
+    /**
+     * Creates a host stage as {@link #createStage()} does, letting the test change its settings
+     * (mode, cluster peer, hosting, messaging...) before it starts.
+     */
+    public Stage createStage(Consumer<Stage> customizer) throws ExecutionException, InterruptedException
     {
         Stage stage = new Stage();
         DependencyRegistry dr = initDependencyRegistry();
@@ -188,6 +199,7 @@ public class ActorBaseTest
         stage.setClock(clock);
         stage.setClusterName(clusterName);
         stage.setClusterPeer(new FakeClusterPeer());
+        customizer.accept(stage);
         stage.start().join();
         stage.bind();
         return stage;
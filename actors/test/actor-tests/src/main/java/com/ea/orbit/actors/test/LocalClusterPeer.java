@@ -0,0 +1,324 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.cluster.ClusterPeer;
+import com.ea.orbit.actors.cluster.MessageListener;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddressImpl;
+import com.ea.orbit.actors.cluster.ViewListener;
+import com.ea.orbit.concurrent.Task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cluster peer that connects stages running in the same JVM, meant for benchmarks.
+ * <p>
+ * Each link between two nodes has a lock-free queue that is drained by a single task at a time,
+ * so the messages between two nodes arrive in the order they were sent, without a thread hop per message.
+ * Optionally the peer simulates the network latency and the bandwidth of the node's link,
+ * a message waiting for its delivery time only holds back the messages of the same link.
+ * </p>
+ */
+public class LocalClusterPeer implements ClusterPeer
+{
+    private static final Logger logger = LoggerFactory.getLogger(LocalClusterPeer.class);
+    // messages delivered before giving the executor thread to other tasks
+    private static final int DRAIN_BATCH_SIZE = 64;
+
+    private ViewListener viewListener;
+    private MessageListener messageListener;
+    private LocalGroup group;
+    private NodeAddress address;
+    private volatile boolean active;
+    private Executor executor = ForkJoinPool.commonPool();
+    private long latencyNanos;
+    private long bandwidth;
+
+    // incoming links, by sender
+    private final ConcurrentMap<NodeAddress, Link> links = new ConcurrentHashMap<>();
+    // when the outgoing link will have sent everything queued so far
+    private final AtomicLong linkBusyUntil = new AtomicLong();
+
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private static class Delivery
+    {
+        final NodeAddress from;
+        final byte[] message;
+        final long deliverAt;
+
+        Delivery(final NodeAddress from, final byte[] message, final long deliverAt)
+        {
+            this.from = from;
+            this.message = message;
+            this.deliverAt = deliverAt;
+        }
+    }
+
+    @Override
+    public Task<?> join(final String clusterName, final String nodeName)
+    {
+        group = LocalGroup.get(clusterName);
+        address = new NodeAddressImpl(UUID.randomUUID());
+        active = true;
+        group.join(this);
+        return Task.done();
+    }
+
+    @Override
+    public void leave()
+    {
+        if (active)
+        {
+            active = false;
+            group.leave(this);
+            links.clear();
+        }
+    }
+
+    void onViewChanged(final List<NodeAddress> newView)
+    {
+        links.keySet().retainAll(newView);
+        if (viewListener != null)
+        {
+            viewListener.onViewChange(newView);
+        }
+    }
+
+    @Override
+    public NodeAddress localAddress()
+    {
+        return address;
+    }
+
+    @Override
+    public void registerViewListener(final ViewListener viewListener)
+    {
+        this.viewListener = viewListener;
+    }
+
+    @Override
+    public void registerMessageReceiver(final MessageListener messageListener)
+    {
+        this.messageListener = messageListener;
+    }
+
+    @Override
+    public void sendMessage(final NodeAddress toAddress, final byte[] message)
+    {
+        final LocalClusterPeer target = group.getMember(toAddress);
+        if (target == null)
+        {
+            logger.error("Error sending message, unknown address: " + toAddress);
+            return;
+        }
+        long deliverAt = 0;
+        if (target != this)
+        {
+            messagesSent.increment();
+            bytesSent.add(message.length);
+            deliverAt = deliveryTime(message.length);
+        }
+        target.receive(new Delivery(address, message, deliverAt));
+    }
+
+    private long deliveryTime(final int length)
+    {
+        if (latencyNanos <= 0 && bandwidth <= 0)
+        {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        long sent = now;
+        if (bandwidth > 0)
+        {
+            final long transmission = TimeUnit.SECONDS.toNanos(length) / bandwidth;
+            long busyUntil;
+            do
+            {
+                busyUntil = linkBusyUntil.get();
+                sent = Math.max(now, busyUntil) + transmission;
+            } while (!linkBusyUntil.compareAndSet(busyUntil, sent));
+        }
+        return sent + latencyNanos;
+    }
+
+    private void receive(final Delivery delivery)
+    {
+        if (!active)
+        {
+            return;
+        }
+        Link link = links.get(delivery.from);
+        if (link == null)
+        {
+            link = links.computeIfAbsent(delivery.from, from -> new Link());
+        }
+        link.add(delivery);
+    }
+
+    private void onDelivery(final Delivery delivery)
+    {
+        if (!address.equals(delivery.from))
+        {
+            messagesReceived.increment();
+            bytesReceived.add(delivery.message.length);
+        }
+        try
+        {
+            messageListener.receive(delivery.from, delivery.message);
+        }
+        catch (Exception ex)
+        {
+            logger.error("Error receiving message", ex);
+        }
+    }
+
+    /**
+     * Messages from one sender, in the order they were sent.
+     */
+    private class Link
+    {
+        private final Queue<Delivery> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        void add(final Delivery delivery)
+        {
+            queue.add(delivery);
+            if (draining.compareAndSet(false, true))
+            {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain()
+        {
+            Delivery delivery;
+            int delivered = 0;
+            while ((delivery = queue.peek()) != null)
+            {
+                if (delivery.deliverAt != 0)
+                {
+                    final long wait = delivery.deliverAt - System.nanoTime();
+                    if (wait > 0)
+                    {
+                        // still draining, resumes when the message "arrives"
+                        LocalGroup.timer.schedule(() -> executor.execute(this::drain), wait, TimeUnit.NANOSECONDS);
+                        return;
+                    }
+                }
+                queue.poll();
+                if (!active)
+                {
+                    continue;
+                }
+                onDelivery(delivery);
+                if (++delivered >= DRAIN_BATCH_SIZE)
+                {
+                    executor.execute(this::drain);
+                    return;
+                }
+            }
+            draining.set(false);
+            // a message might have arrived after the last peek
+            if (!queue.isEmpty() && draining.compareAndSet(false, true))
+            {
+                executor.execute(this::drain);
+            }
+        }
+    }
+
+    @Override
+    public <K, V> ConcurrentMap<K, V> getCache(final String name)
+    {
+        return group.getCache(name);
+    }
+
+    /**
+     * Sets the executor that delivers the messages received by this node, the common pool by default.
+     */
+    public void setExecutor(final Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the time the messages sent by this node take to arrive.
+     */
+    public void setLatency(final long latency, final TimeUnit unit)
+    {
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Limits the bytes per second this node can send, 0 (the default) means no limit.
+     */
+    public void setBandwidth(final long bytesPerSecond)
+    {
+        this.bandwidth = bytesPerSecond;
+    }
+
+    public long getMessagesSent()
+    {
+        return messagesSent.sum();
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent.sum();
+    }
+
+    public long getMessagesReceived()
+    {
+        return messagesReceived.sum();
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived.sum();
+    }
+}
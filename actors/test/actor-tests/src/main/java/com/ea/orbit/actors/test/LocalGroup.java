@@ -0,0 +1,132 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.exception.UncheckedException;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The nodes of a cluster of {@link LocalClusterPeer}s, within the same JVM.
+ * <p>
+ * The members are kept in an immutable map that is replaced when the view changes,
+ * so that sending a message doesn't take any locks.
+ * </p>
+ */
+public class LocalGroup
+{
+    private static LoadingCache<String, LocalGroup> groups = CacheBuilder.newBuilder()
+            .weakValues()
+            .build(new CacheLoader<String, LocalGroup>()
+            {
+                @Override
+                public LocalGroup load(final String key) throws Exception
+                {
+                    return new LocalGroup();
+                }
+            });
+
+    // delays the messages of the peers that simulate latency or bandwidth limits
+    static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "orbit-local-cluster-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Map<NodeAddress, LocalClusterPeer> members = Collections.emptyMap();
+    private final Object topologyMutex = new Object();
+    private final ConcurrentMap<String, ConcurrentMap<?, ?>> caches = new ConcurrentHashMap<>();
+
+    public static LocalGroup get(final String clusterName)
+    {
+        try
+        {
+            return groups.get(clusterName);
+        }
+        catch (ExecutionException e)
+        {
+            throw new UncheckedException(e);
+        }
+    }
+
+    void join(final LocalClusterPeer peer)
+    {
+        synchronized (topologyMutex)
+        {
+            final Map<NodeAddress, LocalClusterPeer> newMembers = new HashMap<>(members);
+            newMembers.put(peer.localAddress(), peer);
+            changeView(newMembers);
+        }
+    }
+
+    void leave(final LocalClusterPeer peer)
+    {
+        synchronized (topologyMutex)
+        {
+            final Map<NodeAddress, LocalClusterPeer> newMembers = new HashMap<>(members);
+            if (newMembers.remove(peer.localAddress()) != null)
+            {
+                changeView(newMembers);
+            }
+        }
+    }
+
+    private void changeView(final Map<NodeAddress, LocalClusterPeer> newMembers)
+    {
+        members = Collections.unmodifiableMap(newMembers);
+        final List<NodeAddress> newView = new ArrayList<>(newMembers.keySet());
+        // the views are installed one at a time, in the same order in all the nodes
+        newMembers.values().forEach(p -> p.onViewChanged(newView));
+    }
+
+    LocalClusterPeer getMember(final NodeAddress address)
+    {
+        return members.get(address);
+    }
+
+    @SuppressWarnings("unchecked")
+    <K, V> ConcurrentMap<K, V> getCache(final String name)
+    {
+        return (ConcurrentMap<K, V>) caches.computeIfAbsent(name, k -> new ConcurrentHashMap<>());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AffinityTest extends ActorBaseTest
+{
+    public interface Player extends Actor
+    {
+        Task<String> getNodeId();
+
+        Task<String> getSessionNodeId();
+    }
+
+    public interface Session extends Actor
+    {
+        Task<String> getNodeId();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class PlayerActor extends AbstractActor implements Player
+    {
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+
+        @Override
+        public Task<String> getSessionNodeId()
+        {
+            return Actor.getReference(Session.class, actorIdentity()).getNodeId();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class SessionActor extends AbstractActor implements Session
+    {
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+    }
+
+    @Test
+    public void calleesAreActivatedNextToTheirCaller() throws ExecutionException, InterruptedException
+    {
+        Stage stage1 = createStage();
+        Stage stage2 = createStage();
+        stage1.getHosting().setAffinitySampleRate(1);
+        stage2.getHosting().setAffinitySampleRate(1);
+        awaitFor(() -> stage1.getAllNodes().size() == 2 && stage2.getAllNodes().size() == 2);
+
+        stage1.bind();
+        for (int i = 0; i < 20; i++)
+        {
+            Player player = Actor.getReference(Player.class, String.valueOf(i));
+            assertEquals(player.getNodeId().join(), player.getSessionNodeId().join());
+        }
+        assertTrue(stage1.getAffinityPlacements() + stage2.getAffinityPlacements() >= 20);
+    }
+
+    @Test
+    public void noAffinityByDefault() throws ExecutionException, InterruptedException
+    {
+        Stage stage1 = createStage();
+        Stage stage2 = createStage();
+        awaitFor(() -> stage1.getAllNodes().size() == 2 && stage2.getAllNodes().size() == 2);
+
+        stage1.bind();
+        for (int i = 0; i < 20; i++)
+        {
+            Actor.getReference(Player.class, String.valueOf(i)).getSessionNodeId().join();
+        }
+        assertEquals(0, stage1.getAffinityPlacements() + stage2.getAffinityPlacements());
+    }
+}
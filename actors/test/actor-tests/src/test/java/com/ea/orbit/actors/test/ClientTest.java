@@ -50,6 +50,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("unused")
@@ -113,6 +114,25 @@ public class ClientTest extends ActorBaseTest
         expectException(() -> player.sayHello("meh"));
     }
 
+    @Test
+    public void pendingCallsWaitForAServer() throws ExecutionException, InterruptedException
+    {
+        Stage client = createClient();
+        List<Task<String>> calls = new ArrayList<>();
+        // more pending placements than execution threads
+        for (int i = 0; i < 200; i++)
+        {
+            calls.add(Actor.getReference(SomeActor.class, String.valueOf(i)).sayHello("hi"));
+        }
+        assertFalse(calls.get(0).isDone());
+        createStage();
+        client.bind();
+        for (Task<String> call : calls)
+        {
+            assertEquals("bla", call.join());
+        }
+    }
+
 	@Test
     public void ensureNoObjectsAreCreatedClientTest() throws ExecutionException, InterruptedException
     {
@@ -0,0 +1,113 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.Messaging;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionTest extends ActorBaseTest
+{
+    public interface Echo extends Actor
+    {
+        Task<byte[]> echo(byte[] data);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class EchoActor extends AbstractActor implements Echo
+    {
+        @Override
+        public Task<byte[]> echo(final byte[] data)
+        {
+            return Task.fromValue(data);
+        }
+    }
+
+    public Stage createStage(Stage.StageMode mode, int compressionThreshold) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            final Messaging messaging = new Messaging();
+            messaging.setCompressionThreshold(compressionThreshold);
+            stage.setMessaging(messaging);
+            stage.setMode(mode);
+        });
+    }
+
+    @Test
+    public void largePayloadsAreCompressed() throws ExecutionException, InterruptedException
+    {
+        Stage stage = createStage(Stage.StageMode.HOST, 1024);
+        Stage client = createStage(Stage.StageMode.FRONT_END, 1024);
+        Echo echo = Actor.getReference(Echo.class, "1");
+
+        final byte[] small = new byte[100];
+        // the first call lets the nodes learn that the other accepts compression
+        assertArrayEquals(small, echo.echo(small).join());
+        assertEquals(0, client.getMessagesCompressed());
+        // the manifests list the actor interfaces, they can be compressed too
+        awaitFor(() -> client.getHosting().getNodeManifest(stage.getClusterPeer().localAddress()) != null
+                && stage.getHosting().getNodeManifest(client.getClusterPeer().localAddress()) != null);
+        final long stageCompressed = stage.getMessagesCompressed();
+
+        final byte[] large = new byte[100_000];
+        Arrays.fill(large, 0, 50_000, (byte) 7);
+        assertArrayEquals(large, echo.echo(large).join());
+        assertEquals(1, client.getMessagesCompressed());
+        assertEquals(stageCompressed + 1, stage.getMessagesCompressed());
+        assertTrue(client.getCompressionRatio() < 0.5);
+    }
+
+    @Test
+    public void noCompressionUnlessBothSidesEnableIt() throws ExecutionException, InterruptedException
+    {
+        Stage stage = createStage(Stage.StageMode.HOST, 0);
+        Stage client = createStage(Stage.StageMode.FRONT_END, 1024);
+        Echo echo = Actor.getReference(Echo.class, "1");
+
+        final byte[] large = new byte[100_000];
+        for (int i = 0; i < 3; i++)
+        {
+            assertArrayEquals(large, echo.echo(large).join());
+        }
+        assertEquals(0, client.getMessagesCompressed());
+        assertEquals(0, stage.getMessagesCompressed());
+    }
+}
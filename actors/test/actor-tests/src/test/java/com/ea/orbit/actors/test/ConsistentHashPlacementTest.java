@@ -0,0 +1,139 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Addressable;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.ActorKey;
+import com.ea.orbit.actors.runtime.Hosting;
+import com.ea.orbit.actors.test.actors.SomeActor;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashPlacementTest extends ActorBaseTest
+{
+    public Stage createStage(Stage.StageMode mode) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            final Hosting hosting = new Hosting();
+            hosting.setPlacement(Hosting.PlacementMode.CONSISTENT_HASH);
+            stage.setHosting(hosting);
+            stage.setMode(mode);
+        });
+    }
+
+    @Test
+    public void callersAgreeWithoutTheDirectory() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST);
+        final Stage stage2 = createStage(Stage.StageMode.HOST);
+        final Stage client1 = createStage(Stage.StageMode.FRONT_END);
+        final Stage client2 = createStage(Stage.StageMode.FRONT_END);
+        // the views are updated asynchronously
+        awaitFor(() -> Stream.of(stage1, stage2, client1, client2).allMatch(s -> s.getAllNodes().size() == 4));
+
+        final Map<String, UUID> activations = new HashMap<>();
+        client1.bind();
+        for (int i = 0; i < 30; i++)
+        {
+            activations.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+        }
+        for (Stage caller : new Stage[]{ client2, stage1, stage2 })
+        {
+            caller.bind();
+            for (int i = 0; i < 30; i++)
+            {
+                assertEquals(activations.get(String.valueOf(i)),
+                        Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+            }
+        }
+        // no directory entries for these actors
+        final ConcurrentMap<Object, Object> directory = stage1.getClusterPeer().getCache("distributedDirectory");
+        for (int i = 0; i < 30; i++)
+        {
+            assertFalse(directory.containsKey(ActorKey.of((Addressable) Actor.getReference(SomeActor.class, String.valueOf(i)))));
+        }
+        // no caller sent messages to the wrong server
+        assertEquals(0, stage1.getMessagesForwarded() + stage2.getMessagesForwarded());
+    }
+
+    @Test
+    public void actorsStayWhenTheRingChanges() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST);
+        final Stage client1 = createStage(Stage.StageMode.FRONT_END);
+        awaitFor(() -> Stream.of(stage1, client1).allMatch(s -> s.getAllNodes().size() == 2));
+
+        final Map<String, UUID> activations = new HashMap<>();
+        for (int i = 0; i < 30; i++)
+        {
+            activations.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+        }
+
+        final Stage stage2 = createStage(Stage.StageMode.HOST);
+        // the first server registers the actors whose ring owner changed
+        final ConcurrentMap<Object, Object> directory = stage1.getClusterPeer().getCache("distributedDirectory");
+        awaitFor(() -> {
+            final int size = directory.size();
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+                return false;
+            }
+            return size > 0 && size == directory.size();
+        });
+
+        // a new caller still reaches the existing activations
+        final Stage client2 = createStage(Stage.StageMode.FRONT_END);
+        client2.bind();
+        for (int i = 0; i < 30; i++)
+        {
+            assertEquals(activations.get(String.valueOf(i)),
+                    Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+        }
+        // the new ring owner sent the messages of the moved actors to the first server
+        assertTrue(stage2.getMessagesForwarded() > 0);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.Messaging;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeLaneTest extends ActorBaseTest
+{
+    public interface Sequence extends Actor
+    {
+        Task<Void> add(int value);
+
+        Task<List<Integer>> getValues();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class SequenceActor extends AbstractActor implements Sequence
+    {
+        private final List<Integer> values = new ArrayList<>();
+
+        @Override
+        public Task<Void> add(final int value)
+        {
+            values.add(value);
+            return Task.done();
+        }
+
+        @Override
+        public Task<List<Integer>> getValues()
+        {
+            return Task.fromValue(values);
+        }
+    }
+
+    public Stage createStage(Stage.StageMode mode, int decodeThreads) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            final Messaging messaging = new Messaging();
+            messaging.setDecodeThreads(decodeThreads);
+            stage.setMessaging(messaging);
+            stage.setMode(mode);
+            // the local peer keeps the order of the messages between two nodes
+            stage.setClusterPeer(new LocalClusterPeer());
+        });
+    }
+
+    @Test
+    public void requestsFromOneNodeKeepTheirOrder() throws ExecutionException, InterruptedException
+    {
+        final Stage host = createStage(Stage.StageMode.HOST, 2);
+        final Stage client = createStage(Stage.StageMode.FRONT_END, 2);
+        client.bind();
+        final Sequence sequence = Actor.getReference(Sequence.class, "0");
+        sequence.add(-1).join();
+
+        final List<Task<Void>> calls = IntStream.range(0, 500).mapToObj(sequence::add).collect(Collectors.toList());
+        Task.allOf(calls).join();
+
+        final List<Integer> values = sequence.getValues().join();
+        assertEquals(501, values.size());
+        for (int i = 0; i < 500; i++)
+        {
+            assertEquals(i, (int) values.get(i + 1));
+        }
+        assertTrue(host.getDecodeBatches() > 0);
+    }
+
+    @Test
+    public void decodingInTheMessagingExecutor() throws ExecutionException, InterruptedException
+    {
+        final Stage host = createStage(Stage.StageMode.HOST, 0);
+        final Stage client = createStage(Stage.StageMode.FRONT_END, 0);
+        client.bind();
+        final Sequence sequence = Actor.getReference(Sequence.class, "0");
+        sequence.add(1).join();
+        assertEquals(1, sequence.getValues().join().size());
+        assertEquals(0, host.getDecodeBatches());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.test.actors.SomeActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryCoalescingTest extends ActorBaseTest
+{
+    @Test
+    public void concurrentLookupsShareOneResolution() throws ExecutionException, InterruptedException
+    {
+        Stage client = createClient();
+        client.bind();
+        SomeActor actor = Actor.getReference(SomeActor.class, "coalesced");
+        List<Task<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+        {
+            calls.add(actor.sayHello("hi"));
+        }
+        // the first lookup waits for a server, the others join it.
+        assertTrue(client.getDirectoryLookupsCoalesced() >= 49);
+
+        createStage();
+        for (Task<String> call : calls)
+        {
+            assertEquals("bla", call.join());
+        }
+    }
+
+    @Test
+    public void lookupsOfDifferentActorsAreNotCoalesced() throws ExecutionException, InterruptedException
+    {
+        createStage();
+        Stage client = createClient();
+        client.bind();
+        for (int i = 0; i < 20; i++)
+        {
+            assertEquals("bla", Actor.getReference(SomeActor.class, String.valueOf(i)).sayHello("hi").join());
+        }
+        assertEquals(0, client.getDirectoryLookupsCoalesced());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.Hosting;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FailureDetectionTest extends ActorBaseTest
+{
+    public interface Locator extends Actor
+    {
+        Task<String> getNodeId();
+
+        Task<String> getActivationId();
+    }
+
+    public static class LocatorActor extends AbstractActor implements Locator
+    {
+        private final String activationId = UUID.randomUUID().toString();
+
+        @Override
+        public Task<String> getActivationId()
+        {
+            return Task.fromValue(activationId);
+        }
+
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+    }
+
+    /**
+     * Drops all messages while frozen, like a node that hangs without leaving the cluster view.
+     */
+    public static class FreezablePeer extends FakeClusterPeer
+    {
+        volatile boolean frozen;
+
+        @Override
+        public void onMessageReceived(final NodeAddress from, final byte[] buff)
+        {
+            if (!frozen)
+            {
+                super.onMessageReceived(from, buff);
+            }
+        }
+
+        @Override
+        public void sendMessage(final NodeAddress to, final byte[] message)
+        {
+            if (!frozen)
+            {
+                super.sendMessage(to, message);
+            }
+        }
+    }
+
+    public Stage createStage(Stage.StageMode mode, FakeClusterPeer peer) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            final Hosting hosting = new Hosting();
+            hosting.setHeartbeatIntervalMillis(50);
+            hosting.setAcceptableHeartbeatPauseMillis(500);
+            stage.setHosting(hosting);
+            stage.setMode(mode);
+            stage.setClusterPeer(peer);
+        });
+    }
+
+    private Locator activateOn(final Stage stage)
+    {
+        for (int i = 0; ; i++)
+        {
+            final Locator candidate = Actor.getReference(Locator.class, String.valueOf(i));
+            if (stage.runtimeIdentity().equals(candidate.getNodeId().join()))
+            {
+                return candidate;
+            }
+        }
+    }
+
+    @Test
+    public void callsToAHungNodeFailFast() throws ExecutionException, InterruptedException
+    {
+        final FreezablePeer hungPeer = new FreezablePeer();
+        final Stage hung = createStage(Stage.StageMode.HOST, hungPeer);
+        final Stage healthy = createStage(Stage.StageMode.HOST, new FakeClusterPeer());
+        final Stage client = createStage(Stage.StageMode.FRONT_END, new FakeClusterPeer());
+        final NodeAddress hungAddress = hungPeer.localAddress();
+        awaitFor(() -> client.getAllNodes().size() == 3);
+
+        client.bind();
+        final Locator locator = activateOn(hung);
+
+        // nodes that never sent a heartbeat are not suspected
+        Thread.sleep(500);
+        hungPeer.frozen = true;
+        final long start = System.nanoTime();
+        final Task<String> call = locator.getNodeId();
+        expectException(call::join);
+        // well before the response timeout
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertTrue(client.getNodesSuspected() > 0);
+        assertTrue(!client.getHosting().isReachable(hungAddress));
+
+        // new activations skip the unreachable node
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(healthy.runtimeIdentity(), Actor.getReference(Locator.class, "new" + i).getNodeId().join());
+        }
+
+        hungPeer.frozen = false;
+        awaitFor(() -> client.getHosting().isReachable(hungAddress) && healthy.getHosting().isReachable(hungAddress));
+        assertEquals(1, client.getNodesSuspected());
+    }
+
+    @Test
+    public void suspectedNodesKeepTheirActors() throws ExecutionException, InterruptedException
+    {
+        final FreezablePeer pausedPeer = new FreezablePeer();
+        final Stage paused = createStage(Stage.StageMode.HOST, pausedPeer);
+        createStage(Stage.StageMode.HOST, new FakeClusterPeer());
+        final Stage client = createStage(Stage.StageMode.FRONT_END, new FakeClusterPeer());
+        final NodeAddress pausedAddress = pausedPeer.localAddress();
+        awaitFor(() -> client.getAllNodes().size() == 3);
+
+        client.bind();
+        final Locator locator = activateOn(paused);
+        final String activationId = locator.getActivationId().join();
+
+        Thread.sleep(500);
+        pausedPeer.frozen = true;
+        awaitFor(() -> !client.getHosting().isReachable(pausedAddress));
+        // the actor isn't activated somewhere else while its node might still be alive
+        expectException(() -> locator.getNodeId().join());
+        expectException(() -> locator.getNodeId().join());
+
+        pausedPeer.frozen = false;
+        awaitFor(() -> client.getHosting().isReachable(pausedAddress));
+        assertEquals(paused.runtimeIdentity(), locator.getNodeId().join());
+        assertEquals(activationId, locator.getActivationId().join());
+    }
+
+    @Test
+    public void regularHeartbeatsKeepNodesReachable() throws ExecutionException, InterruptedException
+    {
+        final Stage host1 = createStage(Stage.StageMode.HOST, new FakeClusterPeer());
+        final Stage host2 = createStage(Stage.StageMode.HOST, new FakeClusterPeer());
+        final Stage client = createStage(Stage.StageMode.FRONT_END, new FakeClusterPeer());
+        awaitFor(() -> client.getAllNodes().size() == 3);
+        Thread.sleep(1000);
+        assertEquals(0, host1.getNodesSuspected());
+        assertEquals(0, host2.getNodesSuspected());
+        assertEquals(0, client.getNodesSuspected());
+        assertTrue(client.getHosting().isReachable(host1.getClusterPeer().localAddress()));
+    }
+}
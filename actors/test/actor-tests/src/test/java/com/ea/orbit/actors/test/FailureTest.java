@@ -30,21 +30,45 @@ package com.ea.orbit.actors.test;
 
 
 import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Addressable;
 import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.AbstractActor;
 import com.ea.orbit.actors.test.actors.SomeActor;
+import com.ea.orbit.concurrent.Task;
 
 import org.junit.Test;
 
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FailureTest extends ActorBaseTest
 {
     String clusterName = "cluster." + Math.random() + "." + getClass().getSimpleName();
 
+    public interface Blocker extends Actor
+    {
+        Task<String> block();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class BlockerActor extends AbstractActor implements Blocker
+    {
+        @Override
+        public Task<String> block()
+        {
+            // never completes
+            return new Task<>();
+        }
+    }
+
     @Test
     public void nodeDropTest() throws ExecutionException, InterruptedException
     {
@@ -80,4 +104,29 @@ public class FailureTest extends ActorBaseTest
 
     }
 
+    @Test
+    public void pendingCallsFailWhenTheNodeLeaves() throws ExecutionException, InterruptedException, TimeoutException
+    {
+        Stage stage = createStage();
+        Stage client = createClient();
+
+        final Blocker blocker = Actor.getReference(Blocker.class, "1");
+        final Task<String> call = blocker.block();
+        awaitFor(() -> client.getHosting().locateActor((Addressable) blocker, false).join() != null);
+
+        stage.getClusterPeer().leave();
+
+        // fails without waiting for the response timeout, the fake clock never advances
+        try
+        {
+            call.get(10, TimeUnit.SECONDS);
+            fail("expecting an exception");
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause().getMessage().contains("Node left the cluster"));
+        }
+        // the location of the actor was forgotten
+        assertNull(client.getHosting().locateActor((Addressable) blocker, false).join());
+    }
 }
@@ -0,0 +1,149 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.Messaging;
+import com.ea.orbit.actors.runtime.OverloadException;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlowControlTest extends ActorBaseTest
+{
+    private static CompletableFuture<String> gate;
+
+    public interface Gated extends Actor
+    {
+        Task<String> ping();
+
+        Task<String> pass();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class GatedActor extends AbstractActor implements Gated
+    {
+        @Override
+        public Task<String> ping()
+        {
+            return Task.fromValue("pong");
+        }
+
+        @Override
+        public Task<String> pass()
+        {
+            return Task.from(gate);
+        }
+    }
+
+    public Stage createStage(Stage.StageMode mode, int window, int queueSize) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            final Messaging messaging = new Messaging();
+            messaging.setFlowControlWindow(window);
+            messaging.setFlowControlQueueSize(queueSize);
+            stage.setMessaging(messaging);
+            stage.setMode(mode);
+        });
+    }
+
+    @Test
+    public void callsWaitForCreditsThenFailFast() throws Exception
+    {
+        gate = new CompletableFuture<>();
+        Stage host = createStage(Stage.StageMode.HOST, 2, 3);
+        Stage client = createStage(Stage.StageMode.FRONT_END, 2, 3);
+        // the manifest request would take one of the credits
+        awaitFor(() -> client.getHosting().getNodeManifest(host.getClusterPeer().localAddress()) != null);
+        Gated gated = Actor.getReference(Gated.class, "1");
+        assertEquals("pong", gated.ping().join());
+
+        // two calls in flight, three waiting for credits
+        final List<Task<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            calls.add(gated.pass());
+        }
+        awaitFor(() -> client.getMessagesThrottled() == 3);
+
+        // the local queue is full
+        try
+        {
+            gated.pass().get(10, TimeUnit.SECONDS);
+            fail("expecting an exception");
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof OverloadException);
+        }
+        assertEquals(1, client.getMessagesOverloaded());
+
+        // the queued calls are sent as the responses return the credits
+        gate.complete("ok");
+        for (Task<String> call : calls)
+        {
+            assertEquals("ok", call.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(3, client.getMessagesThrottled());
+    }
+
+    @Test
+    public void noFlowControlByDefault() throws Exception
+    {
+        gate = new CompletableFuture<>();
+        createStage(Stage.StageMode.HOST, 0, 3);
+        Stage client = createStage(Stage.StageMode.FRONT_END, 0, 3);
+        Gated gated = Actor.getReference(Gated.class, "1");
+        final List<Task<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            calls.add(gated.pass());
+        }
+        gate.complete("ok");
+        for (Task<String> call : calls)
+        {
+            assertEquals("ok", call.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(0, client.getMessagesThrottled());
+        assertEquals(0, client.getMessagesOverloaded());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Addressable;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.test.actors.SomeActor;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ForwardingTest extends ActorBaseTest
+{
+    @Test
+    public void misroutedMessagesAreForwardedToTheOwner() throws ExecutionException, InterruptedException
+    {
+        Stage stage1 = createStage();
+        Stage stage2 = createStage();
+
+        stage1.bind();
+        final String ownerIdentity = Actor.getReference(SomeActor.class, "fwd").getNodeId().join();
+        final Stage owner = ownerIdentity.equals(stage1.runtimeIdentity()) ? stage1 : stage2;
+        final Stage other = owner == stage1 ? stage2 : stage1;
+        // as if it had hosted the actor before
+        other.getHosting().canActivate(SomeActor.class.getName()).join();
+
+        // a caller with an outdated location for the actor
+        Stage caller = createClient();
+        caller.bind();
+        final SomeActor actor = Actor.getReference(SomeActor.class, "fwd");
+        caller.getHosting().moved((Addressable) actor, null, other.getClusterPeer().localAddress());
+
+        // no duplicate activation
+        assertEquals(ownerIdentity, actor.getNodeId().join());
+        assertEquals(1, other.getMessagesForwarded());
+
+        // the location hint fixes the caller's cache
+        awaitFor(() -> owner.getClusterPeer().localAddress().equals(caller.getHosting().locateActor((Addressable) actor, false).join()));
+        assertEquals(ownerIdentity, actor.getNodeId().join());
+        assertEquals(1, other.getMessagesForwarded());
+    }
+
+    @Test
+    public void placedActorsAreNotCheckedAgain() throws ExecutionException, InterruptedException
+    {
+        Stage stage1 = createStage();
+        Stage stage2 = createStage();
+        Stage caller = createClient();
+        caller.bind();
+        for (int i = 0; i < 10; i++)
+        {
+            Actor.getReference(SomeActor.class, "placed" + i).getNodeId().join();
+        }
+        // the caller resolved the locations in the directory, the servers trust them
+        assertEquals(0, stage1.getHosting().getActivationClaimCount() + stage2.getHosting().getActivationClaimCount());
+
+        // a location taken from the cache is checked
+        final SomeActor actor = Actor.getReference(SomeActor.class, "cached");
+        caller.getHosting().moved((Addressable) actor, null, stage1.getClusterPeer().localAddress());
+        actor.getNodeId().join();
+        assertEquals(1, stage1.getHosting().getActivationClaimCount());
+    }
+}
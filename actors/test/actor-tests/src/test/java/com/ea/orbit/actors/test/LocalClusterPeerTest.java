@@ -0,0 +1,125 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.test.actors.SomeActor;
+
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalClusterPeerTest extends ActorBaseTest
+{
+    public Stage createStage(Stage.StageMode mode, LocalClusterPeer clusterPeer) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            stage.setMode(mode);
+            stage.setClusterPeer(clusterPeer);
+        });
+    }
+
+    @Test
+    public void stagesTalkThroughTheLocalPeer() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST, new LocalClusterPeer());
+        final Stage stage2 = createStage(Stage.StageMode.HOST, new LocalClusterPeer());
+        final LocalClusterPeer clientPeer = new LocalClusterPeer();
+        final Stage client = createStage(Stage.StageMode.FRONT_END, clientPeer);
+        awaitFor(() -> Stream.of(stage1, stage2, client).allMatch(s -> s.getAllNodes().size() == 3));
+
+        final Map<String, UUID> activations = new HashMap<>();
+        client.bind();
+        for (int i = 0; i < 30; i++)
+        {
+            activations.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+        }
+        for (Stage caller : new Stage[]{ stage1, stage2 })
+        {
+            caller.bind();
+            for (int i = 0; i < 30; i++)
+            {
+                assertEquals(activations.get(String.valueOf(i)),
+                        Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+            }
+        }
+        assertTrue(clientPeer.getMessagesSent() >= 30);
+        assertTrue(clientPeer.getBytesSent() > 0);
+        assertTrue(clientPeer.getMessagesReceived() >= 30);
+    }
+
+    @Test
+    public void latencyDelaysTheMessages() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST, new LocalClusterPeer());
+        final LocalClusterPeer clientPeer = new LocalClusterPeer();
+        clientPeer.setLatency(50, TimeUnit.MILLISECONDS);
+        final Stage client = createStage(Stage.StageMode.FRONT_END, clientPeer);
+        awaitFor(() -> Stream.of(stage1, client).allMatch(s -> s.getAllNodes().size() == 2));
+
+        client.bind();
+        Actor.getReference(SomeActor.class, "0").getUniqueActivationId().join();
+        final long start = System.nanoTime();
+        Actor.getReference(SomeActor.class, "0").getUniqueActivationId().join();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void slowLinksDontHoldBackOtherSenders() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST, new LocalClusterPeer());
+        final LocalClusterPeer slowPeer = new LocalClusterPeer();
+        slowPeer.setLatency(1, TimeUnit.SECONDS);
+        final Stage slowClient = createStage(Stage.StageMode.FRONT_END, slowPeer);
+        final Stage fastClient = createStage(Stage.StageMode.FRONT_END, new LocalClusterPeer());
+        awaitFor(() -> Stream.of(stage1, slowClient, fastClient).allMatch(s -> s.getAllNodes().size() == 3));
+        fastClient.bind();
+        Actor.getReference(SomeActor.class, "fast").getUniqueActivationId().join();
+
+        slowClient.bind();
+        final Task<UUID> slowCall = Actor.getReference(SomeActor.class, "slow").getUniqueActivationId();
+        fastClient.bind();
+        Actor.getReference(SomeActor.class, "fast").getUniqueActivationId().join();
+        assertFalse(slowCall.isDone());
+        slowCall.join();
+    }
+}
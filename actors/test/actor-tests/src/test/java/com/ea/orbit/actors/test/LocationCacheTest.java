@@ -0,0 +1,96 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Addressable;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.Hosting;
+import com.ea.orbit.actors.test.actors.SomeActor;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocationCacheTest extends ActorBaseTest
+{
+    public Stage createClient(long locationCacheSize) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            final Hosting hosting = new Hosting();
+            hosting.setLocationCacheSize(locationCacheSize);
+            stage.setHosting(hosting);
+            stage.setMode(Stage.StageMode.FRONT_END);
+        });
+    }
+
+    @Test
+    public void cacheIsBounded() throws ExecutionException, InterruptedException
+    {
+        createStage();
+        Stage client = createClient(10);
+        for (int i = 0; i < 30; i++)
+        {
+            Actor.getReference(SomeActor.class, String.valueOf(i)).sayHello("hi").join();
+        }
+        assertTrue(client.getLocationCacheSize() <= 10);
+        assertTrue(client.getLocationCacheEvictions() >= 20);
+
+        final long hits = client.getLocationCacheHits();
+        Actor.getReference(SomeActor.class, "29").sayHello("hi").join();
+        assertTrue(client.getLocationCacheHits() > hits);
+        assertTrue(client.getLocationCacheMisses() >= 30);
+    }
+
+    @Test
+    public void locationsAreDroppedWithTheNode() throws ExecutionException, InterruptedException
+    {
+        Stage stage = createStage();
+        Stage client = createClient(1000);
+        for (int i = 0; i < 5; i++)
+        {
+            Actor.getReference(SomeActor.class, String.valueOf(i)).sayHello("hi").join();
+        }
+        assertEquals(5, client.getLocationCacheSize());
+
+        stage.getClusterPeer().leave();
+        // the locations on the node are dropped when they are next read
+        awaitFor(() -> {
+            for (int i = 0; i < 5; i++)
+            {
+                client.getHosting().locateActor((Addressable) Actor.getReference(SomeActor.class, String.valueOf(i)), false).join();
+            }
+            return client.getLocationCacheSize() == 0;
+        });
+    }
+}
@@ -0,0 +1,84 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.cluster.MessageClass;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.test.actors.SomeActor;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertTrue;
+
+public class MessageClassTest extends ActorBaseTest
+{
+    private static class RecordingClusterPeer extends FakeClusterPeer
+    {
+        final Set<MessageClass> sent = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void sendMessage(final NodeAddress to, final byte[] message, final MessageClass messageClass)
+        {
+            sent.add(messageClass);
+            super.sendMessage(to, message, messageClass);
+        }
+    }
+
+    public Stage createStage(Stage.StageMode mode, RecordingClusterPeer clusterPeer) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            stage.setMode(mode);
+            stage.setClusterPeer(clusterPeer);
+        });
+    }
+
+    @Test
+    public void messagesAreClassified() throws ExecutionException, InterruptedException
+    {
+        final RecordingClusterPeer serverPeer = new RecordingClusterPeer();
+        final RecordingClusterPeer clientPeer = new RecordingClusterPeer();
+        createStage(Stage.StageMode.HOST, serverPeer);
+        final Stage client = createStage(Stage.StageMode.FRONT_END, clientPeer);
+
+        client.bind();
+        Actor.getReference(SomeActor.class, "0").sayHello("hi").join();
+
+        // the client asks the server if it can activate the actor, then calls it
+        assertTrue(clientPeer.sent.containsAll(EnumSet.of(MessageClass.SYSTEM, MessageClass.REQUEST)));
+        assertTrue(serverPeer.sent.contains(MessageClass.RESPONSE));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.annotation.NodeSelection;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.NodeLoad;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+
+public class NodeSelectionTest extends ActorBaseTest
+{
+    @NodeSelection(NodeSelection.Strategy.LEAST_LOADED)
+    public interface LeastLoaded extends Actor
+    {
+        Task<String> getNodeId();
+    }
+
+    @NodeSelection(NodeSelection.Strategy.POWER_OF_TWO_CHOICES)
+    public interface TwoChoices extends Actor
+    {
+        Task<String> getNodeId();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class LeastLoadedActor extends AbstractActor implements LeastLoaded
+    {
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class TwoChoicesActor extends AbstractActor implements TwoChoices
+    {
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+    }
+
+    @Test
+    public void loadIsReported() throws ExecutionException, InterruptedException
+    {
+        Stage stage = createStage();
+        Stage client = createClient();
+        final NodeAddress stageAddress = stage.getClusterPeer().localAddress();
+        awaitFor(() -> client.getAllNodes().size() == 2);
+
+        stage.getHosting().reportLoad();
+        awaitFor(() -> client.getHosting().getNodeLoad(stageAddress) != null);
+        // clients don't report
+        client.getHosting().reportLoad();
+        assertEquals(null, stage.getHosting().getNodeLoad(client.getClusterPeer().localAddress()));
+    }
+
+    @Test
+    public void newActivationsAvoidTheLoadedServer() throws ExecutionException, InterruptedException
+    {
+        Stage busy = createStage();
+        Stage idle = createStage();
+        Stage client = createClient();
+        awaitFor(() -> client.getAllNodes().size() == 3);
+        // fake a heavy load report from the busy server
+        client.getHosting().loadReport(busy.getClusterPeer().localAddress(), new NodeLoad(100_000, 1000, 0, 0.5f));
+
+        client.bind();
+        for (int i = 0; i < 20; i++)
+        {
+            assertEquals(idle.runtimeIdentity(), Actor.getReference(LeastLoaded.class, String.valueOf(i)).getNodeId().join());
+            assertEquals(idle.runtimeIdentity(), Actor.getReference(TwoChoices.class, String.valueOf(i)).getNodeId().join());
+        }
+    }
+}
@@ -36,6 +36,9 @@ import com.ea.orbit.exception.UncheckedException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
 
 public class OnlyIfActivatedTest extends ActorBaseTest
@@ -61,9 +64,27 @@ public class OnlyIfActivatedTest extends ActorBaseTest
         assertEquals(5, OnlyIfActivatedActor.accessCount);
     }
 
+    @Test
+    public void remoteActorsAreAskedIfTheyAreActive() throws ExecutionException, InterruptedException
+    {
+        Stage client = createClient();
+        OnlyIfActivated only = Actor.getReference(OnlyIfActivated.class, "235");
+        only.makeActiveNow().join();
+        only.doSomethingSpecial("A").join();
+        assertEquals(1, OnlyIfActivatedActor.accessCount);
+
+        // the client still knows where the actor was, but it's no longer active
+        clock.incrementTimeMillis(TimeUnit.MINUTES.toMillis(60));
+        stage.cleanup(true);
+        client.bind();
+        only.doSomethingSpecial("A").join();
+        assertEquals(1, OnlyIfActivatedActor.accessCount);
+    }
+
     @Before
     public void initializeStage()
     {
+        OnlyIfActivatedActor.accessCount = 0;
         try
         {
             stage = createStage();
@@ -0,0 +1,205 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.cluster.ClusterPeer;
+import com.ea.orbit.actors.runtime.Hosting;
+import com.ea.orbit.actors.runtime.ReminderController;
+import com.ea.orbit.actors.test.actors.SomeActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionedDirectoryTest extends ActorBaseTest
+{
+    public Stage createStage(Stage.StageMode mode) throws ExecutionException, InterruptedException
+    {
+        return createStage(mode, new FakeClusterPeer());
+    }
+
+    public Stage createStage(Stage.StageMode mode, ClusterPeer clusterPeer) throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+            final Hosting hosting = new Hosting();
+            hosting.setDirectory(Hosting.DirectoryMode.PARTITIONED);
+            stage.setHosting(hosting);
+            stage.setMode(mode);
+            stage.setClusterPeer(clusterPeer);
+        });
+    }
+
+    private LocalClusterPeer localPeer()
+    {
+        final LocalClusterPeer clusterPeer = new LocalClusterPeer();
+        clusterPeer.setExecutor(commonPool);
+        return clusterPeer;
+    }
+
+    @Test
+    public void callersAgreeThroughThePartitions() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST);
+        final Stage stage2 = createStage(Stage.StageMode.HOST);
+        final Stage client1 = createStage(Stage.StageMode.FRONT_END);
+        final Stage client2 = createStage(Stage.StageMode.FRONT_END);
+        awaitFor(() -> Stream.of(stage1, stage2, client1, client2).allMatch(s -> s.getAllNodes().size() == 4));
+
+        final Map<String, UUID> activations = new HashMap<>();
+        client1.bind();
+        // the servers also register the reminder controller
+        Actor.getReference(ReminderController.class, "0").ensureStart().join();
+        for (int i = 0; i < 30; i++)
+        {
+            activations.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+        }
+        for (Stage caller : new Stage[]{ client2, stage1, stage2 })
+        {
+            caller.bind();
+            for (int i = 0; i < 30; i++)
+            {
+                assertEquals(activations.get(String.valueOf(i)),
+                        Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+            }
+        }
+        // only the servers keep entries, one per actor
+        assertEquals(0, client1.getDirectoryPartitionSize() + client2.getDirectoryPartitionSize());
+        assertEquals(31, stage1.getDirectoryPartitionSize() + stage2.getDirectoryPartitionSize());
+        assertTrue(client1.getDirectoryBatches() > 0);
+        assertTrue(stage1.getClusterPeer().getCache("distributedDirectory").isEmpty());
+    }
+
+    @Test
+    public void entriesAreHandedOffToNewServers() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST);
+        final Stage client1 = createStage(Stage.StageMode.FRONT_END);
+        awaitFor(() -> Stream.of(stage1, client1).allMatch(s -> s.getAllNodes().size() == 2));
+
+        final Map<String, UUID> activations = new HashMap<>();
+        client1.bind();
+        // the servers also register the reminder controller
+        Actor.getReference(ReminderController.class, "0").ensureStart().join();
+        for (int i = 0; i < 30; i++)
+        {
+            activations.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+        }
+        assertEquals(31, stage1.getDirectoryPartitionSize());
+
+        final Stage stage2 = createStage(Stage.StageMode.HOST);
+        awaitFor(() -> stage2.getDirectoryPartitionSize() > 0
+                && stage1.getDirectoryPartitionSize() + stage2.getDirectoryPartitionSize() == 31);
+
+        for (Stage caller : new Stage[]{ client1, stage2 })
+        {
+            caller.bind();
+            for (int i = 0; i < 30; i++)
+            {
+                assertEquals(activations.get(String.valueOf(i)),
+                        Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+            }
+        }
+    }
+
+    @Test
+    public void lookupsDuringTheHandOffFindThePreviousOwner() throws ExecutionException, InterruptedException
+    {
+        // the entries of the first server reach the new one late
+        final LocalClusterPeer slowPeer = localPeer();
+        slowPeer.setLatency(500, TimeUnit.MILLISECONDS);
+        final Stage stage1 = createStage(Stage.StageMode.HOST, slowPeer);
+        final Stage client1 = createStage(Stage.StageMode.FRONT_END, localPeer());
+        awaitFor(() -> Stream.of(stage1, client1).allMatch(s -> s.getAllNodes().size() == 2));
+
+        client1.bind();
+        final Map<String, Task<UUID>> activating = new HashMap<>();
+        for (int i = 0; i < 30; i++)
+        {
+            activating.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId());
+        }
+        final Map<String, UUID> activations = new HashMap<>();
+        activating.forEach((id, activation) -> activations.put(id, activation.join()));
+
+        final Stage stage2 = createStage(Stage.StageMode.HOST, localPeer());
+        awaitFor(() -> Stream.of(stage1, client1, stage2).allMatch(s -> s.getAllNodes().size() == 3));
+        // the new server is asked before the hand-off arrives
+        stage2.bind();
+        final Map<String, Task<UUID>> found = new HashMap<>();
+        for (int i = 0; i < 30; i++)
+        {
+            found.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId());
+        }
+        found.forEach((id, activation) -> assertEquals(activations.get(id), activation.join()));
+    }
+
+    @Test
+    public void survivingActorsRegisterAgain() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST);
+        final Stage stage2 = createStage(Stage.StageMode.HOST);
+        final Stage stage3 = createStage(Stage.StageMode.HOST);
+        final Stage client1 = createStage(Stage.StageMode.FRONT_END);
+        awaitFor(() -> Stream.of(stage1, stage2, stage3, client1).allMatch(s -> s.getAllNodes().size() == 4));
+
+        final Map<String, UUID> activations = new HashMap<>();
+        final String stage2Id = stage2.runtimeIdentity();
+        client1.bind();
+        for (int i = 0; i < 60; i++)
+        {
+            final SomeActor actor = Actor.getReference(SomeActor.class, String.valueOf(i));
+            if (!stage2Id.equals(actor.getNodeId().join()))
+            {
+                activations.put(String.valueOf(i), actor.getUniqueActivationId().join());
+            }
+        }
+
+        stage2.stop().join();
+        awaitFor(() -> Stream.of(stage1, stage3, client1).allMatch(s -> s.getAllNodes().size() == 3));
+        // the entries of some of the remaining actors were kept by the node that left
+        awaitFor(() -> stage1.getDirectoryEntriesRestored() + stage3.getDirectoryEntriesRestored() > 0);
+
+        for (Map.Entry<String, UUID> entry : activations.entrySet())
+        {
+            assertEquals(entry.getValue(), Actor.getReference(SomeActor.class, entry.getKey()).getUniqueActivationId().join());
+        }
+    }
+}
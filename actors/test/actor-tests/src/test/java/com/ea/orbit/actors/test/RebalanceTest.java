@@ -0,0 +1,185 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RebalanceTest extends ActorBaseTest
+{
+    public interface Counter extends Actor
+    {
+        Task<Integer> increment();
+
+        Task<String> getNodeId();
+    }
+
+    public static class CounterActor extends AbstractActor<CounterActor.State> implements Counter
+    {
+        public static class State implements Serializable
+        {
+            int count;
+        }
+
+        @Override
+        public Task<Integer> increment()
+        {
+            // never written to the storage, only survives a move if the in-memory state is transferred
+            return Task.fromValue(++state().count);
+        }
+
+        @Override
+        public Task<String> getNodeId()
+        {
+            return Task.fromValue(runtimeIdentity());
+        }
+    }
+
+    public interface SavingCounter extends Actor
+    {
+        Task<Integer> increment();
+    }
+
+    public static class SavingCounterActor extends AbstractActor<CounterActor.State> implements SavingCounter
+    {
+        @Override
+        public Task<Integer> increment()
+        {
+            return Task.fromValue(++state().count);
+        }
+
+        @Override
+        public Task<?> deactivateAsync()
+        {
+            return writeState();
+        }
+    }
+
+    private Stage addIdleServer(final Stage loaded) throws ExecutionException, InterruptedException
+    {
+        Stage idle = createStage();
+        final NodeAddress idleAddress = idle.getClusterPeer().localAddress();
+        awaitFor(() -> loaded.getAllNodes().size() == 2 && loaded.getHosting().getNodeManifest(idleAddress) != null);
+        idle.getHosting().reportLoad();
+        awaitFor(() -> loaded.getHosting().getNodeLoad(idleAddress) != null);
+        return idle;
+    }
+
+    @Test
+    public void movedActorsKeepTheirState() throws ExecutionException, InterruptedException
+    {
+        Stage loaded = createStage();
+        loaded.bind();
+        for (int i = 0; i < 10; i++)
+        {
+            Counter counter = Actor.getReference(Counter.class, String.valueOf(i));
+            counter.increment().join();
+            assertEquals((Integer) 2, counter.increment().join());
+        }
+        Stage idle = addIdleServer(loaded);
+
+        assertTrue(loaded.getHosting().rebalance().join() > 0);
+        assertTrue(idle.getActivationsMovedIn() > 0);
+        assertEquals(idle.getActivationsMovedIn(), loaded.getActivationsMovedOut());
+
+        loaded.bind();
+        int onIdle = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            Counter counter = Actor.getReference(Counter.class, String.valueOf(i));
+            assertEquals((Integer) 3, counter.increment().join());
+            if (idle.runtimeIdentity().equals(counter.getNodeId().join()))
+            {
+                onIdle++;
+            }
+        }
+        assertEquals(idle.getActivationsMovedIn(), onIdle);
+    }
+
+    @Test
+    public void movedActorsDontWriteBackTheirState() throws ExecutionException, InterruptedException
+    {
+        Stage loaded = createStage();
+        loaded.bind();
+        for (int i = 0; i < 10; i++)
+        {
+            Actor.getReference(SavingCounter.class, String.valueOf(i)).increment().join();
+        }
+        addIdleServer(loaded);
+
+        assertTrue(loaded.getHosting().rebalance().join() > 0);
+        // the state belongs to the new node, it would be overwritten by the old one
+        assertTrue(fakeDatabase.isEmpty());
+    }
+
+    @Test
+    public void messagesSentDuringTheMoveAreNotLost() throws ExecutionException, InterruptedException
+    {
+        Stage loaded = createStage();
+        loaded.bind();
+        for (int i = 0; i < 10; i++)
+        {
+            Actor.getReference(Counter.class, String.valueOf(i)).increment().join();
+        }
+        addIdleServer(loaded);
+
+        loaded.bind();
+        List<Task<Integer>> calls = new ArrayList<>();
+        for (int j = 0; j < 20; j++)
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                calls.add(Actor.getReference(Counter.class, String.valueOf(i)).increment());
+            }
+        }
+        final Task<Integer> moved = loaded.getHosting().rebalance();
+        calls.forEach(Task::join);
+        assertTrue(moved.join() > 0);
+
+        loaded.bind();
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals((Integer) 22, Actor.getReference(Counter.class, String.valueOf(i)).increment().join());
+        }
+    }
+}
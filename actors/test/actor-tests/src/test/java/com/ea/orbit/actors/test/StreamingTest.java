@@ -0,0 +1,131 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.ResultStream;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.runtime.AbstractActor;
+import com.ea.orbit.actors.runtime.RemoteResultStream;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingTest extends ActorBaseTest
+{
+    static final AtomicInteger produced = new AtomicInteger();
+
+    public interface Numbers extends Actor
+    {
+        ResultStream<Integer> range(int count);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class NumbersActor extends AbstractActor implements Numbers
+    {
+        @Override
+        public ResultStream<Integer> range(final int count)
+        {
+            return ResultStream.of(new Iterator<Integer>()
+            {
+                int i = 0;
+
+                @Override
+                public boolean hasNext()
+                {
+                    return i < count;
+                }
+
+                @Override
+                public Integer next()
+                {
+                    produced.incrementAndGet();
+                    return i++;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void allItemsAreReceivedInOrder() throws ExecutionException, InterruptedException
+    {
+        Stage stage = createStage();
+        createClient();
+        final Numbers numbers = Actor.getReference(Numbers.class, "1");
+
+        final List<Integer> received = new ArrayList<>();
+        numbers.range(10_000).forEach(received::add).join();
+
+        assertEquals(10_000, received.size());
+        for (int i = 0; i < received.size(); i++)
+        {
+            assertEquals(i, (int) received.get(i));
+        }
+        // the stream is released once it reaches the end
+        awaitFor(() -> stage.getExportedStreams() == 0);
+    }
+
+    @Test
+    public void theProducerIsNotAheadOfTheConsumerWindow() throws ExecutionException, InterruptedException
+    {
+        Stage stage = createStage();
+        createClient();
+        final Numbers numbers = Actor.getReference(Numbers.class, "1");
+        produced.set(0);
+
+        final ResultStream<Integer> stream = numbers.range(1_000_000);
+        final List<Integer> first = stream.next(10).join();
+        assertEquals(10, first.size());
+        assertEquals(0, (int) first.get(0));
+        assertTrue(produced.get() <= RemoteResultStream.DEFAULT_WINDOW);
+        assertEquals(1, stage.getExportedStreams());
+
+        stream.close().join();
+        awaitFor(() -> stage.getExportedStreams() == 0);
+        assertTrue(produced.get() <= RemoteResultStream.DEFAULT_WINDOW);
+    }
+
+    @Test
+    public void emptyStream() throws ExecutionException, InterruptedException
+    {
+        createStage();
+        createClient();
+        final Numbers numbers = Actor.getReference(Numbers.class, "1");
+        assertTrue(numbers.range(0).next(10).join().isEmpty());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.Actor;
+import com.ea.orbit.actors.Stage;
+import com.ea.orbit.actors.cluster.TcpClusterPeer;
+import com.ea.orbit.actors.runtime.Hosting;
+import com.ea.orbit.actors.test.actors.SomeActor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class TcpClusterTest extends ActorBaseTest
+{
+    private final List<Stage> tcpStages = new ArrayList<>();
+    private String seed = "";
+
+    public Stage createStage(Stage.StageMode mode) throws ExecutionException, InterruptedException
+    {
+        return createStage(mode, false);
+    }
+
+    public Stage createStage(Stage.StageMode mode, boolean gatewayClient) throws ExecutionException, InterruptedException
+    {
+        final TcpClusterPeer clusterPeer = new TcpClusterPeer();
+        clusterPeer.setSeeds(seed);
+        clusterPeer.setClient(gatewayClient);
+        final Stage stage = createStage(s -> {
+            s.setMode(mode);
+            s.setClusterPeer(clusterPeer);
+        });
+        if (seed.isEmpty())
+        {
+            seed = "127.0.0.1:" + clusterPeer.getPort();
+        }
+        tcpStages.add(stage);
+        return stage;
+    }
+
+    @After
+    public void stopStages()
+    {
+        // the seed goes last, and each node waits for the previous ones to be gone
+        Collections.reverse(tcpStages);
+        for (int i = 0; i < tcpStages.size(); i++)
+        {
+            final List<Stage> remaining = tcpStages.subList(i, tcpStages.size());
+            awaitFor(() -> remaining.stream().allMatch(s -> s.getAllNodes().size() == remaining.size()));
+            tcpStages.get(i).stop().join();
+        }
+    }
+
+    @Test
+    public void actorsAreCalledOverTcp() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST);
+        final Stage stage2 = createStage(Stage.StageMode.HOST);
+        final Stage client = createStage(Stage.StageMode.FRONT_END);
+        awaitFor(() -> Stream.of(stage1, stage2, client).allMatch(s -> s.getAllNodes().size() == 3));
+        // the peer has no caches for the directory
+        assertEquals(Hosting.DirectoryMode.PARTITIONED, stage1.getHosting().getDirectory());
+
+        final Map<String, UUID> activations = new HashMap<>();
+        client.bind();
+        for (int i = 0; i < 30; i++)
+        {
+            activations.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+        }
+        for (Stage caller : new Stage[]{ stage1, stage2 })
+        {
+            caller.bind();
+            for (int i = 0; i < 30; i++)
+            {
+                assertEquals(activations.get(String.valueOf(i)),
+                        Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+            }
+        }
+    }
+
+    @Test
+    public void clientsCallThroughTheGateway() throws ExecutionException, InterruptedException
+    {
+        final Stage stage1 = createStage(Stage.StageMode.HOST);
+        final Stage stage2 = createStage(Stage.StageMode.HOST);
+        awaitFor(() -> Stream.of(stage1, stage2).allMatch(s -> s.getAllNodes().size() == 2));
+        // the client connects only to the first stage
+        final Stage client = createStage(Stage.StageMode.FRONT_END, true);
+        awaitFor(() -> client.getAllNodes().size() == 3);
+
+        final Map<String, UUID> activations = new HashMap<>();
+        client.bind();
+        for (int i = 0; i < 30; i++)
+        {
+            activations.put(String.valueOf(i), Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+        }
+        for (Stage caller : new Stage[]{ stage1, stage2 })
+        {
+            caller.bind();
+            for (int i = 0; i < 30; i++)
+            {
+                assertEquals(activations.get(String.valueOf(i)),
+                        Actor.getReference(SomeActor.class, String.valueOf(i)).getUniqueActivationId().join());
+            }
+        }
+        // the members don't see the client
+        assertEquals(2, stage1.getAllNodes().size());
+        assertEquals(2, stage2.getAllNodes().size());
+        assertEquals(1, ((TcpClusterPeer) stage1.getClusterPeer()).getClientCount());
+        tcpStages.remove(client);
+        client.stop().join();
+        awaitFor(() -> ((TcpClusterPeer) stage1.getClusterPeer()).getClientCount() == 0);
+    }
+}